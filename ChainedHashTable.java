@@ -8,7 +8,17 @@
  *     email:
  */
 
+import java.io.*;
+import java.lang.invoke.*;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.*;
 import java.util.*;     // to allow for the use of Arrays.toString() in testing
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+import java.util.stream.*;
 
 /*
  * A class that implements a hash table using separate chaining.
@@ -16,39 +26,469 @@ import java.util.*;     // to allow for the use of Arrays.toString() in testing
 public class ChainedHashTable implements HashTable {
     /* 
      * Private inner class for a node in a linked list
-     * for a given position of the hash table
+     * for a given position of the hash table.  The fields are not
+     * private so that they are inherited by TreeNode.  A node is also
+     * the (key, values) entry that entries() hands out, so iterating
+     * over the entries does not allocate anything.
      */
-    private class Node {
-        private Object key;
-        private LLQueue<Object> values;
-        private Node next;
+    private class Node implements Map.Entry<Object, Queue<Object>> {
+        Object key;
+        int hash;                  // the key's hash, so it is computed only once
+        ChunkedArrayQueue<Object> values;
+        Node next;
+        boolean referenced;        // used since the clock hand last passed, in cache mode
+        long expires;              // when the key expires (see insertExpiring), or 0
         
-        private Node(Object key, Object value) {
+        private Node(Object key, int hash, Object value) {
             this.key = key;
-            values = new LLQueue<Object>();
+            this.hash = hash;
+            values = new ChunkedArrayQueue<Object>();
             values.insert(value);
             next = null;
         }
+        
+        private Node(Object key, int hash, ChunkedArrayQueue<Object> values) {
+            this.key = key;
+            this.hash = hash;
+            this.values = values;
+            next = null;
+        }
+        
+        private Node(Node other) {
+            key = other.key;
+            hash = other.hash;
+            values = other.values;
+            referenced = other.referenced;
+            expires = other.expires;
+            next = null;
+        }
+        
+        public Object getKey() {
+            return key;
+        }
+        
+        public Queue<Object> getValue() {
+            return values;
+        }
+        
+        /* the values are changed through the queue itself, not replaced */
+        public Queue<Object> setValue(Queue<Object> values) {
+            throw new UnsupportedOperationException();
+        }
+        
+        public String toString() {
+            return key + "=" + values;
+        }
+    }
+    
+    /*
+     * Private inner class for a node in a bucket that has been turned
+     * into a balanced (AVL) tree because its chain got too long.  The
+     * nodes of a tree bucket are still linked through next (and prev),
+     * so code that walks a chain also works on a tree bucket.  The 
+     * root of the tree is always the first node in that list.
+     */
+    private class TreeNode extends Node {
+        private TreeNode left;
+        private TreeNode right;
+        private TreeNode prev;
+        private int height;
+        private long order;      // breaks ties between keys that compare as equal
+        private boolean root;    // true if this node is the root of a tree bucket
+        
+        private TreeNode(Object key, int hash, Object value) {
+            super(key, hash, value);
+        }
+        
+        private TreeNode(Node other) {
+            super(other);
+        }
+    }
+    
+    /*
+     * An entry in the timer wheel: a reminder to check, at the specified
+     * time, whether the key has expired.  It holds the key rather than
+     * its node because a node is copied when its bucket becomes a tree.
+     */
+    private static class Timer {
+        Object key;
+        int hash;
+        long expires;
+        Timer next;
+        
+        private Timer(Object key, int hash, long expires) {
+            this.key = key;
+            this.hash = hash;
+            this.expires = expires;
+        }
     }
     
+    /* 
+     * the number of old buckets moved into the new table by each
+     * insert/search/remove while an incremental rehash is in progress
+     */
+    private static final int MIGRATE_STEP = 4;
+    
+    /* the largest bucket array that a power-of-two table will use */
+    private static final int MAX_POWER_OF_TWO = 1 << 30;
+    
+    /* a chain longer than this is turned into a tree */
+    private static final int TREEIFY_THRESHOLD = 8;
+    
+    /* a tree with no more than this many nodes is turned back into a chain */
+    private static final int UNTREEIFY_THRESHOLD = 6;
+    
+    /* the number of keys that insertAll, searchAll and removeAll look up at once */
+    private static final int BATCH_BLOCK = 16;
+    
+    /* the number of pieces per thread that the parallel methods split their work into */
+    private static final int CHUNKS_PER_THREAD = 8;
+    
+    /* a table with fewer buckets than this is resized by a single thread */
+    private static final int MIN_PARALLEL_RESIZE = 1 << 12;
+    
+    /* the number of bytes that writeSnapshot collects before each write */
+    private static final int SNAPSHOT_BUFFER = 1 << 20;
+    
+    /* 
+     * the timer wheel has WHEEL_LEVELS levels of 2^WHEEL_BITS slots; a
+     * slot at level l covers 2^(WHEEL_BITS * l) milliseconds
+     */
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_MASK = (1 << WHEEL_BITS) - 1;
+    private static final int WHEEL_LEVELS = 4;
+    private static final long WHEEL_SPAN = 1L << (WHEEL_BITS * WHEEL_LEVELS);
+    
+    /* lets parallelResize add a node to a bucket with compareAndSet */
+    private static final VarHandle BUCKET = MethodHandles.arrayElementVarHandle(Node[].class);
+    
+    /* what a snapshot saves for a bucket that was empty */
+    private static final Object NO_NODES = new Object();
+    
     private Node[] table;      // the hash table itself
     private int numKeys;       // the total number of keys in the table
+    private double maxLoad;    // the load factor that triggers automatic growth
+    private boolean powerOfTwo;  // whether the bucket count is a power of two
+    
+    /*
+     * While the table is growing, oldTable holds the previous bucket
+     * array and migrateIndex is the position of the next old bucket
+     * that still has to be moved into table.  Old buckets below
+     * migrateIndex are already empty.  oldTable is null otherwise.
+     */
+    private Node[] oldTable;
+    private int migrateIndex;
+    
+    /*
+     * the next tie-breaking order given to a tree node.  It is atomic
+     * because the parallel methods build trees in several threads.
+     */
+    private final AtomicLong treeOrder = new AtomicLong();
+    
+    /*
+     * Cache mode: when maxKeys is more than 0, inserting a new key
+     * evicts keys once there are more than maxKeys of them, and when
+     * maxValuesPerKey is more than 0, a key keeps only its newest
+     * maxValuesPerKey values.  clockHand is the bucket that the CLOCK
+     * eviction sweep looks at next.
+     */
+    private int maxKeys;
+    private int maxValuesPerKey;
+    private int clockHand;
+    private long hits;
+    private long misses;
+    private long evictions;
+    
+    /*
+     * the number of nodes that have been replaced by TreeNode copies, so
+     * that the batch methods can tell when a node that they found before
+     * may no longer be the one in the table
+     */
+    private long treeCopies;
+    
+    /*
+     * Expiry: clock gives the time in milliseconds.  wheel[l][s] is the
+     * list of timers in slot s of level l of a hierarchical timer wheel,
+     * which has been advanced as far as wheelTime.  timers counts all
+     * of the timers, and levelTimers counts the timers at each level.
+     * The wheel is only made when a key is first given a time to live.
+     */
+    private LongSupplier clock = () -> System.nanoTime() / 1000000;
+    private Timer[][] wheel;
+    private long wheelTime;
+    private int timers;
+    private int[] levelTimers;
+    
+    /*
+     * the counters and histograms from enableMetrics, or null if they
+     * are not being kept.  resizeStart is when the resize in progress
+     * started, in System.nanoTime(), or 0.
+     */
+    private HashTableMetrics metrics;
+    private long resizeStart;
+    
+    /*
+     * the index from values to keys that the first keysWithValue builds,
+     * or null if there is none
+     */
+    private ValueIndex valueIndex;
+    
+    /* the snapshots that may still be read (see snapshot), or null if there are none */
+    private ArrayList<WeakReference<TableSnapshot>> snapshots;
+    
+    /*
+     * The miss filter (see enableMissFilter): tags[i] is the union of
+     * the tags of the keys in bucket i of table, and oldTags is the same
+     * for oldTable.  Both are null while the filter is off.
+     */
+    private int[] tags;
+    private int[] oldTags;
+    private long filterRejects;
+    private long filterFalsePositives;
         
     /* hash function */
     public int h1(Object key) {
-        int h1 = key.hashCode() % table.length;
+        return index(hash(key), table.length);
+    }
+    
+    /*
+     * hash - returns the hash that is stored in the node for the 
+     * specified key.  When the position is taken from the low bits
+     * only, the high bits are spread into them first so that keys
+     * whose hash codes differ only in their high bits do not collide.
+     */
+    private int hash(Object key) {
+        int h = key.hashCode();
+        if (powerOfTwo) {
+            h ^= (h >>> 16);
+        }
+        return h;
+    }
+    
+    /* 
+     * index - returns the position for the specified hash in a 
+     * bucket array of the specified length
+     */
+    private int index(int hash, int length) {
+        if (powerOfTwo) {
+            return hash & (length - 1);
+        }
+        int h1 = hash % length;
         if (h1 < 0) {
-            h1 += table.length;
+            h1 += length;
         }
         return h1;
     }
     
+    /*
+     * roundUp - returns the smallest power of two that is at least
+     * the specified size
+     */
+    private static int roundUp(int size) {
+        if (size >= MAX_POWER_OF_TWO) {
+            return MAX_POWER_OF_TWO;
+        }
+        int n = Integer.highestOneBit(size);
+        return (n == size) ? n : n << 1;
+    }
+    
     /*** Add your constructor here ***/
     public ChainedHashTable(int size) {
-        if (size <= 0) {
+        this(size, Double.POSITIVE_INFINITY);
+    }
+    
+    /*
+     * Constructs a table that grows automatically once its load 
+     * exceeds maxLoad.  The growth is done incrementally, a few 
+     * buckets per operation, rather than all at once.
+     */
+    public ChainedHashTable(int size, double maxLoad) {
+        this(size, maxLoad, false);
+    }
+    
+    /*
+     * Constructs a table whose bucket count is rounded up to a power 
+     * of two if powerOfTwo is true, so that positions can be computed
+     * with a bit mask instead of the % operator.
+     */
+    public ChainedHashTable(int size, double maxLoad, boolean powerOfTwo) {
+        if (size <= 0 || !(maxLoad > 0)) {
             throw new IllegalArgumentException();
         }
+        this.powerOfTwo = powerOfTwo;
+        if (powerOfTwo) {
+            size = roundUp(size);
+        }
         table = new Node[size];
+        this.maxLoad = maxLoad;
+    }
+    
+    /*
+     * matches - returns true if the specified node holds the key with 
+     * the specified hash.  equals is only called when the hashes match.
+     */
+    private static boolean matches(Node trav, Object key, int hash) {
+        return trav.hash == hash && (trav.key == key || key.equals(trav.key));
+    }
+    
+    /*
+     * find - returns the node for the specified key in the chain that
+     * starts at trav, or null if the key is not in that chain
+     */
+    private Node find(Node trav, Object key, int hash) {
+        if (isTree(trav)) {
+            return findInTree((TreeNode) trav, key, hash);
+        }
+        while (trav != null && !matches(trav, key, hash)) {
+            trav = trav.next;
+        }
+        return trav;
+    }
+    
+    /*
+     * findNode - returns the node for the specified key, looking in
+     * the old bucket array as well if a rehash is in progress
+     */
+    private Node findNode(Object key, int hash) {
+        if (oldTable != null) {
+            int j = index(hash, oldTable.length);
+            if (j >= migrateIndex) {
+                Node trav = find(oldTable[j], key, hash);
+                if (trav != null) {
+                    return trav;
+                }
+            }
+        }
+        return find(table[index(hash, table.length)], key, hash);
+    }
+    
+    /*
+     * unlink - removes the node for the specified key from the chain
+     * at position i of the specified bucket array, and returns it
+     * (or null if the key is not in that chain)
+     */
+    private Node unlink(Node[] buckets, int i, Object key, int hash) {
+        own(buckets, i);
+        if (isTree(buckets[i])) {
+            return retag(buckets, i, unlinkFromTree(buckets, i, key, hash));
+        }
+        Node trav = buckets[i];
+        Node prev = null;
+        while (trav != null && !matches(trav, key, hash)) {
+            prev = trav;
+            trav = trav.next;
+        }
+        if (trav == null) {         // the key is not found after traversal
+            return null;
+        } else if (prev == null) {  // the key is the first key in the chain
+            setBucket(buckets, i, trav.next);
+        } else {
+            prev.next = trav.next;
+        }
+        return retag(buckets, i, trav);
+    }
+    
+    /*
+     * link - adds the specified node to the bucket at position i of the
+     * specified bucket array.  The node goes at the front of a chain, 
+     * and the chain is turned into a tree if it gets too long.
+     */
+    private void link(Node[] buckets, int i, Node node) {
+        own(buckets, i);
+        int[] bucketTags = tagsOf(buckets);
+        if (bucketTags != null) {
+            bucketTags[i] |= tag(node.hash);
+        }
+        if (isTree(buckets[i])) {
+            linkIntoTree(buckets, i, node);
+            return;
+        }
+        if (node instanceof TreeNode) {     // left over from an old tree bucket
+            TreeNode t = (TreeNode) node;
+            t.left = t.right = t.prev = null;
+            t.root = false;
+        }
+        node.next = buckets[i];
+        setBucket(buckets, i, node);
+        if (longerThan(node, TREEIFY_THRESHOLD)) {
+            treeify(buckets, i);
+        }
+    }
+    
+    /*
+     * longerThan - returns true if the chain that starts at trav has 
+     * more than n nodes, looking at no more than n + 1 of them
+     */
+    private static boolean longerThan(Node trav, int n) {
+        for (int count = 0; trav != null; count++) {
+            if (count == n) {
+                return true;
+            }
+            trav = trav.next;
+        }
+        return false;
+    }
+    
+    /*
+     * migrate - moves up to the specified number of buckets from the 
+     * old bucket array into the new one, relinking the existing nodes
+     */
+    private void migrate(int buckets) {
+        if (oldTable == null) {
+            return;
+        }
+        int end = Math.min(oldTable.length, migrateIndex + buckets);
+        for ( ; migrateIndex < end; migrateIndex++) {
+            own(oldTable, migrateIndex);
+            Node trav = oldTable[migrateIndex];
+            while (trav != null) {
+                Node next = trav.next;
+                link(table, index(trav.hash, table.length), trav);
+                trav = next;
+            }
+            setBucket(oldTable, migrateIndex, null);
+        }
+        if (migrateIndex == oldTable.length) {
+            oldTable = null;
+            oldTags = null;
+            migrateIndex = 0;
+            if (metrics != null && resizeStart != 0) {
+                resized(resizeStart);
+            }
+            resizeStart = 0;
+        }
+    }
+    
+    /* finishMigration - completes any rehash that is in progress */
+    private void finishMigration() {
+        if (oldTable != null) {
+            migrate(oldTable.length);
+        }
+    }
+    
+    /*
+     * growIfNeeded - starts an incremental rehash into a larger bucket
+     * array if the load exceeds maxLoad and no rehash is in progress
+     */
+    private void growIfNeeded() {
+        if (oldTable == null && load() > maxLoad) {
+            oldTable = table;
+            migrateIndex = 0;
+            if (metrics != null) {
+                resizeStart = System.nanoTime();
+            }
+            if (!powerOfTwo) {
+                table = new Node[2 * oldTable.length + 1];
+            } else if (oldTable.length < MAX_POWER_OF_TWO) {
+                table = new Node[2 * oldTable.length];
+            } else {
+                oldTable = null;    // already as large as it can get
+            }
+            if (oldTable != null && tags != null) {
+                oldTags = tags;
+                tags = new int[table.length];
+            }
+        }
     }
     
     /*
@@ -59,56 +499,99 @@ public class ChainedHashTable implements HashTable {
         if (key == null) {
             throw new IllegalArgumentException();
         }
-        int i = h1(key);
-
-        if (table[i] == null) {            // if position i is empty
-            table[i] = new Node(key, value);
-            numKeys++;
+        expire();
+        return insert(key, hash(key), value);
+    }
+    
+    /* insert - inserts the pair for a key whose hash has already been computed */
+    private boolean insert(Object key, int hash, Object value) {
+        migrate(MIGRATE_STEP);
+        if (metrics != null) {
+            metrics.pendingInserts++;
+            metrics.counted();
+        }
+        
+        Node trav = findLive(key, hash);
+        if (trav != null) { // if there is a duplicate, add the values, do not add a new Node
+            addValue(trav, value);
         } else {
-            if (key.equals(table[i].key)) {      // check if the key is a duplicate to the first key in the chain at position i
-                table[i].values.insert(value);
-            } 
-            else {
-                Node trav = table[i];        // traverse through the chain to add a new node
-                while (trav != null && !key.equals(trav.key)) {
-                    trav = trav.next;
-                }
-                if (trav != null) { // if there is a duplicate, add the values, do not add a new Node
-                    trav.values.insert(value);
-                } else {
-                    Node newNode = new Node(key,value);
-                    newNode.next = table[i];
-                    table[i] = newNode;
-                    numKeys++;
-                }
+            if (maxKeys > 0 && numKeys >= maxKeys) {   // make room before adding the key
+                evict(numKeys - maxKeys + 1);
             }
-            
-        } 
+            int i = index(hash, table.length);
+            if (isTree(table[i])) {
+                link(table, i, new TreeNode(key, hash, value));
+            } else {
+                link(table, i, new Node(key, hash, value));
+            }
+            if (valueIndex != null) {
+                valueIndex.add(value, key);
+            }
+            numKeys++;
+            growIfNeeded();
+        }
         return true;
     }
     
+    /* addValue - adds a value to the existing node for a key */
+    private void addValue(Node trav, Object value) {
+        trav = owned(trav);
+        trav.values.insert(value);
+        trav.referenced = true;
+        if (valueIndex != null) {
+            valueIndex.add(value, trav.key);
+        }
+        if (maxValuesPerKey > 0 && trav.values.size() > maxValuesPerKey) {
+            Object oldest = trav.values.remove();       // drop the oldest value
+            if (valueIndex != null) {
+                valueIndex.remove(oldest, trav.key);
+            }
+        }
+    }
+    
+    /*
+     * found - returns the values of the specified node (or null if it
+     * is null), counting a hit or a miss in a search for the specified key
+     */
+    private Queue<Object> found(Node trav, Object key, int hash) {
+        if (metrics != null) {
+            searched(trav != null, key, hash);
+        }
+        if (trav == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        trav.referenced = true;
+        return trav.values;
+    }
+    
     /*
      * search - search for the specified key and return the
      * associated collection of values, or null if the key 
      * is not in the table
      */
     public Queue<Object> search(Object key) {
-        int i = h1(key);
-
-        if (table[i] == null) {
-            return null;
-        } else {
-            Node trav = table[i];
-            while (trav != null && !key.equals(trav.key)) {
-                trav = trav.next;
-            }
-            if (trav == null) {
-                return null;
-            } else {
-                return trav.values;
-            }
-
+        expire();
+        return search(key, hash(key));
+    }
+    
+    /* search - searches for a key whose hash has already been computed */
+    private Queue<Object> search(Object key, int hash) {
+        migrate(MIGRATE_STEP);
+        
+        if (tags == null) {
+            return found(findLive(key, hash), key, hash);
         }
+        if (!mayContain(hash)) {
+            filterRejects++;
+            return found(null, key, hash);
+        }
+        Node trav = findLive(key, hash);
+        if (trav == null) {
+            filterFalsePositives++;
+        }
+        return found(trav, key, hash);
     }
     
     /* 
@@ -117,40 +600,190 @@ public class ChainedHashTable implements HashTable {
      * is not in the table
      */
     public Queue<Object> remove(Object key) {
-        int i = h1(key);
-
-        if (table[i] == null) { // position is empty, the key is not found
+        expire();
+        if (metrics != null) {
+            metrics.pendingRemoves++;
+            metrics.counted();
+        }
+        return remove(key, hash(key));
+    }
+    
+    /* remove - removes a key whose hash has already been computed */
+    private Queue<Object> remove(Object key, int hash) {
+        migrate(MIGRATE_STEP);
+        
+        Node removed = null;
+        if (oldTable != null) {
+            int j = index(hash, oldTable.length);
+            if (j >= migrateIndex) {
+                removed = unlink(oldTable, j, key, hash);
+            }
+        }
+        if (removed == null) {
+            removed = unlink(table, index(hash, table.length), key, hash);
+        }
+        
+        if (removed == null) {  // the key is not found
             return null;
+        } else {
+            numKeys--;
+            if (valueIndex != null) {
+                unindex(removed);
+            }
+            return expired(removed) ? null : removed.values;
         }
-        else {
-            Node trav = table[i];
-            if (key.equals(trav.key)) {     // the key is found as the first key in position i
-                table[i] = trav.next;
-                numKeys--;
-                return trav.values;
-            } 
-            else {
-                Node prev = null;
-                while (trav != null && !key.equals(trav.key)) {
-                    prev = trav;
-                    trav = trav.next;
+    }
+    
+    /*
+     * insertAll - inserts the pair (keys[i], values[i]) for every i, in
+     * order.  All of the keys are hashed first, and the keys are then
+     * looked up a block at a time (see findBlock), so that the cache 
+     * misses for the keys in a block overlap instead of coming one 
+     * after another.
+     */
+    public boolean insertAll(Object[] keys, Object[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException();
+        }
+        int[] hashes = hashAll(keys);
+        Node[] found = new Node[BATCH_BLOCK];
+        expire();
+        for (int start = 0; start < keys.length; start += BATCH_BLOCK) {
+            int end = Math.min(keys.length, start + BATCH_BLOCK);
+            findBlock(keys, hashes, start, end, found);
+            long changes = evictions + treeCopies;
+            for (int j = start; j < end; j++) {
+                Node trav = found[j - start];
+                if (trav != null) {
+                    migrate(MIGRATE_STEP);
+                    if (evictions + treeCopies != changes) {
+                        // an earlier pair or the migration may have evicted 
+                        // the node or copied it into a tree
+                        trav = findNode(keys[j], hashes[j]);
+                    }
+                }
+                if (trav != null && !expired(trav)) {
+                    if (metrics != null) {
+                        metrics.pendingInserts++;
+                        metrics.counted();
+                    }
+                    addValue(trav, values[j]);
+                } else {
+                    // an earlier pair in the block may have added the key,
+                    // or the key may have expired
+                    insert(keys[j], hashes[j], values[j]);
                 }
-                if (trav == null) { // the key is not found after traversal 
-                    return null; 
+            }
+        }
+        return true;
+    }
+    
+    /*
+     * searchAll - returns an array whose element i is the collection of
+     * values of keys[i], or null if keys[i] is not in the table
+     */
+    public Queue<Object>[] searchAll(Object[] keys) {
+        int[] hashes = hashAll(keys);
+        Queue<Object>[] results = newQueueArray(keys.length);
+        Node[] found = new Node[BATCH_BLOCK];
+        expire();
+        for (int start = 0; start < keys.length; start += BATCH_BLOCK) {
+            int end = Math.min(keys.length, start + BATCH_BLOCK);
+            findBlock(keys, hashes, start, end, found);
+            long changes = treeCopies;
+            for (int j = start; j < end; j++) {
+                Node trav = found[j - start];
+                if (trav != null && expired(trav)) {
+                    results[j] = search(keys[j], hashes[j]);    // removes the key
                 } else {
-                    prev.next = trav.next;  
-                    numKeys--;
-                    return trav.values;
+                    migrate(MIGRATE_STEP);
+                    if (trav != null && (snapshots != null || treeCopies != changes)) {
+                        trav = findNode(keys[j], hashes[j]);    // the migration may have copied it
+                    }
+                    results[j] = found(trav, keys[j], hashes[j]);
+                }
+            }
+        }
+        return results;
+    }
     
+    /*
+     * removeAll - removes every one of the specified keys, in order, and
+     * returns an array whose element i is the collection of values of
+     * keys[i], or null if keys[i] was not in the table
+     */
+    public Queue<Object>[] removeAll(Object[] keys) {
+        int[] hashes = hashAll(keys);
+        Queue<Object>[] results = newQueueArray(keys.length);
+        Node[] found = new Node[BATCH_BLOCK];
+        expire();
+        for (int start = 0; start < keys.length; start += BATCH_BLOCK) {
+            int end = Math.min(keys.length, start + BATCH_BLOCK);
+            findBlock(keys, hashes, start, end, found);
+            for (int j = start; j < end; j++) {
+                if (metrics != null) {
+                    metrics.pendingRemoves++;
+                    metrics.counted();
                 }
-
-            }   
+                if (found[j - start] == null) {
+                    // removing keys never adds one, so the key is still not there
+                    migrate(MIGRATE_STEP);
+                } else {
+                    results[j] = remove(keys[j], hashes[j]);
+                }
+            }
+        }
+        return results;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static Queue<Object>[] newQueueArray(int length) {
+        return (Queue<Object>[]) new Queue<?>[length];
+    }
+    
+    /* hashAll - returns the hashes of the specified keys */
+    private int[] hashAll(Object[] keys) {
+        int[] hashes = new int[keys.length];
+        for (int j = 0; j < keys.length; j++) {
+            if (keys[j] == null) {
+                throw new IllegalArgumentException();
+            }
+            hashes[j] = hash(keys[j]);
         }
+        return hashes;
     }
     
+    /*
+     * findBlock - stores in found[j - start] the node for keys[j], or
+     * null if it is not in the table, for every j from start to end - 1.
+     * The first node of every bucket is read before any chain is walked,
+     * so the loads for different keys do not wait on each other.
+     */
+    private void findBlock(Object[] keys, int[] hashes, int start, int end, Node[] found) {
+        Node[] buckets = table;
+        for (int j = start; j < end; j++) {
+            found[j - start] = buckets[index(hashes[j], buckets.length)];
+        }
+        for (int j = start; j < end; j++) {
+            if (tags != null && !mayContain(hashes[j])) {
+                filterRejects++;
+                found[j - start] = null;
+                continue;
+            }
+            if (oldTable != null) {
+                found[j - start] = findNode(keys[j], hashes[j]);
+            } else {
+                found[j - start] = find(found[j - start], keys[j], hashes[j]);
+            }
+            if (tags != null && found[j - start] == null) {
+                filterFalsePositives++;
+            }
+        }
+    }
     
     /*** Add the other required methods here ***/
     public int getNumKeys() {
+        expire();
         return numKeys;
     }
     
@@ -159,6 +792,9 @@ public class ChainedHashTable implements HashTable {
     }
 
     public Object[] getAllKeys() {
+        expire();
+        finishMigration();
+        
         Object[] result = new Object[numKeys];
         int arrIndex = 0;
         for (int i = 0; i < table.length; i ++) {
@@ -174,454 +810,3284 @@ public class ChainedHashTable implements HashTable {
         return result;
     }
     
-    public void resize(int newSize) {
-        if (newSize < table.length) {
-            throw new IllegalArgumentException();
-        } 
-        else if (newSize == table.length) {
+    /*
+     * keys - returns a view of the keys in the table.  The view walks
+     * the bucket array when it is iterated instead of copying the keys,
+     * and its spliterator splits by ranges of buckets, so a parallel
+     * stream of the keys can be made with
+     *
+     *     StreamSupport.stream(table.keys().spliterator(), true)
+     *
+     * The table must not be changed while a view is being iterated.
+     */
+    public Iterable<Object> keys() {
+        return new View<Object>(KEYS);
+    }
+    
+    /*
+     * entries - returns a view of the (key, collection of values)
+     * entries in the table, with the same properties as keys().  The
+     * entries are the table's own nodes, so they cannot be kept after
+     * the table changes.
+     */
+    public Iterable<Map.Entry<Object, Queue<Object>>> entries() {
+        return new View<Map.Entry<Object, Queue<Object>>>(ENTRIES);
+    }
+    
+    /*
+     * pairs - returns a view of every (key, value) pair in the table,
+     * with the same properties as keys().  Each pair is a new entry; 
+     * use forEachPair to visit the pairs without allocating.
+     */
+    public Iterable<Map.Entry<Object, Object>> pairs() {
+        return new View<Map.Entry<Object, Object>>(PAIRS);
+    }
+    
+    /* forEachPair - performs the specified action on every (key, value) pair */
+    public void forEachPair(BiConsumer<Object, Object> action) {
+        expire();
+        finishMigration();
+        for (int i = 0; i < table.length; i++) {
+            for (Node trav = table[i]; trav != null; trav = trav.next) {
+                Object key = trav.key;
+                trav.values.forEach(value -> action.accept(key, value));
+            }
+        }
+    }
+    
+    /* what a View or a BucketSpliterator returns for each node */
+    private static final int KEYS = 0;
+    private static final int ENTRIES = 1;
+    private static final int PAIRS = 2;
+    
+    /*
+     * Private inner class for the views returned by keys(), entries()
+     * and pairs().  Any rehash in progress is finished when the view is
+     * iterated, so that only one bucket array has to be walked, and 
+     * keys whose time to live has run out are removed first.
+     */
+    private class View<T> implements Iterable<T> {
+        private final int kind;
+        
+        private View(int kind) {
+            this.kind = kind;
+        }
+        
+        public Spliterator<T> spliterator() {
+            expire();
+            finishMigration();
+            return new BucketSpliterator<T>(kind, table, 0, table.length);
+        }
+        
+        public Iterator<T> iterator() {
+            return Spliterators.iterator(spliterator());
+        }
+        
+        public void forEach(Consumer<? super T> action) {
+            spliterator().forEachRemaining(action);
+        }
+        
+        public String toString() {
+            return StreamSupport.stream(spliterator(), false)
+                .map(String::valueOf)
+                .collect(Collectors.joining(", ", "[", "]"));
+        }
+    }
+    
+    /*
+     * Private inner class for a spliterator over the nodes in the
+     * buckets from index to fence - 1.  It is split by handing half of
+     * its remaining buckets to a new spliterator.
+     */
+    private class BucketSpliterator<T> implements Spliterator<T> {
+        private final int kind;
+        private final Node[] buckets;
+        private int index;                // the next bucket to start on
+        private final int fence;          // one past the last bucket
+        private Node current;             // the next node in the current bucket
+        private Node pairNode;            // the node whose values are being returned
+        private Iterator<Object> pairValues;
+        
+        private BucketSpliterator(int kind, Node[] buckets, int index, int fence) {
+            this.kind = kind;
+            this.buckets = buckets;
+            this.index = index;
+            this.fence = fence;
+        }
+        
+        /* nextNode - returns the next node, or null if there are no more */
+        private Node nextNode() {
+            while (current == null && index < fence) {
+                current = buckets[index];
+                index++;
+            }
+            Node node = current;
+            if (node != null) {
+                current = node.next;
+            }
+            return node;
+        }
+        
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (kind == PAIRS) {
+                while (pairValues == null || !pairValues.hasNext()) {
+                    pairNode = nextNode();
+                    if (pairNode == null) {
+                        return false;
+                    }
+                    pairValues = pairNode.values.iterator();
+                }
+                Object pair = new AbstractMap.SimpleImmutableEntry<Object, Object>(
+                    pairNode.key, pairValues.next());
+                action.accept((T) pair);
+                return true;
+            }
+            Node node = nextNode();
+            if (node == null) {
+                return false;
+            }
+            action.accept((T) ((kind == KEYS) ? node.key : node));
+            return true;
+        }
+        
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super T> action) {
+            if (kind == PAIRS) {
+                while (tryAdvance(action)) {
+                }
+                return;
+            }
+            for (Node node = nextNode(); node != null; node = nextNode()) {
+                action.accept((T) ((kind == KEYS) ? node.key : node));
+            }
+        }
+        
+        public Spliterator<T> trySplit() {
+            int mid = (index + fence) >>> 1;
+            if (mid <= index) {
+                return null;
+            }
+            BucketSpliterator<T> prefix = new BucketSpliterator<T>(kind, buckets, index, mid);
+            prefix.current = current;         // the rest of the bucket already started
+            prefix.pairNode = pairNode;
+            prefix.pairValues = pairValues;
+            current = null;
+            pairNode = null;
+            pairValues = null;
+            index = mid;
+            return prefix;
+        }
+        
+        /* estimateSize - assumes the keys are spread evenly over the buckets */
+        public long estimateSize() {
+            return (long) ((double) numKeys * (fence - index) / Math.max(1, buckets.length));
+        }
+        
+        public int characteristics() {
+            if (kind == PAIRS) {
+                return NONNULL;
+            }
+            return NONNULL | DISTINCT;
+        }
+    }
+    
+    /*
+     * resize - grows the table to the specified number of buckets, 
+     * rounded up to a power of two if the table uses power-of-two sizes
+     */
+    public void resize(int newSize) {
+        finishMigration();
+        
+        newSize = checkNewSize(newSize);
+        if (newSize == table.length) {
             return;
         }
 
-        ChainedHashTable resizeTable = new ChainedHashTable(newSize);
-        for (int i = 0; i < table.length; i++) {
-            if (table[i] != null) {
-                Node trav = table[i];
+        // move the existing nodes into the new bucket array, 
+        // without allocating any new nodes or value queues
+        oldTable = table;
+        migrateIndex = 0;
+        if (metrics != null) {
+            resizeStart = System.nanoTime();
+        }
+        table = new Node[newSize];
+        if (tags != null) {
+            oldTags = tags;
+            tags = new int[newSize];
+        }
+        finishMigration();
+    }
+    
+    /*
+     * checkNewSize - returns the bucket count that resize uses for the
+     * requested size, and throws an IllegalArgumentException if that is
+     * smaller than the current bucket count
+     */
+    private int checkNewSize(int newSize) {
+        if (powerOfTwo && newSize > 0) {
+            newSize = roundUp(newSize);
+        }
+        if (newSize < table.length) {
+            throw new IllegalArgumentException();
+        }
+        return newSize;
+    }
+    
+    /*
+     * parallelResize - does the same as resize, using the threads of the
+     * specified pool.  Each thread moves the nodes of a range of old 
+     * buckets, and adds each node to its new bucket with compareAndSet,
+     * so no locks are needed.  The chains that get too long are then 
+     * turned into trees, again a range of buckets per thread.  The 
+     * order of the nodes within a bucket may differ from resize's.
+     * While there are snapshots, resize is used instead, since it 
+     * copies the buckets that the snapshots share.
+     */
+    public void parallelResize(int newSize, ForkJoinPool pool) {
+        finishMigration();
+        
+        int size = checkNewSize(newSize);
+        if (size == table.length) {
+            return;
+        }
+        if (pool.getParallelism() == 1 || table.length < MIN_PARALLEL_RESIZE
+                || snapshots != null) {
+            resize(size);
+            return;
+        }
+        long start = System.nanoTime();
+        
+        Node[] old = table;
+        Node[] buckets = new Node[size];
+        int oldChunks = chunks(pool, old.length);
+        forEachChunk(pool, oldChunks, c -> {
+            int end = chunkStart(c + 1, oldChunks, old.length);
+            for (int i = chunkStart(c, oldChunks, old.length); i < end; i++) {
+                Node trav = old[i];
                 while (trav != null) {
-                    resizeTable.insert(trav.key, trav.values);
-                    trav = trav.next;
+                    Node next = trav.next;
+                    if (trav instanceof TreeNode) {     // left over from an old tree bucket
+                        TreeNode t = (TreeNode) trav;
+                        t.left = t.right = t.prev = null;
+                        t.root = false;
+                    }
+                    int j = index(trav.hash, size);
+                    Node head;
+                    do {
+                        head = (Node) BUCKET.getVolatile(buckets, j);
+                        trav.next = head;
+                    } while (!BUCKET.compareAndSet(buckets, j, head, trav));
+                    trav = next;
                 }
+                old[i] = null;
             }
+        });
+        int[] newTags = (tags != null) ? new int[size] : null;
+        int newChunks = chunks(pool, size);
+        forEachChunk(pool, newChunks, c -> {
+            int end = chunkStart(c + 1, newChunks, size);
+            for (int j = chunkStart(c, newChunks, size); j < end; j++) {
+                if (longerThan(buckets[j], TREEIFY_THRESHOLD)) {
+                    treeify(buckets, j);
+                }
+                if (newTags != null) {
+                    newTags[j] = chainTag(buckets[j]);
+                }
+            }
+        });
+        table = buckets;
+        tags = newTags;
+        if (metrics != null) {
+            resized(start);
         }
-        table = resizeTable.table; 
+    }
+    
+    /* parallelResize - does the same as resize, using the common fork/join pool */
+    public void parallelResize(int newSize) {
+        parallelResize(newSize, ForkJoinPool.commonPool());
     }
     
     /*
-     * toString - returns a string representation of this ChainedHashTable
-     * object. *** You should NOT change this method. ***
+     * build - returns a new table that holds the pair (keys[i], values[i])
+     * for every i, built by the threads of the specified pool.  The table
+     * has enough buckets to keep its load no more than maxLoad (or 1, if
+     * maxLoad is larger), and the values of a repeated key are in the 
+     * order they are given.
+     *
+     * The pairs are hashed in parallel and then sorted by ranges of 
+     * buckets with a parallel counting sort.  Each thread then inserts
+     * the pairs of one range, so no two threads touch the same bucket.
      */
-    public String toString() {
-        String s = "[";
+    public static ChainedHashTable build(Object[] keys, Object[] values, double maxLoad,
+                                         boolean powerOfTwo, ForkJoinPool pool) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException();
+        }
+        int size = (int) Math.min(Integer.MAX_VALUE - 8,
+                                  Math.ceil(keys.length / Math.min(maxLoad, 1.0)));
+        ChainedHashTable table = new ChainedHashTable(Math.max(1, size), maxLoad, powerOfTwo);
+        table.buildFrom(keys, values, pool);
+        return table;
+    }
+    
+    /* build - returns a new table of the specified pairs, built by the common fork/join pool */
+    public static ChainedHashTable build(Object[] keys, Object[] values) {
+        return build(keys, values, Double.POSITIVE_INFINITY, false, ForkJoinPool.commonPool());
+    }
+    
+    /* buildFrom - inserts the specified pairs into this empty table (see build) */
+    private void buildFrom(Object[] keys, Object[] values, ForkJoinPool pool) {
+        int n = keys.length;
+        int chunks = chunks(pool, n);
+        int ranges = chunks;
+        int[] hashes = new int[n];
         
-        for (int i = 0; i < table.length; i++) {
-            if (table[i] == null) {
-                s += "null";
-            } else {
-                String keys = "{";
-                Node trav = table[i];
-                while (trav != null) {
-                    keys += trav.key;
-                    if (trav.next != null) {
-                        keys += "; ";
-                    }
-                    trav = trav.next;
+        // hash the keys, and count the keys of each chunk in each range of buckets
+        int[][] counts = new int[chunks][ranges];
+        forEachChunk(pool, chunks, c -> {
+            int end = chunkStart(c + 1, chunks, n);
+            for (int j = chunkStart(c, chunks, n); j < end; j++) {
+                if (keys[j] == null) {
+                    throw new IllegalArgumentException();
                 }
-                keys += "}";
-                s += keys;
+                hashes[j] = hash(keys[j]);
+                counts[c][range(hashes[j], ranges)]++;
             }
+        });
         
-            if (i < table.length - 1) {
-                s += ", ";
+        // turn the counts into the position of each chunk's first key in each range
+        int[] rangeStart = new int[ranges + 1];
+        int position = 0;
+        for (int r = 0; r < ranges; r++) {
+            rangeStart[r] = position;
+            for (int c = 0; c < chunks; c++) {
+                int count = counts[c][r];
+                counts[c][r] = position;
+                position += count;
             }
-        }       
+        }
+        rangeStart[ranges] = n;
         
-        s += "]";
-        return s;
-    }
-
-
-    public static void main(String[] args) {
-        /** Add your unit tests here 
-
-        ChainedHashTable table = new ChainedHashTable(5);
-        table.insert("howdy", 15);
-        table.insert("goodbye", 10);
-        System.out.println(table.insert("apple", 5));
-        table.insert("apple", 10);
-        System.out.println(table.remove("goodbye"));
-        System.out.println(table.search("howdy"));
-        System.out.println(table.search("apple"));
-        System.out.println(table.search("goodbye"));
-
-        System.out.println(table);
+        // sort the positions of the pairs by range, keeping their order within a range
+        int[] order = new int[n];
+        forEachChunk(pool, chunks, c -> {
+            int end = chunkStart(c + 1, chunks, n);
+            for (int j = chunkStart(c, chunks, n); j < end; j++) {
+                order[counts[c][range(hashes[j], ranges)]++] = j;
+            }
+        });
         
-        ChainedHashTable table = new ChainedHashTable(5);
-        table.insert("howdy", 15);
-        table.insert("goodbye", 10);
-        table.insert("apple", 5);
-        System.out.println(table.getNumKeys());
-        table.insert("howdy", 25);     // insert a duplicate
-        System.out.println(table.getNumKeys());
+        // insert the pairs of each range into the buckets of that range
+        int[] added = new int[ranges];
+        forEachChunk(pool, ranges, r -> {
+            for (int p = rangeStart[r]; p < rangeStart[r + 1]; p++) {
+                int j = order[p];
+                int i = index(hashes[j], table.length);
+                Node trav = find(table[i], keys[j], hashes[j]);
+                if (trav != null) {
+                    trav.values.insert(values[j]);
+                } else if (isTree(table[i])) {
+                    link(table, i, new TreeNode(keys[j], hashes[j], values[j]));
+                    added[r]++;
+                } else {
+                    link(table, i, new Node(keys[j], hashes[j], values[j]));
+                    added[r]++;
+                }
+            }
+        });
+        for (int r = 0; r < ranges; r++) {
+            numKeys += added[r];
+        }
+    }
+    
+    /* range - returns which of the specified number of bucket ranges holds the hash */
+    private int range(int hash, int ranges) {
+        return (int) ((long) index(hash, table.length) * ranges / table.length);
+    }
+    
+    /* chunks - returns the number of pieces to split n items into for the specified pool */
+    private static int chunks(ForkJoinPool pool, int n) {
+        return Math.max(1, Math.min(n, pool.getParallelism() * CHUNKS_PER_THREAD));
+    }
+    
+    /* chunkStart - returns the first of n items in chunk c of the specified number of chunks */
+    private static int chunkStart(int c, int chunks, int n) {
+        return (int) ((long) c * n / chunks);
+    }
+    
+    /* forEachChunk - runs body once for each chunk number, in the specified pool */
+    private static void forEachChunk(ForkJoinPool pool, int chunks, IntConsumer body) {
+        pool.invoke(new ChunkTask(0, chunks, body));
+    }
+    
+    /*
+     * Private nested class for a fork/join task that runs body for each
+     * chunk number from lo to hi - 1, by splitting the chunks in half 
+     * until only one is left.
+     */
+    @SuppressWarnings("serial")     // the task is never serialized
+    private static class ChunkTask extends RecursiveAction {
+        private final int lo;
+        private final int hi;
+        private final IntConsumer body;
         
-        ChainedHashTable table = new ChainedHashTable(5);
-        table.insert("howdy", 15);
-        table.insert("goodbye", 10);
-        table.insert("apple", 5);
-        System.out.println(table.load());
-        table.insert("pear", 6);
-        System.out.println(table.load());
+        private ChunkTask(int lo, int hi, IntConsumer body) {
+            this.lo = lo;
+            this.hi = hi;
+            this.body = body;
+        }
         
-        ChainedHashTable table = new ChainedHashTable(5);
-        table.insert("howdy", 15);
-        table.insert("goodbye", 10);
-        System.out.println(table.insert("apple", 5));
-        System.out.println(table);
+        protected void compute() {
+            if (hi - lo == 1) {
+                body.accept(lo);
+            } else if (hi > lo) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new ChunkTask(lo, mid, body), new ChunkTask(mid, hi, body));
+            }
+        }
+    }
+    
+    /*
+     * writeSnapshot - writes the table to the specified file in the 
+     * format described in SnapshotHashTable, using the specified 
+     * serializers for the keys and the values.  The file can be read 
+     * back with readSnapshot, or searched without reading all of it 
+     * with a SnapshotHashTable.  Keys whose time to live has run out
+     * are removed first, and the others are written without their 
+     * times to live: the times are read from this table's clock, which
+     * means nothing to the process that reads the file, so every key
+     * in a snapshot is kept until it is removed.
+     */
+    public void writeSnapshot(Path file, Serializer keySerializer, Serializer valueSerializer)
+            throws IOException {
+        expire();
+        finishMigration();
         
-
-        ChainedHashTable table = new ChainedHashTable(5);
-        table.insert("howdy", 15);
-        table.insert("goodbye", 10);
-        table.insert("apple", 5);
-        table.insert("howdy", 25);    // insert a duplicate
-        Object[] keys = table.getAllKeys();
-        System.out.println(Arrays.toString(keys));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer out = ByteBuffer.allocateDirect(SNAPSHOT_BUFFER);
+            out.put(new byte[SnapshotHashTable.HEADER_BYTES]);      // filled in at the end
+            
+            long[] starts = new long[table.length + 1];
+            long pos = SnapshotHashTable.HEADER_BYTES;
+            for (int i = 0; i < table.length; i++) {
+                starts[i] = pos;
+                for (Node trav = table[i]; trav != null; trav = trav.next) {
+                    byte[] keyBytes = keySerializer.toBytes(trav.key);
+                    int count = 0;
+                    for (Object value : trav.values) {
+                        count++;
+                    }
+                    room(channel, out, 8);
+                    out.putInt(trav.hash).putInt(keyBytes.length);
+                    putBytes(channel, out, keyBytes);
+                    room(channel, out, 4);
+                    out.putInt(count);
+                    pos += 12 + keyBytes.length;
+                    for (Object value : trav.values) {
+                        byte[] valueBytes = valueSerializer.toBytes(value);
+                        room(channel, out, 4);
+                        out.putInt(valueBytes.length);
+                        putBytes(channel, out, valueBytes);
+                        pos += 4 + valueBytes.length;
+                    }
+                }
+            }
+            starts[table.length] = pos;
+            for (long start : starts) {
+                room(channel, out, 8);
+                out.putLong(start);
+            }
+            drain(channel, out);
+            
+            ByteBuffer header = ByteBuffer.allocate(SnapshotHashTable.HEADER_BYTES);
+            header.putInt(SnapshotHashTable.MAGIC);
+            header.putInt(SnapshotHashTable.VERSION);
+            header.putInt(powerOfTwo ? SnapshotHashTable.POWER_OF_TWO : 0);
+            header.putInt(table.length);
+            header.putLong(numKeys);
+            header.putDouble(maxLoad);
+            header.putLong(pos);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+    }
+    
+    /* room - writes out the buffer if it has fewer than n bytes left */
+    private static void room(FileChannel channel, ByteBuffer out, int n) throws IOException {
+        if (out.remaining() < n) {
+            drain(channel, out);
+        }
+    }
+    
+    /* putBytes - adds the specified bytes to the buffer, writing it out as it fills */
+    private static void putBytes(FileChannel channel, ByteBuffer out, byte[] bytes)
+            throws IOException {
+        if (bytes.length > out.capacity()) {        // too big to buffer
+            drain(channel, out);
+            ByteBuffer big = ByteBuffer.wrap(bytes);
+            while (big.hasRemaining()) {
+                channel.write(big);
+            }
+            return;
+        }
+        room(channel, out, bytes.length);
+        out.put(bytes);
+    }
+    
+    /* drain - writes out everything in the buffer and empties it */
+    private static void drain(FileChannel channel, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+    
+    /*
+     * readSnapshot - returns a new table with the contents of the
+     * specified snapshot file, which was written by writeSnapshot with
+     * the same serializers.  The file is mapped into memory and its 
+     * records are linked into the buckets they came from, so no key 
+     * is hashed again.
+     */
+    public static ChainedHashTable readSnapshot(Path file, Serializer keySerializer,
+                                                Serializer valueSerializer) throws IOException {
+        MappedFile in = new MappedFile(file);
+        try {
+            if (in.length() < SnapshotHashTable.HEADER_BYTES
+                    || in.getInt(0) != SnapshotHashTable.MAGIC) {
+                throw new IOException(file + " is not a snapshot");
+            }
+            if (in.getInt(4) != SnapshotHashTable.VERSION) {
+                throw new IOException(file + " has unknown snapshot version " + in.getInt(4));
+            }
+            boolean powerOfTwo = (in.getInt(8) & SnapshotHashTable.POWER_OF_TWO) != 0;
+            int size = in.getInt(12);
+            long index = in.getLong(32);
+            ChainedHashTable result = new ChainedHashTable(size, in.getDouble(24), powerOfTwo);
+            Node[] buckets = result.table;
+            
+            long pos = SnapshotHashTable.HEADER_BYTES;
+            for (int i = 0; i < size; i++) {
+                long end = in.getLong(index + 8L * (i + 1));
+                Node last = null;
+                while (pos < end) {
+                    int hash = in.getInt(pos);
+                    int keyLength = in.getInt(pos + 4);
+                    Object key = keySerializer.fromBytes(in.getBytes(pos + 8, keyLength));
+                    pos += 8 + keyLength;
+                    ChunkedArrayQueue<Object> values = new ChunkedArrayQueue<Object>();
+                    int count = in.getInt(pos);
+                    pos += 4;
+                    for (int v = 0; v < count; v++) {
+                        int length = in.getInt(pos);
+                        values.insert(valueSerializer.fromBytes(in.getBytes(pos + 4, length)));
+                        pos += 4 + length;
+                    }
+                    
+                    Node node = result.new Node(key, hash, values);
+                    if (last == null) {
+                        buckets[i] = node;
+                    } else {
+                        last.next = node;
+                    }
+                    last = node;
+                    result.numKeys++;
+                }
+                if (longerThan(buckets[i], TREEIFY_THRESHOLD)) {
+                    result.treeify(buckets, i);
+                }
+            }
+            return result;
+        } finally {
+            in.close();
+        }
+    }
+    
+    /*
+     * setCacheLimits - turns on cache mode.  From now on the table
+     * holds no more than maxKeys keys: inserting a new key when the
+     * table is full evicts a key that has not been searched for and
+     * has not had a value added since the eviction sweep last passed
+     * it (CLOCK).  A new key counts as unused until it is used again,
+     * so a scan of keys that are never looked up does not push out
+     * the keys that are.  Each
+     * key keeps only its newest maxValuesPerKey values, the oldest 
+     * being dropped.  A limit of 0 means no limit.  Keys over the new
+     * limit are evicted right away; values over it are dropped the
+     * next time a value is added to their key.
+     */
+    public void setCacheLimits(int maxKeys, int maxValuesPerKey) {
+        if (maxKeys < 0 || maxValuesPerKey < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.maxKeys = maxKeys;
+        this.maxValuesPerKey = maxValuesPerKey;
+        if (maxKeys > 0 && numKeys > maxKeys) {
+            evict(numKeys - maxKeys);
+        }
+    }
+    
+    /* the number of searches that found their key */
+    public long getHits() {
+        return hits;
+    }
+    
+    /* the number of searches that did not find their key */
+    public long getMisses() {
+        return misses;
+    }
+    
+    /* the number of keys evicted in cache mode */
+    public long getEvictions() {
+        return evictions;
+    }
+    
+    /*
+     * evict - removes the specified number of keys, choosing them with
+     * the CLOCK policy.  The hand sweeps the buckets in order, one 
+     * whole bucket at a time; a node that is marked as referenced is 
+     * unmarked and passed over, and unmarked nodes are removed until
+     * enough have been.  Each mark is cleared at most once per search
+     * or insert that set it, so eviction takes constant time on average.
+     * Removing a node from a tree can reorder the tree's chain, so the
+     * nodes of a tree bucket are listed before any of them is removed,
+     * and each is looked at exactly once.
+     */
+    private void evict(int count) {
+        finishMigration();
         
+        while (count > 0 && numKeys > 0) {
+            if (clockHand >= table.length) {
+                clockHand = 0;
+            }
+            own(table, clockHand);
+            Node trav = table[clockHand];
+            if (isTree(trav)) {
+                ArrayList<Node> nodes = new ArrayList<Node>();
+                for ( ; trav != null; trav = trav.next) {
+                    nodes.add(trav);
+                }
+                for (Node node : nodes) {
+                    count = sweep(node, count);
+                }
+            } else {
+                while (trav != null) {
+                    Node next = trav.next;
+                    count = sweep(trav, count);
+                    trav = next;
+                }
+            }
+            clockHand++;
+        }
+    }
+    
+    /*
+     * sweep - passes the CLOCK hand over the specified node in bucket
+     * clockHand, evicting it if it is not marked and count is not 0, 
+     * and returns the number of keys still to be evicted
+     */
+    private int sweep(Node trav, int count) {
+        if (trav.referenced) {
+            trav.referenced = false;
+        } else if (count > 0) {
+            unlink(table, clockHand, trav.key, trav.hash);
+            if (valueIndex != null) {
+                unindex(trav);
+            }
+            numKeys--;
+            evictions++;
+            count--;
+        }
+        return count;
+    }
+    
+    /*** Methods for metrics ***/
+    
+    /*
+     * enableMetrics - starts counting operations, probes and resizes,
+     * takes a first sample of the histograms (see sampleMetrics), and
+     * returns the metrics, which can be exported through JMX with 
+     * their register method.  While metrics are disabled, which they
+     * are to begin with, the only cost on each operation is a check of
+     * a field that is null.
+     */
+    public HashTableMetrics enableMetrics() {
+        if (metrics == null) {
+            metrics = new HashTableMetrics();
+        }
+        sampleMetrics();
+        return metrics;
+    }
+    
+    /* disableMetrics - stops keeping metrics */
+    public void disableMetrics() {
+        metrics = null;
+        resizeStart = 0;
+    }
+    
+    /* getMetrics - returns the metrics, or null if they are not enabled */
+    public HashTableMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /*
+     * sampleMetrics - brings the metrics' counters up to date, and 
+     * walks the table to update the chain-length and value-count 
+     * histograms, the maximum chain length and the load that the 
+     * metrics report.  It takes time in proportion to the size of the
+     * table, so it is only done when asked for.
+     */
+    public void sampleMetrics() {
+        if (metrics == null) {
+            return;
+        }
+        metrics.flush();
+        finishMigration();
+        
+        long[] chainLengths = new long[HashTableMetrics.CHAIN_LENGTHS];
+        long[] valueCounts = new long[HashTableMetrics.VALUE_COUNTS];
+        int maxChainLength = 0;
+        for (int i = 0; i < table.length; i++) {
+            int length = 0;
+            for (Node trav = table[i]; trav != null; trav = trav.next) {
+                length++;
+                int count = Math.max(1, trav.values.size());
+                valueCounts[31 - Integer.numberOfLeadingZeros(count)]++;
+            }
+            chainLengths[Math.min(length, chainLengths.length - 1)]++;
+            maxChainLength = Math.max(maxChainLength, length);
+        }
+        metrics.update(new HashTableMetrics.Sample(chainLengths, maxChainLength, valueCounts, load()));
+    }
+    
+    /*
+     * searched - counts a search for the specified key.  Counting the
+     * probes means walking the chain a second time, so they are only
+     * counted for one search in every PROBE_SAMPLE.
+     */
+    private void searched(boolean hit, Object key, int hash) {
+        boolean sample = (metrics.pendingSearches++ % HashTableMetrics.PROBE_SAMPLE) == 0;
+        if (hit) {
+            metrics.pendingHits++;
+            if (sample) {
+                metrics.pendingSampledHits++;
+                metrics.pendingHitProbes += probes(key, hash);
+            }
+        } else {
+            metrics.pendingMisses++;
+            if (sample) {
+                metrics.pendingSampledMisses++;
+                metrics.pendingMissProbes += probes(key, hash);
+            }
+        }
+        metrics.counted();
+    }
+    
+    /* resized - counts a resize that started at the specified time */
+    private void resized(long start) {
+        metrics.resizes.increment();
+        metrics.resizeNanos.add(System.nanoTime() - start);
+    }
+    
+    /*
+     * probes - returns the number of nodes that a search for the 
+     * specified key looks at, counting a tree bucket as its height
+     */
+    private int probes(Object key, int hash) {
+        if (tags != null && !mayContain(hash)) {
+            return 0;           // the miss filter answered without looking at a node
+        }
+        int probes = 0;
+        if (oldTable != null) {
+            int j = index(hash, oldTable.length);
+            if (j >= migrateIndex) {
+                probes = probes(oldTable[j], key, hash);
+                if (find(oldTable[j], key, hash) != null) {
+                    return probes;
+                }
+            }
+        }
+        return probes + probes(table[index(hash, table.length)], key, hash);
+    }
+    
+    /* probes - returns the number of nodes looked at in the chain that starts at trav */
+    private int probes(Node trav, Object key, int hash) {
+        if (isTree(trav)) {
+            return height((TreeNode) trav);
+        }
+        int probes = 0;
+        while (trav != null) {
+            probes++;
+            if (matches(trav, key, hash)) {
+                break;
+            }
+            trav = trav.next;
+        }
+        return probes;
+    }
+    
+    /*** Methods for keys with a time to live ***/
+    
+    /*
+     * insertExpiring - inserts the specified (key, value) pair and 
+     * makes the key expire ttl milliseconds from now, when it is 
+     * removed together with all of its values.  Inserting the key again
+     * with insertExpiring sets a new time; inserting it with insert 
+     * keeps the time it has.  An expired key is never found, and is 
+     * removed by the timer wheel the next time that the table is used
+     * or expire() is called.  Times to live are not kept in a snapshot
+     * file (see writeSnapshot).
+     */
+    public boolean insertExpiring(Object key, Object value, long ttl) {
+        if (key == null || ttl <= 0) {
+            throw new IllegalArgumentException();
+        }
+        expire();
+        int hash = hash(key);
+        insert(key, hash, value);
+        
+        Node node = owned(findNode(key, hash));
+        long now = clock.getAsLong();
+        long expires = now + ttl;
+        if (timers == 0) {
+            wheelTime = now;        // the wheel stands still while it is empty
+        }
+        if (node.expires == 0 || expires < node.expires) {
+            schedule(new Timer(key, hash, expires));
+        }
+        // a later time needs no new timer: the key's timer finds the 
+        // new time when it goes off and waits again
+        node.expires = expires;
+        return true;
+    }
+    
+    /*
+     * setClock - makes the table read the time in milliseconds from the
+     * specified clock instead of System.nanoTime(), for example to test
+     * expiry.  It cannot be changed once a key has a time to live.
+     */
+    public void setClock(LongSupplier clock) {
+        if (timers > 0) {
+            throw new IllegalStateException("keys are waiting to expire");
+        }
+        this.clock = clock;
+    }
+    
+    /* expired - returns true if the specified node's key has expired */
+    private boolean expired(Node trav) {
+        return trav.expires != 0 && trav.expires <= clock.getAsLong();
+    }
+    
+    /* 
+     * findLive - returns the node for the specified key, or null if it
+     * is not in the table.  If the key has expired, it is removed.
+     */
+    private Node findLive(Object key, int hash) {
+        Node trav = findNode(key, hash);
+        if (trav != null && expired(trav)) {
+            remove(key, hash);
+            return null;
+        }
+        return trav;
+    }
+    
+    /*
+     * expire - removes every key whose time to live has run out.  The
+     * timer wheel jumps from one millisecond in which something happens
+     * to the next (see nextEvent), and each timer is looked at once per
+     * level that it passes through, so expiry costs amortized O(1) per
+     * key instead of a scan of the table, and catching up after the
+     * table has been idle does not depend on how long it was idle.
+     */
+    public void expire() {
+        if (timers == 0) {
+            return;
+        }
+        long now = clock.getAsLong();
+        while (wheelTime < now && timers > 0) {
+            wheelTime = Math.min(now, nextEvent());
+            if ((wheelTime & WHEEL_MASK) == 0) {
+                cascade();
+            }
+            fire((int) (wheelTime & WHEEL_MASK));
+        }
+    }
+    
+    /*
+     * nextEvent - returns the first time after wheelTime at which a slot
+     * of the lowest level has timers to fire or a slot of a higher level
+     * has timers to cascade.  A slot at level l comes around once every
+     * 2^(WHEEL_BITS * l) milliseconds, so each level is searched for its
+     * next occupied slot, at most one full turn ahead.
+     */
+    private long nextEvent() {
+        long next = Long.MAX_VALUE;
+        for (int level = 0; level < WHEEL_LEVELS; level++) {
+            if (levelTimers[level] == 0) {
+                continue;
+            }
+            int shift = WHEEL_BITS * level;
+            long tick = wheelTime >>> shift;
+            for (int d = 1; d <= 1 << WHEEL_BITS; d++) {
+                if (wheel[level][(int) (tick + d) & WHEEL_MASK] != null) {
+                    next = Math.min(next, (tick + d) << shift);
+                    break;
+                }
+            }
+        }
+        return next;
+    }
+    
+    /*
+     * cascade - moves the timers in the slots of the upper levels that
+     * have just come around down to lower levels.  A level's slot comes
+     * around when the slot below it wraps around to 0.
+     */
+    private void cascade() {
+        for (int level = 1; level < WHEEL_LEVELS; level++) {
+            int slot = (int) (wheelTime >>> (WHEEL_BITS * level)) & WHEEL_MASK;
+            Timer timer = wheel[level][slot];
+            wheel[level][slot] = null;
+            while (timer != null) {
+                Timer next = timer.next;
+                levelTimers[level]--;
+                timers--;
+                schedule(timer);
+                timer = next;
+            }
+            if (slot != 0) {
+                break;
+            }
+        }
+    }
+    
+    /*
+     * fire - goes through the timers in the specified slot of the lowest
+     * level, removing each key that has expired.  A key whose time was
+     * put off gets its timer back for the new time, and the timer of a
+     * key that has been removed is dropped.
+     */
+    private void fire(int slot) {
+        Timer timer = wheel[0][slot];
+        wheel[0][slot] = null;
+        while (timer != null) {
+            Timer next = timer.next;
+            levelTimers[0]--;
+            timers--;
+            Node node = findNode(timer.key, timer.hash);
+            if (node != null && node.expires != 0) {
+                if (node.expires <= wheelTime) {
+                    remove(timer.key, timer.hash);
+                } else {
+                    timer.expires = node.expires;
+                    schedule(timer);
+                }
+            }
+            timer = next;
+        }
+    }
+    
+    /*
+     * schedule - adds a timer to the wheel, at the lowest level whose
+     * slots reach from wheelTime to the timer's time.  A timer that is
+     * further off than the whole wheel is put in the farthest slot, 
+     * and moved on from there when that slot comes around.
+     */
+    private void schedule(Timer timer) {
+        if (wheel == null) {
+            wheel = new Timer[WHEEL_LEVELS][1 << WHEEL_BITS];
+            levelTimers = new int[WHEEL_LEVELS];
+        }
+        long at = Math.max(timer.expires, wheelTime);
+        if (at - wheelTime >= WHEEL_SPAN) {
+            at = wheelTime + WHEEL_SPAN - 1;
+        }
+        int level = 0;
+        while (at - wheelTime >= 1L << (WHEEL_BITS * (level + 1))) {
+            level++;
+        }
+        int slot = (int) (at >>> (WHEEL_BITS * level)) & WHEEL_MASK;
+        timer.next = wheel[level][slot];
+        wheel[level][slot] = timer;
+        levelTimers[level]++;
+        timers++;
+    }
+    
+    /*** Methods for finding keys by value ***/
+    
+    /*
+     * keysWithValue - returns the keys that have the specified value
+     * among their values, in no particular order.  The first call walks
+     * the whole table to build a ValueIndex, which insert, remove, 
+     * eviction and expiry then keep up to date, so later calls take 
+     * constant time on average plus the time to copy out the keys.
+     * The index costs a HashMap entry for each different value, and a
+     * second entry for each key of a value that several keys have.
+     * Values added to or removed from a queue that search returns are
+     * not seen by the index.
+     */
+    public Object[] keysWithValue(Object value) {
+        expire();
+        if (valueIndex == null) {
+            ValueIndex index = new ValueIndex();
+            forEachPair((key, v) -> index.add(v, key));
+            valueIndex = index;
+        }
+        return valueIndex.keys(value);
+    }
+    
+    /* dropValueIndex - frees the index that keysWithValue built, until it is next called */
+    public void dropValueIndex() {
+        valueIndex = null;
+    }
+    
+    /* unindex - removes the pairs of a node that has left the table from the value index */
+    private void unindex(Node node) {
+        for (Object value : node.values) {
+            valueIndex.remove(value, node.key);
+        }
+    }
+    
+    /*** Methods for snapshots ***/
+    
+    /*
+     * snapshot - returns a read-only view of the table as it is now,
+     * which later changes to the table do not affect.  Making one takes
+     * constant time: the snapshot shares the table's bucket arrays and
+     * nodes, and the first change to a bucket after a snapshot is made
+     * saves the bucket's chain for the snapshot and gives the table a
+     * copy of it to change (see own).  Each bucket is copied at most 
+     * once per snapshot, and not at all once the snapshot is closed or
+     * no longer used.
+     *
+     * A snapshot can be read by other threads while the table is being
+     * changed, with no locking; the table itself must still be used by
+     * one thread at a time, and that includes calling snapshot().  The
+     * queues of values that a snapshot returns must not be changed, and
+     * neither may those that the table's search returns while there 
+     * are snapshots.
+     */
+    public TableSnapshot snapshot() {
+        expire();
+        TableSnapshot snapshot = new TableSnapshot();
+        if (snapshots == null) {
+            snapshots = new ArrayList<WeakReference<TableSnapshot>>();
+        }
+        snapshots.add(new WeakReference<TableSnapshot>(snapshot));
+        return snapshot;
+    }
+    
+    /*
+     * own - makes sure that the chain in bucket i of the specified
+     * bucket array is not shared with a snapshot, so that it can be 
+     * changed.  If a snapshot that can see the bucket has not saved it
+     * yet, the chain is saved in that snapshot and replaced by a copy.
+     * Snapshots that have been closed or collected are dropped here.
+     * Every later change to the bucket goes through setBucket, so a
+     * snapshot that sees the change also sees what was saved here.
+     */
+    private void own(Node[] buckets, int i) {
+        if (snapshots == null) {
+            return;
+        }
+        Node head = buckets[i];
+        boolean shared = false;
+        for (int s = snapshots.size() - 1; s >= 0; s--) {
+            TableSnapshot snapshot = snapshots.get(s).get();
+            if (snapshot == null || snapshot.closed) {
+                snapshots.remove(s);
+            } else {
+                shared |= snapshot.save(buckets, i, (head == null) ? NO_NODES : head);
+            }
+        }
+        if (snapshots.isEmpty()) {
+            snapshots = null;
+        }
+        if (shared && head != null) {
+            setBucket(buckets, i, copyChain(head));
+        }
+    }
+    
+    /*
+     * setBucket - makes the specified node the first node of bucket i
+     * of the specified bucket array.  While there are snapshots, this is
+     * a release store: a snapshot that reads the bucket with an acquire
+     * (see TableSnapshot.head) and finds a node stored here also finds
+     * the chain that own saved before it, and every write to the node.
+     */
+    private void setBucket(Node[] buckets, int i, Node node) {
+        if (snapshots == null) {
+            buckets[i] = node;
+        } else {
+            BUCKET.setRelease(buckets, i, node);
+        }
+    }
+    
+    /*
+     * owned - returns the node for the same key as the specified node
+     * once its bucket is not shared with a snapshot.  The node is always
+     * looked up again: it may have been found before its bucket was
+     * copied, by this call or an earlier one, and then belong to a
+     * snapshot instead of the table.
+     */
+    private Node owned(Node trav) {
+        if (snapshots == null) {
+            return trav;
+        }
+        if (oldTable != null) {
+            int j = index(trav.hash, oldTable.length);
+            if (j >= migrateIndex) {
+                own(oldTable, j);
+            }
+        }
+        own(table, index(trav.hash, table.length));
+        return findNode(trav.key, trav.hash);
+    }
+    
+    /* copyChain - returns a copy of the chain or tree that starts at head, with copies of the values */
+    private Node copyChain(Node head) {
+        Node first = null;
+        Node last = null;
+        for (Node trav = head; trav != null; trav = trav.next) {
+            Node copy = new Node(trav);
+            copy.values = new ChunkedArrayQueue<Object>();
+            for (Object value : trav.values) {
+                copy.values.insert(value);
+            }
+            if (first == null) {
+                first = copy;
+            } else {
+                last.next = copy;
+            }
+            last = copy;
+        }
+        if (isTree(head)) {
+            Node[] bucket = {first};
+            treeify(bucket, 0);
+            first = bucket[0];
+        }
+        return first;
+    }
+    
+    /*
+     * A read-only view of the table at the time it was made (see
+     * snapshot).  It keeps the bucket arrays that the table had, and
+     * how far any rehash had got, and looks up keys the way the table
+     * did then.  saved and savedOld hold the original chains of the
+     * buckets of those arrays that the table has changed since.
+     */
+    public class TableSnapshot implements HashTable, AutoCloseable {
+        private final Node[] buckets = table;
+        private final Node[] oldBuckets = oldTable;
+        private final int oldIndex = migrateIndex;
+        private final int numKeys = ChainedHashTable.this.numKeys;
+        private final ConcurrentHashMap<Integer, Object> saved = new ConcurrentHashMap<Integer, Object>();
+        private final ConcurrentHashMap<Integer, Object> savedOld = new ConcurrentHashMap<Integer, Object>();
+        private volatile boolean closed;
+        
+        private TableSnapshot() {
+        }
+        
+        /*
+         * save - saves head as the original chain of bucket i of the
+         * specified array if this snapshot can see that bucket and has
+         * not saved it already, and returns true if it did
+         */
+        private boolean save(Node[] array, int i, Object head) {
+            if (array == buckets) {
+                return !saved.containsKey(i) && saved.putIfAbsent(i, head) == null;
+            } else if (array == oldBuckets && i >= oldIndex) {
+                return !savedOld.containsKey(i) && savedOld.putIfAbsent(i, head) == null;
+            }
+            return false;
+        }
+        
+        /*
+         * head - returns the first node of bucket i of the specified
+         * array as it was when the snapshot was made.  The bucket is
+         * read before the saved chains are checked: the table saves a
+         * chain before it changes the bucket, and every change to a
+         * bucket while there are snapshots is a release store (see
+         * setBucket), so if the bucket read had already changed, the
+         * acquire makes sure the saved chain is found.  (Nodes are only
+         * changed in place after own, in chains that the snapshot never
+         * follows for that reason.)
+         */
+        private Node head(Node[] array, ConcurrentHashMap<Integer, Object> saved, int i) {
+            if (closed) {
+                throw new IllegalStateException("the snapshot is closed");
+            }
+            Node head = (Node) BUCKET.getAcquire(array, i);
+            Object original = saved.get(i);
+            if (original == null) {
+                return head;
+            }
+            return (original == NO_NODES) ? null : (Node) original;
+        }
+        
+        public Queue<Object> search(Object key) {
+            if (key == null) {
+                throw new IllegalArgumentException();
+            }
+            int hash = hash(key);
+            if (oldBuckets != null) {
+                int j = index(hash, oldBuckets.length);
+                if (j >= oldIndex) {
+                    Node trav = find(head(oldBuckets, savedOld, j), key, hash);
+                    if (trav != null) {
+                        return trav.values;
+                    }
+                }
+            }
+            Node trav = find(head(buckets, saved, index(hash, buckets.length)), key, hash);
+            return (trav == null) ? null : trav.values;
+        }
+        
+        public boolean insert(Object key, Object value) {
+            throw new UnsupportedOperationException("a snapshot is read-only");
+        }
+        
+        public Queue<Object> remove(Object key) {
+            throw new UnsupportedOperationException("a snapshot is read-only");
+        }
+        
+        public int getNumKeys() {
+            return numKeys;
+        }
+        
+        /* forEachPair - performs the specified action on every (key, value) pair */
+        public void forEachPair(BiConsumer<Object, Object> action) {
+            if (oldBuckets != null) {
+                for (int j = oldIndex; j < oldBuckets.length; j++) {
+                    forEachPair(head(oldBuckets, savedOld, j), action);
+                }
+            }
+            for (int i = 0; i < buckets.length; i++) {
+                forEachPair(head(buckets, saved, i), action);
+            }
+        }
+        
+        private void forEachPair(Node trav, BiConsumer<Object, Object> action) {
+            for ( ; trav != null; trav = trav.next) {
+                Object key = trav.key;
+                trav.values.forEach(value -> action.accept(key, value));
+            }
+        }
+        
+        public Object[] getAllKeys() {
+            Object[] keys = new Object[numKeys];
+            int count = 0;
+            if (oldBuckets != null) {
+                for (int j = oldIndex; j < oldBuckets.length; j++) {
+                    for (Node trav = head(oldBuckets, savedOld, j); trav != null; trav = trav.next) {
+                        keys[count++] = trav.key;
+                    }
+                }
+            }
+            for (int i = 0; i < buckets.length; i++) {
+                for (Node trav = head(buckets, saved, i); trav != null; trav = trav.next) {
+                    keys[count++] = trav.key;
+                }
+            }
+            return keys;
+        }
+        
+        /* close - stops the table from saving buckets for this snapshot, which can no longer be read */
+        public void close() {
+            closed = true;
+        }
+    }
+    
+    /*** Methods for the miss filter ***/
+    
+    /*
+     * enableMissFilter - turns on a filter that lets search, searchAll
+     * and the batch methods tell that most missing keys are missing
+     * without looking at any node.  Each key has a tag with two of 32
+     * bits set, taken from its hash, and each bucket keeps the union of
+     * the tags of its keys in an int alongside the bucket array.  A key
+     * whose tag is not all in its bucket's union cannot be there.  At
+     * a load of 1.0, about 1 missing key in 100 gets through; at 4.0,
+     * about 1 in 16.  Keys with the same hash have the same tag, so the
+     * filter does not help with them.  Inserts add tags to a bucket's
+     * union, and a remove recomputes it from the keys that are left.
+     */
+    public void enableMissFilter() {
+        if (tags != null) {
+            return;
+        }
+        finishMigration();
+        tags = new int[table.length];
+        for (int i = 0; i < table.length; i++) {
+            tags[i] = chainTag(table[i]);
+        }
+    }
+    
+    /* disableMissFilter - turns the miss filter off and frees its tags */
+    public void disableMissFilter() {
+        tags = null;
+        oldTags = null;
+    }
+    
+    /* the number of searches for missing keys that the miss filter answered */
+    public long getFilterRejects() {
+        return filterRejects;
+    }
+    
+    /* the number of searches for missing keys that got past the miss filter */
+    public long getFilterFalsePositives() {
+        return filterFalsePositives;
+    }
+    
+    /* the fraction of searches for missing keys that got past the miss filter */
+    public double getFilterFalsePositiveRate() {
+        long missing = filterRejects + filterFalsePositives;
+        return (missing == 0) ? 0 : (double) filterFalsePositives / missing;
+    }
+    
+    /*
+     * tag - returns the tag of a key with the specified hash.  The hash
+     * is multiplied by an odd constant first, so that every bit of it
+     * affects the top ten bits, which choose the two tag bits; the
+     * bucket index comes from the low bits or from %, so the tag and
+     * the index do not depend on the same bits in the same way.
+     */
+    private static int tag(int hash) {
+        int h = hash * 0x9E3779B9;
+        return (1 << (h >>> 27)) | (1 << ((h >>> 22) & 31));
+    }
+    
+    /* chainTag - returns the union of the tags of the keys in the chain that starts at trav */
+    private static int chainTag(Node trav) {
+        int union = 0;
+        for ( ; trav != null; trav = trav.next) {
+            union |= tag(trav.hash);
+        }
+        return union;
+    }
+    
+    /*
+     * mayContain - returns false if the miss filter shows that no key
+     * with the specified hash is in the table
+     */
+    private boolean mayContain(int hash) {
+        int tag = tag(hash);
+        if (oldTable != null) {
+            int j = index(hash, oldTable.length);
+            if (j >= migrateIndex && (oldTags[j] & tag) == tag) {
+                return true;
+            }
+        }
+        return (tags[index(hash, table.length)] & tag) == tag;
+    }
+    
+    /* tagsOf - returns the tags for the specified bucket array, or null if it has none */
+    private int[] tagsOf(Node[] buckets) {
+        if (tags == null) {
+            return null;
+        } else if (buckets == table) {
+            return tags;
+        }
+        return (buckets == oldTable) ? oldTags : null;
+    }
+    
+    /*
+     * retag - recomputes the tags of bucket i of the specified array
+     * after the specified node has been unlinked from it (if it is not
+     * null), and returns the node
+     */
+    private Node retag(Node[] buckets, int i, Node removed) {
+        int[] bucketTags = tagsOf(buckets);
+        if (removed != null && bucketTags != null) {
+            bucketTags[i] = chainTag(buckets[i]);
+        }
+        return removed;
+    }
+    
+    /*** Methods for buckets that have been turned into trees ***/
+    
+    /* isTree - returns true if the bucket that starts with head is a tree */
+    private static boolean isTree(Node head) {
+        return head instanceof TreeNode && ((TreeNode) head).root;
+    }
+    
+    /* 
+     * compareKeys - orders two keys with the same hash.  Keys of the 
+     * same Comparable class are ordered by compareTo, keys of different
+     * classes by class name, and 0 is returned otherwise.
+     */
+    @SuppressWarnings("unchecked")
+    private static int compareKeys(Object a, Object b) {
+        Class<?> ca = a.getClass();
+        Class<?> cb = b.getClass();
+        if (ca != cb) {
+            return ca.getName().compareTo(cb.getName());
+        }
+        if (!(a instanceof Comparable)) {
+            return 0;
+        }
+        try {
+            return Integer.signum(((Comparable<Object>) a).compareTo(b));
+        } catch (ClassCastException e) {    // Comparable to some other type
+            return 0;
+        }
+    }
+    
+    /*
+     * compareNodes - the order of the nodes in a tree: by hash, then by
+     * compareKeys, then by the order in which the nodes were added
+     */
+    private static int compareNodes(TreeNode a, TreeNode b) {
+        if (a.hash != b.hash) {
+            return (a.hash < b.hash) ? -1 : 1;
+        }
+        int c = compareKeys(a.key, b.key);
+        if (c != 0) {
+            return c;
+        }
+        return Long.compare(a.order, b.order);
+    }
+    
+    /*
+     * findInTree - returns the node for the specified key in the tree
+     * with the specified root, or null if the key is not in the tree.
+     * When the key cannot be ordered against a node with the same hash,
+     * both of that node's subtrees are searched.
+     */
+    private static TreeNode findInTree(TreeNode p, Object key, int hash) {
+        while (p != null) {
+            if (hash != p.hash) {
+                p = (hash < p.hash) ? p.left : p.right;
+            } else if (p.key == key || key.equals(p.key)) {
+                return p;
+            } else {
+                int c = compareKeys(key, p.key);
+                if (c < 0) {
+                    p = p.left;
+                } else if (c > 0) {
+                    p = p.right;
+                } else {
+                    TreeNode q = findInTree(p.right, key, hash);
+                    if (q != null) {
+                        return q;
+                    }
+                    p = p.left;
+                }
+            }
+        }
+        return null;
+    }
+    
+    /*
+     * treeify - turns the chain at position i of the specified bucket
+     * array into a tree.  The nodes keep their order in the chain.
+     */
+    private void treeify(Node[] buckets, int i) {
+        TreeNode first = null;
+        TreeNode last = null;
+        TreeNode root = null;
+        for (Node trav = buckets[i]; trav != null; trav = trav.next) {
+            TreeNode t;
+            if (trav instanceof TreeNode) {
+                t = (TreeNode) trav;
+            } else {
+                t = new TreeNode(trav);
+                treeCopies++;
+            }
+            t.left = t.right = null;
+            t.height = 1;
+            t.root = false;
+            t.order = treeOrder.getAndIncrement();
+            t.prev = last;
+            if (last == null) {
+                first = t;
+            } else {
+                last.next = t;
+            }
+            last = t;
+            root = insertInTree(root, t);
+        }
+        last.next = null;
+        setBucket(buckets, i, first);
+        moveRootToFront(buckets, i, root);
+    }
+    
+    /*
+     * untreeify - turns the tree at position i of the specified bucket
+     * array back into a plain chain, in the same order
+     */
+    private static void untreeify(Node[] buckets, int i) {
+        for (Node trav = buckets[i]; trav != null; trav = trav.next) {
+            TreeNode t = (TreeNode) trav;
+            t.left = t.right = t.prev = null;
+            t.root = false;
+        }
+    }
+    
+    /*
+     * linkIntoTree - adds the specified node to the tree at position i
+     * of the specified bucket array.  In the chain, the new node goes
+     * right after the root.
+     */
+    private void linkIntoTree(Node[] buckets, int i, Node node) {
+        TreeNode t;
+        if (node instanceof TreeNode) {
+            t = (TreeNode) node;
+        } else {
+            t = new TreeNode(node);
+            treeCopies++;
+        }
+        t.left = t.right = null;
+        t.height = 1;
+        t.root = false;
+        t.order = treeOrder.getAndIncrement();
+        
+        TreeNode root = (TreeNode) buckets[i];
+        t.prev = root;
+        t.next = root.next;
+        if (root.next != null) {
+            ((TreeNode) root.next).prev = t;
+        }
+        root.next = t;
+        moveRootToFront(buckets, i, insertInTree(root, t));
+    }
+    
+    /*
+     * unlinkFromTree - removes the node for the specified key from the
+     * tree at position i of the specified bucket array, and returns it
+     * (or null if the key is not in that tree).  A tree that gets small
+     * enough is turned back into a chain.
+     */
+    private Node unlinkFromTree(Node[] buckets, int i, Object key, int hash) {
+        TreeNode root = (TreeNode) buckets[i];
+        TreeNode t = findInTree(root, key, hash);
+        if (t == null) {
+            return null;
+        }
+        
+        if (t.prev == null) {
+            setBucket(buckets, i, t.next);
+        } else {
+            t.prev.next = t.next;
+        }
+        if (t.next != null) {
+            ((TreeNode) t.next).prev = t.prev;
+        }
+        root = deleteFromTree(root, t);
+        t.next = t.left = t.right = t.prev = null;
+        t.root = false;
+        
+        if (root != null) {
+            if (longerThan(buckets[i], UNTREEIFY_THRESHOLD)) {
+                moveRootToFront(buckets, i, root);
+            } else {
+                untreeify(buckets, i);
+            }
+        }
+        return t;
+    }
+    
+    /*
+     * moveRootToFront - makes the specified root the first node in the
+     * chain at position i of the specified bucket array
+     */
+    private void moveRootToFront(Node[] buckets, int i, TreeNode root) {
+        TreeNode first = (TreeNode) buckets[i];
+        if (root != first) {
+            root.prev.next = root.next;
+            if (root.next != null) {
+                ((TreeNode) root.next).prev = root.prev;
+            }
+            root.prev = null;
+            root.next = first;
+            first.prev = root;
+            first.root = false;
+            setBucket(buckets, i, root);
+        }
+        root.root = true;
+    }
+    
+    /* height - returns the height of the specified subtree */
+    private static int height(TreeNode p) {
+        return (p == null) ? 0 : p.height;
+    }
+    
+    /* rotateLeft - rotates the subtree at p to the left and returns its new root */
+    private static TreeNode rotateLeft(TreeNode p) {
+        TreeNode r = p.right;
+        p.right = r.left;
+        r.left = p;
+        p.height = 1 + Math.max(height(p.left), height(p.right));
+        r.height = 1 + Math.max(height(r.left), height(r.right));
+        return r;
+    }
+    
+    /* rotateRight - rotates the subtree at p to the right and returns its new root */
+    private static TreeNode rotateRight(TreeNode p) {
+        TreeNode l = p.left;
+        p.left = l.right;
+        l.right = p;
+        p.height = 1 + Math.max(height(p.left), height(p.right));
+        l.height = 1 + Math.max(height(l.left), height(l.right));
+        return l;
+    }
+    
+    /*
+     * balance - restores the AVL property at p after one of its 
+     * subtrees changed height by one, and returns the subtree's new root
+     */
+    private static TreeNode balance(TreeNode p) {
+        int diff = height(p.left) - height(p.right);
+        if (diff > 1) {
+            if (height(p.left.left) < height(p.left.right)) {
+                p.left = rotateLeft(p.left);
+            }
+            return rotateRight(p);
+        } else if (diff < -1) {
+            if (height(p.right.right) < height(p.right.left)) {
+                p.right = rotateRight(p.right);
+            }
+            return rotateLeft(p);
+        }
+        p.height = 1 + Math.max(height(p.left), height(p.right));
+        return p;
+    }
+    
+    /*
+     * insertInTree - adds node t to the subtree with root p and returns
+     * the subtree's new root
+     */
+    private static TreeNode insertInTree(TreeNode p, TreeNode t) {
+        if (p == null) {
+            return t;
+        }
+        if (compareNodes(t, p) < 0) {
+            p.left = insertInTree(p.left, t);
+        } else {
+            p.right = insertInTree(p.right, t);
+        }
+        return balance(p);
+    }
+    
+    /*
+     * deleteFromTree - removes node t from the subtree with root p and
+     * returns the subtree's new root
+     */
+    private static TreeNode deleteFromTree(TreeNode p, TreeNode t) {
+        if (p == t) {
+            if (p.left == null) {
+                return p.right;
+            } else if (p.right == null) {
+                return p.left;
+            }
+            TreeNode successor = p.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            successor.right = deleteSmallest(p.right);
+            successor.left = p.left;
+            return balance(successor);
+        }
+        if (compareNodes(t, p) < 0) {
+            p.left = deleteFromTree(p.left, t);
+        } else {
+            p.right = deleteFromTree(p.right, t);
+        }
+        return balance(p);
+    }
+    
+    /*
+     * deleteSmallest - removes the smallest node from the subtree with
+     * root p and returns the subtree's new root
+     */
+    private static TreeNode deleteSmallest(TreeNode p) {
+        if (p.left == null) {
+            return p.right;
+        }
+        p.left = deleteSmallest(p.left);
+        return balance(p);
+    }
+    
+    /*
+     * toString - returns a string representation of this ChainedHashTable
+     * object. *** You should NOT change this method's output. ***
+     */
+    public String toString() {
+        return preview(Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+    
+    /*
+     * preview - returns the string that toString would, but with only
+     * the first maxBuckets buckets and the first maxKeys keys of each
+     * chain (see dump)
+     */
+    public String preview(int maxBuckets, int maxKeys) {
+        StringBuilder s = new StringBuilder();
+        try {
+            dump(s, maxBuckets, maxKeys);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);      // a StringBuilder does not throw
+        }
+        return s.toString();
+    }
+    
+    /*
+     * dump - writes the string that toString returns to the specified
+     * Appendable (a StringBuilder or a Writer, for example) as it goes,
+     * in time proportional to the size of the table
+     */
+    public void dump(Appendable out) throws IOException {
+        dump(out, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+    
+    /*
+     * dump - writes the first maxBuckets buckets, and the first maxKeys
+     * keys of each chain, in toString's format.  A chain that is cut
+     * short ends with "; ...", and a table that is cut short ends with 
+     * ", ...".
+     */
+    public void dump(Appendable out, int maxBuckets, int maxKeys) throws IOException {
+        if (maxBuckets < 0 || maxKeys < 0) {
+            throw new IllegalArgumentException();
+        }
+        expire();
+        finishMigration();
+        out.append('[');
+        
+        int buckets = Math.min(table.length, maxBuckets);
+        for (int i = 0; i < buckets; i++) {
+            if (table[i] == null) {
+                out.append("null");
+            } else {
+                out.append('{');
+                Node trav = table[i];
+                int keys = 0;
+                while (trav != null && keys < maxKeys) {
+                    out.append(String.valueOf(trav.key));
+                    keys++;
+                    if (trav.next != null) {
+                        out.append("; ");
+                    }
+                    trav = trav.next;
+                }
+                if (trav != null) {
+                    out.append("...");
+                }
+                out.append('}');
+            }
+        
+            if (i < table.length - 1) {
+                out.append(", ");
+            }
+        }
+        if (buckets < table.length) {
+            out.append("...");
+        }
+        
+        out.append(']');
+    }
+
+
+    public static void main(String[] args) {
+        /** Add your unit tests here 
+
+        ChainedHashTable table = new ChainedHashTable(5);
+        table.insert("howdy", 15);
+        table.insert("goodbye", 10);
+        System.out.println(table.insert("apple", 5));
+        table.insert("apple", 10);
+        System.out.println(table.remove("goodbye"));
+        System.out.println(table.search("howdy"));
+        System.out.println(table.search("apple"));
+        System.out.println(table.search("goodbye"));
+
+        System.out.println(table);
+        
+        ChainedHashTable table = new ChainedHashTable(5);
+        table.insert("howdy", 15);
+        table.insert("goodbye", 10);
+        table.insert("apple", 5);
+        System.out.println(table.getNumKeys());
+        table.insert("howdy", 25);     // insert a duplicate
+        System.out.println(table.getNumKeys());
+        
+        ChainedHashTable table = new ChainedHashTable(5);
+        table.insert("howdy", 15);
+        table.insert("goodbye", 10);
+        table.insert("apple", 5);
+        System.out.println(table.load());
+        table.insert("pear", 6);
+        System.out.println(table.load());
+        
+        ChainedHashTable table = new ChainedHashTable(5);
+        table.insert("howdy", 15);
+        table.insert("goodbye", 10);
+        System.out.println(table.insert("apple", 5));
+        System.out.println(table);
+        
+
+        ChainedHashTable table = new ChainedHashTable(5);
+        table.insert("howdy", 15);
+        table.insert("goodbye", 10);
+        table.insert("apple", 5);
+        table.insert("howdy", 25);    // insert a duplicate
+        Object[] keys = table.getAllKeys();
+        System.out.println(Arrays.toString(keys));
+        
+
+        ChainedHashTable table = new ChainedHashTable(5);
+        table.insert("howdy", 15);
+        table.insert("goodbye", 10);
+        table.insert("apple", 5);
+        System.out.println(table);
+        table.resize(7);
+        System.out.println(table);
+        **/
+
+        System.out.println("--- Testing method insert() ---");
+        System.out.println();
+        System.out.println("(0) Testing on insert()");
+        System.out.println();
+        
+        try {
+            ChainedHashTable table = new ChainedHashTable(5);
+            table.insert("strawberry", 15);
+            table.insert("apple", 5);
+            table.insert("banana",10);
+            String results = table.toString();
+            String expected = "[{apple}, null, null, {banana; strawberry}, null]";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected)); 
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        
+        }
+
+        System.out.println();
+
+        System.out.println("(1) Testing on insert()");
+        System.out.println();
+
+        try {
+            ChainedHashTable table = new ChainedHashTable(3);
+            table.insert("latte", 15);
+            table.insert("americano", 5);
+            table.insert("americano",10);
+            String results = table.toString();
+            String expected = "[null, {latte}, {americano}]";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected)); 
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        
+        }
+
+        System.out.println();
+
+        System.out.println("--- Testing method remove() ---");
+        System.out.println();
+        System.out.println("(0) Testing on remove()");
+        System.out.println();
+
+      
+        try {
+            ChainedHashTable table = new ChainedHashTable(4);
+            table.insert("piano", 15);
+            table.insert("violin", 5);
+            table.insert("cello",10);
+            table.insert("violin",10);
+            String results_values = table.remove("violin").toString();
+            String expected_values = "{5, 10}";
+            System.out.println("actual results returned:");
+            System.out.println(results_values);
+            System.out.println("expected results returned:");
+            System.out.println(expected_values);
+            String results_table = table.toString();
+            String expected_table = "[null, {cello; piano}, null, null]";
+            System.out.println("actual results table:");
+            System.out.println(results_table);
+            System.out.println("expected results table:");
+            System.out.println(expected_table);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results_values.equals(expected_values)); 
+            System.out.println(results_table.equals(expected_table));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        
+        }
+
+        System.out.println();
+        System.out.println("(1) Testing on remove()");
+        System.out.println();
+
+
+        try {
+            ChainedHashTable table = new ChainedHashTable(7);
+            table.insert("noodles", 20);
+            table.insert("pizza", 10);
+            table.insert("pizza", 15);
+            table.insert("pizza",25);
+            String results_values = table.remove("pizza").toString();
+            String expected_values = "{10, 15, 25}";
+            System.out.println("actual results returned:");
+            System.out.println(results_values);
+            System.out.println("expected results returned:");
+            System.out.println(expected_values);
+            String results_table = table.toString();
+            String expected_table = "[null, null, null, null, {noodles}, null, null]";
+            System.out.println("actual results table:");
+            System.out.println(results_table);
+            System.out.println("expected results table:");
+            System.out.println(expected_table);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results_values.equals(expected_values)); 
+            System.out.println(results_table.equals(expected_table));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        
+        }
+
+        System.out.println();
+
+        System.out.println("--- Testing method search() ---");
+        System.out.println();
+        System.out.println("(0) Testing on search()");
+        System.out.println();
+
+        try {
+            ChainedHashTable table = new ChainedHashTable(7);
+            table.insert("happy", 20);
+            table.insert("sad", 10);
+            table.insert("angry", 15);
+            table.insert("happy",25);
+            String results = table.search("happy").toString();
+            String expected = "{20, 25}";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected)); 
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        
+        }
+
+        System.out.println();
+        System.out.println("(1) Testing on search()");
+        System.out.println();
+
+        try {
+            ChainedHashTable table = new ChainedHashTable(3);
+            table.insert("math", 20);
+            table.insert("biology", 10);
+            table.insert("chemistry", 15);
+            table.insert("history",25);
+            String results = table.search("biology").toString();
+            String expected = "{10}";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected)); 
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        
+        }
+
+        System.out.println();
+
+        System.out.println("--- Testing method getNumKeys() ---");
+        System.out.println();
+        System.out.println("(0) Testing on getNumKeys()");
+        System.out.println();
+
+        try {
+            ChainedHashTable table = new ChainedHashTable(7);
+            table.insert("math", 20);
+            table.insert("biology", 10);
+            table.insert("chemistry", 15);
+            table.insert("history",25);
+            table.remove("history");
+            table.insert("biology", 20);
+            table.insert("literature", 10);
+            table.insert("math", 30);
+            table.remove("math");
+            int results = table.getNumKeys();
+            int expected = 3;
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results==expected); 
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        
+        }
+
+        System.out.println();
+        System.out.println("(1) Testing on getNumKeys()");
+        System.out.println();
+
+        try {
+            ChainedHashTable table = new ChainedHashTable(4);
+            table.insert("volleyball", 20);
+            table.insert("basketball", 10);
+            table.insert("tennis", 15);
+            table.insert("jogging",25);
+            table.remove("jogging");
+            table.insert("tennis", 20);
+            int results = table.getNumKeys();
+            int expected = 3;
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results==expected); 
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        
+        }
+
+        System.out.println("--- Testing method getAllKeys() ---");
+        System.out.println();
+        System.out.println("(0) Testing on getAllKeys()");
+        System.out.println();
+
+
+        try {
+            ChainedHashTable table = new ChainedHashTable(8);
+            table.insert("australia", 20);
+            table.insert("america", 10);
+            table.insert("belgium", 15);
+            table.insert("thailand",25);
+            table.insert("dubai", 20);
+            String results = Arrays.toString(table.getAllKeys());
+            String expected = "[australia, dubai, belgium, america, thailand]";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected)); 
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+
+        }
+        
+        System.out.println();
+        System.out.println("(1) Testing on getAllKeys()");
+        System.out.println();
+
+
+        try {
+            ChainedHashTable table = new ChainedHashTable(7);
+            table.insert("pepsi", 20);
+            table.insert("coke", 10);
+            table.insert("lemonade", 15);
+            table.insert("coffee",25);
+            String results = Arrays.toString(table.getAllKeys());
+            String expected = "[coffee, lemonade, coke, pepsi]";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected)); 
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+
+        }
+
+        System.out.println();
+
+        System.out.println("--- Testing method load() ---");
+        System.out.println();
+        System.out.println("(0) Testing on load()");
+        System.out.println();
+
+        try {
+            ChainedHashTable table = new ChainedHashTable(7);
+            table.insert("pepsi", 20);
+            table.insert("coke", 10);
+            table.insert("lemonade", 15);
+            table.insert("coffee",25);
+            table.insert("juice", 20);
+            double results = table.load();
+            double expected = 5.0/7.0;
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results==expected); 
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        
+        }
+
+        System.out.println();
+        System.out.println("(1) Testing on load()");
+        System.out.println();
+
+        try {
+            ChainedHashTable table = new ChainedHashTable(3);
+            table.insert("library", 20);
+            table.insert("dorm", 10);
+            table.insert("kitchen", 15);
+            table.insert("bedroom",25);
+            table.insert("classroom", 20);
+            double results = table.load();
+            double expected = 5.0/3.0;
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results==expected); 
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        
+        }
+
+        System.out.println();
+
+        System.out.println("--- Testing method resize() ---");
+        System.out.println();
+        System.out.println("(0) Testing on resize()");
+        System.out.println();
+
+
+        try {
+            ChainedHashTable table = new ChainedHashTable(3);
+            table.insert("library", 20);
+            table.insert("dorm", 10);
+            table.insert("kitchen", 15);
+            table.insert("bedroom",25);
+            table.insert("classroom", 20);
+            System.out.println("table before resize: ");
+            System.out.println(table);
+            table.resize(7);
+            String results = table.toString();
+            String expected = "[{kitchen}, null, null, null, null, {classroom}, {library; dorm; bedroom}]";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        
+        }
+
+        System.out.println();
+        System.out.println("(0) Testing on resize()");
+        System.out.println();
+
+
+        try {
+            ChainedHashTable table = new ChainedHashTable(4);
+            table.insert("book", 20);
+            table.insert("phone", 10);
+            table.insert("mirror", 15);
+            table.insert("table",25);
+            table.insert("desk", 20);
+            System.out.println("table before resize: ");
+            System.out.println(table);
+            table.resize(9);
+            String results = table.toString();
+            String expected = "[null, null, null, {mirror}, {book}, null, {desk}, {phone; table}, null]";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        
+        }
+
+        System.out.println();
+        System.out.println("(2) Testing on resize()");
+        System.out.println();
+
+
+        try {
+            ChainedHashTable table = new ChainedHashTable(3);
+            table.insert("happy", 20);
+            table.insert("sad", 10);
+            table.insert("happy", 25);
+            Queue<Object> before = table.search("happy");
+            table.resize(11);
+            String results = table.search("happy").toString() + " " + (table.search("happy") == before);
+            String expected = "{20, 25} true";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        
+        }
+
+        System.out.println();
+
+        System.out.println("--- Testing automatic growth ---");
+        System.out.println();
+        System.out.println("(0) Testing on insert() with a max load factor");
+        System.out.println();
+
+        try {
+            ChainedHashTable table = new ChainedHashTable(3, 1.0);
+            for (int i = 0; i < 100; i++) {
+                table.insert("key" + i, i);
+            }
+            table.insert("key42", 420);
+            boolean allFound = true;
+            for (int i = 0; i < 100; i++) {
+                if (table.search("key" + i) == null) {
+                    allFound = false;
+                }
+            }
+            String results = table.getNumKeys() + " " + allFound + " " + (table.load() <= 1.0) 
+                + " " + table.search("key42");
+            String expected = "100 true true {42, 420}";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        
+        }
+
+        System.out.println();
+        System.out.println("(1) Testing on remove() during growth");
+        System.out.println();
+
+        try {
+            ChainedHashTable table = new ChainedHashTable(5, 2.0);
+            for (int i = 0; i < 11; i++) {      // the 11th key starts a rehash
+                table.insert(i, i);
+            }
+            table.remove(0);
+            table.remove(10);
+            table.remove(99);
+            String results = table.getNumKeys() + " " + table.search(0) + " " + table.search(5)
+                + " " + table.getAllKeys().length;
+            String expected = "9 null {5} 9";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        
+        }
+
+        System.out.println();
+        System.out.println("(2) Testing on a power-of-two table");
+        System.out.println();
+
+        try {
+            ChainedHashTable table = new ChainedHashTable(5, 4.0, true);
+            table.insert(0, "zero");
+            table.insert(1 << 16, "high");      // differs from 0 only in the high bits
+            table.insert(1 << 17, "higher");
+            String results = table.toString() + " " + table.search(1 << 16);
+            String expected = "[{0}, {65536}, {131072}, null, null, null, null, null] {high}";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        
+        }
+
+        System.out.println();
+
+        System.out.println("--- Testing buckets with long chains ---");
+        System.out.println();
+        System.out.println("(0) Testing on colliding keys");
+        System.out.println();
+
+        try {
+            // "Aa" and "BB" have the same hash code, so all 16 keys collide
+            String[] halves = {"AaAa", "AaBB", "BBAa", "BBBB"};
+            ChainedHashTable table = new ChainedHashTable(3);
+            for (int i = 0; i < 16; i++) {
+                table.insert(halves[i / 4] + halves[i % 4], i);
+            }
+            boolean allFound = true;
+            for (int i = 0; i < 16; i++) {
+                Queue<Object> values = table.search(halves[i / 4] + halves[i % 4]);
+                if (values == null || !values.peek().equals(i)) {
+                    allFound = false;
+                }
+            }
+            for (int i = 0; i < 14; i++) {
+                table.remove(halves[i / 4] + halves[i % 4]);
+            }
+            String results = allFound + " " + table.getNumKeys() + " " + table.search("BBBBBBAa")
+                + " " + table.search("AaAaAaAa") + " " + Arrays.toString(table.getAllKeys());
+            String expected = "true 2 {14} null [BBBBBBBB, BBBBBBAa]";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        
+        }
+
+        System.out.println();
+        System.out.println("(1) Testing on a single bucket");
+        System.out.println();
+
+        try {
+            ChainedHashTable table = new ChainedHashTable(1);
+            for (int i = 0; i < 1000; i++) {
+                table.insert(i, i);
+            }
+            for (int i = 0; i < 1000; i += 2) {
+                table.remove(i);
+            }
+            table.resize(2);
+            boolean correct = true;
+            for (int i = 0; i < 1000; i++) {
+                if ((table.search(i) == null) != (i % 2 == 0)) {
+                    correct = false;
+                }
+            }
+            String results = correct + " " + table.getNumKeys();
+            String expected = "true 500";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        
+        }
+
+        System.out.println();
+
+        System.out.println("--- Testing keys with many values ---");
+        System.out.println();
+        System.out.println("(0) Testing on insert() and the values of a key");
+        System.out.println();
+
+        try {
+            ChainedHashTable table = new ChainedHashTable(5);
+            for (int i = 0; i < 1000; i++) {
+                table.insert("hot", i);
+            }
+            Queue<Object> values = table.search("hot");
+            int sum = 0;
+            for (int i = 0; i < 998; i++) {
+                sum += (Integer) values.remove();
+            }
+            table.insert("hot", 1000);
+            String results = sum + " " + values + " " + table.remove("hot").peek();
+            String expected = "497503 {998, 999, 1000} 998";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        
+        }
+
+        System.out.println();
+
+        System.out.println("--- Testing batch operations ---");
+        System.out.println();
+        System.out.println("(0) Testing on insertAll(), searchAll() and removeAll()");
+        System.out.println();
+
+        try {
+            ChainedHashTable table = new ChainedHashTable(5, 1.0);
+            Object[] keys = new Object[40];
+            Object[] values = new Object[40];
+            for (int i = 0; i < 40; i++) {
+                keys[i] = i % 20;               // every key appears twice
+                values[i] = i;
+            }
+            table.insertAll(keys, values);
+            Queue<Object>[] found = table.searchAll(new Object[] {3, 99, 17});
+            Queue<Object>[] removed = table.removeAll(new Object[] {17, 17, 4});
+            String results = table.getNumKeys() + " " + Arrays.toString(found)
+                + " " + Arrays.toString(removed) + " " + table.search(17);
+            String expected = "18 [{3, 23}, null, {17, 37}] [{17, 37}, null, {4, 24}] null";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        
+        }
+
+        System.out.println();
+
+        System.out.println("--- Testing views of the table ---");
+        System.out.println();
+        System.out.println("(0) Testing on keys(), entries() and pairs()");
+        System.out.println();
+
+        try {
+            ChainedHashTable table = new ChainedHashTable(5);
+            table.insert("howdy", 15);
+            table.insert("goodbye", 10);
+            table.insert("apple", 5);
+            table.insert("howdy", 25);
+            int[] pairCount = new int[1];
+            table.forEachPair((key, value) -> pairCount[0]++);
+            String results = table.keys() + " " + table.entries() + " " + table.pairs()
+                + " " + pairCount[0];
+            String expected = "[apple, howdy, goodbye] [apple={5}, howdy={15, 25}, goodbye={10}]"
+                + " [apple=5, howdy=15, howdy=25, goodbye=10] 4";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        
+        }
+
+        System.out.println();
+        System.out.println("(1) Testing on a parallel stream of the keys");
+        System.out.println();
+
+        try {
+            ChainedHashTable table = new ChainedHashTable(16, 0.75);
+            for (int i = 0; i < 100000; i++) {      // grows while the keys are inserted
+                table.insert(i, i);
+            }
+            long sum = StreamSupport.stream(table.keys().spliterator(), true)
+                .mapToLong(key -> (Integer) key).sum();
+            long pairs = StreamSupport.stream(table.pairs().spliterator(), true).count();
+            String results = sum + " " + pairs;
+            String expected = "4999950000 100000";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        
+        }
+
+        System.out.println();
+
+        System.out.println("--- Testing the parallel methods ---");
+        System.out.println();
+        System.out.println("(0) Testing on build()");
+        System.out.println();
+
+        try {
+            // "Aa" and "BB" have the same hash code, so the String keys all collide
+            String[] halves = {"AaAa", "AaBB", "BBAa", "BBBB"};
+            Object[] keys = new Object[100016];
+            Object[] values = new Object[keys.length];
+            for (int i = 0; i < 100000; i++) {
+                keys[i] = i % 50000;            // every key appears twice
+                values[i] = i;
+            }
+            for (int i = 0; i < 16; i++) {
+                keys[100000 + i] = halves[i / 4] + halves[i % 4];
+                values[100000 + i] = i;
+            }
+            ChainedHashTable table = build(keys, values, 2.0, false, new ForkJoinPool(4));
+            boolean correct = true;
+            for (int i = 0; i < 50000; i++) {
+                if (!table.search(i).toString().equals("{" + i + ", " + (i + 50000) + "}")) {
+                    correct = false;
+                }
+            }
+            String results = correct + " " + table.getNumKeys() + " " + table.search("BBBBAaBB");
+            String expected = "true 50016 {13}";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        
+        }
+
+        System.out.println();
+        System.out.println("(1) Testing on parallelResize()");
+        System.out.println();
+
+        try {
+            ChainedHashTable table = new ChainedHashTable(10000);
+            for (int i = 0; i < 100000; i++) {
+                table.insert(i, i);
+            }
+            for (int i = 0; i < 16; i++) {      // long chains in buckets 0 and 1
+                table.insert(i * 40000, "a");
+                table.insert(i * 40000 + 1, "b");
+            }
+            table.parallelResize(40000, new ForkJoinPool(4));
+            boolean correct = true;
+            for (int i = 0; i < 100000; i++) {
+                if (table.search(i) == null) {
+                    correct = false;
+                }
+            }
+            String results = correct + " " + table.getNumKeys() + " " + table.load()
+                + " " + table.search(600001);
+            String expected = "true 100026 2.50065 {b}";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        
+        }
+
+        System.out.println();
+
+        System.out.println("--- Testing cache mode ---");
+        System.out.println();
+        System.out.println("(0) Testing on setCacheLimits() and CLOCK eviction");
+        System.out.println();
+
+        try {
+            ChainedHashTable table = new ChainedHashTable(10);
+            table.insert(0, "a");
+            table.insert(1, "p");
+            table.insert(2, "c");
+            table.setCacheLimits(3, 2);
+            table.insert(1, "q");
+            table.insert(1, "r");       // drops "p"
+            table.insert(3, "d");       // 0 has not been used since it was added, so it is evicted
+            table.search(1);
+            table.insert(4, "e");       // 1 has been used, so it is passed over and 2 is evicted
+            String results = table.search(0) + " " + table.search(1) + " " + table.search(2)
+                + " " + table.search(3) + " " + table.search(4) + " " + table.getNumKeys()
+                + " " + table.getHits() + " " + table.getMisses() + " " + table.getEvictions();
+            String expected = "null {q, r} null {d} {e} 3 4 2 2";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        }
+
+        System.out.println();
+        System.out.println("(1) Testing that a full cache stays at its limit");
+        System.out.println();
+
+        try {
+            ChainedHashTable table = new ChainedHashTable(16, 0.75, true);
+            table.setCacheLimits(1000, 3);
+            for (int i = 0; i < 100000; i++) {
+                table.insert("k" + (i % 5000), i);
+                table.search("k" + (i % 200));  // keeps a small working set hot
+            }
+            boolean hot = true;
+            for (int i = 0; i < 200; i++) {
+                Queue<Object> values = table.search("k" + i);
+                if (values == null || values.toString().split(",").length != 3) {
+                    hot = false;
+                }
+            }
+            String results = table.getNumKeys() + " " + hot + " " + (table.getEvictions() > 0);
+            String expected = "1000 true true";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        }
+
+        System.out.println();
+        System.out.println("(2) Testing insertAll() when its inserts evict keys it has found");
+        System.out.println();
+
+        try {
+            ChainedHashTable batched = new ChainedHashTable(10);
+            ChainedHashTable single = new ChainedHashTable(10);
+            for (ChainedHashTable table : new ChainedHashTable[] {batched, single}) {
+                table.setCacheLimits(2, 0);
+                table.insert("x", 1);
+                table.insert("y", 2);
+            }
+            batched.insertAll(new Object[] {"z", "x", "y"}, new Object[] {3, 4, 5});
+            single.insert("z", 3);
+            single.insert("x", 4);
+            single.insert("y", 5);
+            String results = batched.search("x") + " " + batched.search("y") + " "
+                + batched.search("z") + " " + batched.getNumKeys();
+            String expected = single.search("x") + " " + single.search("y") + " "
+                + single.search("z") + " " + single.getNumKeys();
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        }
+
+        System.out.println();
+        System.out.println("(3) Testing batch operations in cache mode when keys share a tree bucket");
+        System.out.println();
+
+        try {
+            ChainedHashTable batched = new ChainedHashTable(1);     // one bucket, so a tree
+            ChainedHashTable single = new ChainedHashTable(1);
+            for (ChainedHashTable table : new ChainedHashTable[] {batched, single}) {
+                table.setCacheLimits(100, 0);
+                for (int i = 1; i <= 8; i++) {
+                    table.insert("k" + i, i);
+                }
+            }
+            batched.insertAll(new Object[] {"k9", "k1"}, new Object[] {9, 10});
+            single.insert("k9", 9);
+            single.insert("k1", 10);
+            batched.setCacheLimits(1, 0);
+            single.setCacheLimits(1, 0);
+            String results = Arrays.toString(batched.getAllKeys());
+            String expected = Arrays.toString(single.getAllKeys());
+
+            // random batches against the same operations one at a time
+            Random random = new Random(112);
+            batched = new ChainedHashTable(1);
+            single = new ChainedHashTable(1);
+            batched.setCacheLimits(20, 3);
+            single.setCacheLimits(20, 3);
+            boolean same = true;
+            for (int round = 0; round < 2000; round++) {
+                Object[] keys = new Object[1 + random.nextInt(6)];
+                Object[] values = new Object[keys.length];
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = random.nextInt(40);
+                    values[i] = round;
+                }
+                if (random.nextBoolean()) {
+                    batched.insertAll(keys, values);
+                    for (int i = 0; i < keys.length; i++) {
+                        single.insert(keys[i], values[i]);
+                    }
+                } else {
+                    Queue<Object>[] found = batched.searchAll(keys);
+                    for (int i = 0; i < keys.length; i++) {
+                        same &= String.valueOf(found[i]).equals(String.valueOf(single.search(keys[i])));
+                    }
+                }
+            }
+            Object[] batchedKeys = batched.getAllKeys();
+            Object[] singleKeys = single.getAllKeys();
+            Arrays.sort(batchedKeys);
+            Arrays.sort(singleKeys);
+            results += " " + (same && Arrays.equals(batchedKeys, singleKeys));
+            expected += " true";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        }
+
+        System.out.println();
+
+        System.out.println("--- Testing expiry ---");
+        System.out.println();
+        System.out.println("(0) Testing on insertExpiring() and expire()");
+        System.out.println();
+
+        try {
+            long[] now = {1000};
+            ChainedHashTable table = new ChainedHashTable(5);
+            table.setClock(() -> now[0]);
+            table.insertExpiring("howdy", 15, 100);
+            table.insertExpiring("goodbye", 10, 50);
+            table.insert("apple", 5);
+            table.insert("howdy", 25);          // keeps its time
+            table.insertExpiring("goodbye", 20, 200);   // puts off its time
+            now[0] = 1100;
+            String results = table.search("howdy") + " " + table.search("goodbye") + " ";
+            now[0] = 1300;
+            table.expire();
+            results += table.getNumKeys() + " " + Arrays.toString(table.getAllKeys());
+            String expected = "null {10, 20} 1 [apple]";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        }
 
-        ChainedHashTable table = new ChainedHashTable(5);
-        table.insert("howdy", 15);
-        table.insert("goodbye", 10);
-        table.insert("apple", 5);
-        System.out.println(table);
-        table.resize(7);
-        System.out.println(table);
-        **/
-
-        System.out.println("--- Testing method insert() ---");
         System.out.println();
-        System.out.println("(0) Testing on insert()");
+        System.out.println("(1) Testing that expired keys are left out of views, dumps and snapshots");
         System.out.println();
-        
+
         try {
+            long[] now = {1000};
             ChainedHashTable table = new ChainedHashTable(5);
-            table.insert("strawberry", 15);
-            table.insert("apple", 5);
-            table.insert("banana",10);
-            String results = table.toString();
-            String expected = "[{apple}, null, null, {banana; strawberry}, null]";
+            table.setClock(() -> now[0]);
+            table.insertExpiring("a", 1, 10);
+            table.insertExpiring("b", 2, 1000);
+            table.insert("c", 3);
+            now[0] = 1050;
+            Path file = Files.createTempFile("expiry", ".snapshot");
+            ArrayList<Object> keys = new ArrayList<Object>();
+            table.keys().forEach(keys::add);
+            Collections.sort(keys, Comparator.comparing(Object::toString));
+            table.writeSnapshot(file, new ObjectSerializer(), new ObjectSerializer());
+            ChainedHashTable loaded = ChainedHashTable.readSnapshot(file, new ObjectSerializer(),
+                                                                    new ObjectSerializer());
+            SnapshotHashTable mapped = new SnapshotHashTable(file);
+            String results = table.getNumKeys() + " " + keys + " " + table.toString().contains("a")
+                + " " + loaded.search("a") + " " + mapped.search("a") + " "
+                + loaded.search("b") + " " + mapped.search("c");
+            mapped.close();
+            Files.delete(file);
+            String expected = "2 [b, c] false null null {2} {3}";
             System.out.println("actual results:");
             System.out.println(results);
             System.out.println("expected results:");
             System.out.println(expected);
             System.out.print("MATCHES EXPECTED RESULTS?: ");
-            System.out.println(results.equals(expected)); 
+            System.out.println(results.equals(expected));
         } catch (Exception e) {
             System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
-        
         }
 
         System.out.println();
-
-        System.out.println("(1) Testing on insert()");
+        System.out.println("(2) Testing that every level of the timer wheel expires keys on time");
         System.out.println();
 
         try {
-            ChainedHashTable table = new ChainedHashTable(3);
-            table.insert("latte", 15);
-            table.insert("americano", 5);
-            table.insert("americano",10);
-            String results = table.toString();
-            String expected = "[null, {latte}, {americano}]";
+            long[] now = {0};
+            ChainedHashTable table = new ChainedHashTable(16, 0.75, true);
+            table.setClock(() -> now[0]);
+            HashMap<Integer, Long> expires = new HashMap<Integer, Long>();
+            Random random = new Random(112);
+            boolean correct = true;
+            for (int step = 0; step < 100000; step++) {
+                int key = random.nextInt(5000);
+                int op = random.nextInt(10);
+                if (op < 4) {
+                    // some times are beyond the reach of the wheel
+                    long ttl = 1 + (random.nextInt(4) == 0 ? random.nextInt(40000000) : random.nextInt(5000));
+                    table.insertExpiring(key, step, ttl);
+                    expires.put(key, now[0] + ttl);
+                } else if (op < 5) {
+                    table.insert(key, step);
+                    Long time = expires.get(key);
+                    if (time == null || time <= now[0]) {
+                        expires.put(key, 0L);
+                    }
+                } else if (op < 6) {
+                    table.remove(key);
+                    expires.remove(key);
+                } else {
+                    Long time = expires.get(key);
+                    boolean live = time != null && (time == 0 || time > now[0]);
+                    if ((table.search(key) != null) != live) {
+                        correct = false;
+                    }
+                }
+                now[0] += random.nextInt(random.nextInt(100) == 0 ? 1000000 : 20);
+                if (step % 1000 == 0) {
+                    table.expire();
+                    expires.values().removeIf(time -> time != 0 && time <= now[0]);
+                    if (table.getNumKeys() != expires.size()) {
+                        correct = false;
+                    }
+                }
+            }
+            String results = "" + correct;
+            String expected = "true";
             System.out.println("actual results:");
             System.out.println(results);
             System.out.println("expected results:");
             System.out.println(expected);
             System.out.print("MATCHES EXPECTED RESULTS?: ");
-            System.out.println(results.equals(expected)); 
+            System.out.println(results.equals(expected));
         } catch (Exception e) {
             System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
-        
         }
 
         System.out.println();
 
-        System.out.println("--- Testing method remove() ---");
+        System.out.println("--- Testing metrics ---");
         System.out.println();
-        System.out.println("(0) Testing on remove()");
+        System.out.println("(0) Testing on the counters, probes and histograms");
         System.out.println();
 
-      
         try {
-            ChainedHashTable table = new ChainedHashTable(4);
-            table.insert("piano", 15);
-            table.insert("violin", 5);
-            table.insert("cello",10);
-            table.insert("violin",10);
-            String results_values = table.remove("violin").toString();
-            String expected_values = "{5, 10}";
-            System.out.println("actual results returned:");
-            System.out.println(results_values);
-            System.out.println("expected results returned:");
-            System.out.println(expected_values);
-            String results_table = table.toString();
-            String expected_table = "[null, {cello; piano}, null, null]";
-            System.out.println("actual results table:");
-            System.out.println(results_table);
-            System.out.println("expected results table:");
-            System.out.println(expected_table);
+            ChainedHashTable table = new ChainedHashTable(5);
+            HashTableMetrics metrics = table.enableMetrics();
+            table.insert(0, "a");
+            table.insert(5, "b");
+            table.insert(10, "c");      // 0, 5 and 10 are all in bucket 0
+            table.insert(1, "d");
+            table.insert(1, "e");
+            for (int i = 0; i < 8; i++) {
+                table.search(10);       // 10 is first in bucket 0
+            }
+            for (int i = 0; i < 8; i++) {
+                table.search(15);       // all 3 nodes in bucket 0
+            }
+            table.remove(1);
+            table.sampleMetrics();
+            String results = metrics.getInserts() + " " + metrics.getSearches() + " "
+                + metrics.getRemoves() + " " + metrics.getHits() + " " + metrics.getMisses() + " "
+                + metrics.getAverageProbesPerHit() + " " + metrics.getAverageProbesPerMiss() + " "
+                + Arrays.toString(Arrays.copyOf(metrics.getChainLengthHistogram(), 5)) + " "
+                + metrics.getMaxChainLength() + " "
+                + Arrays.toString(Arrays.copyOf(metrics.getValueCountHistogram(), 3));
+            String expected = "5 16 1 8 8 1.0 3.0 [4, 0, 0, 1, 0] 3 [3, 0, 0]";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
             System.out.print("MATCHES EXPECTED RESULTS?: ");
-            System.out.println(results_values.equals(expected_values)); 
-            System.out.println(results_table.equals(expected_table));
+            System.out.println(results.equals(expected));
         } catch (Exception e) {
             System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
-        
         }
 
         System.out.println();
-        System.out.println("(1) Testing on remove()");
+        System.out.println("(1) Testing on resize counts and JMX");
         System.out.println();
 
-
         try {
-            ChainedHashTable table = new ChainedHashTable(7);
-            table.insert("noodles", 20);
-            table.insert("pizza", 10);
-            table.insert("pizza", 15);
-            table.insert("pizza",25);
-            String results_values = table.remove("pizza").toString();
-            String expected_values = "{10, 15, 25}";
-            System.out.println("actual results returned:");
-            System.out.println(results_values);
-            System.out.println("expected results returned:");
-            System.out.println(expected_values);
-            String results_table = table.toString();
-            String expected_table = "[null, null, null, null, {noodles}, null, null]";
-            System.out.println("actual results table:");
-            System.out.println(results_table);
-            System.out.println("expected results table:");
-            System.out.println(expected_table);
+            ChainedHashTable table = new ChainedHashTable(16, 0.75, true);
+            HashTableMetrics metrics = table.enableMetrics();
+            for (int i = 0; i < 100; i++) {
+                table.insert(i, i);     // grows to 32, 64, 128 and 256 buckets
+            }
+            table.sampleMetrics();      // finishes the last rehash
+            table.resize(1024);
+            metrics.register("test");
+            javax.management.MBeanServer server =
+                java.lang.management.ManagementFactory.getPlatformMBeanServer();
+            javax.management.ObjectName name =
+                new javax.management.ObjectName("ChainedHashTable:name=test");
+            String results = server.getAttribute(name, "Resizes") + " "
+                + server.getAttribute(name, "Inserts") + " " + server.getAttribute(name, "Load");
+            metrics.unregister();
+            results += " " + server.isRegistered(name);
+            String expected = "5 100 0.390625 false";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
             System.out.print("MATCHES EXPECTED RESULTS?: ");
-            System.out.println(results_values.equals(expected_values)); 
-            System.out.println(results_table.equals(expected_table));
+            System.out.println(results.equals(expected));
         } catch (Exception e) {
             System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
-        
         }
 
         System.out.println();
 
-        System.out.println("--- Testing method search() ---");
+        System.out.println("--- Testing dump ---");
         System.out.println();
-        System.out.println("(0) Testing on search()");
+        System.out.println("(0) Testing on dump() and preview()");
         System.out.println();
 
         try {
-            ChainedHashTable table = new ChainedHashTable(7);
-            table.insert("happy", 20);
-            table.insert("sad", 10);
-            table.insert("angry", 15);
-            table.insert("happy",25);
-            String results = table.search("happy").toString();
-            String expected = "{20, 25}";
+            ChainedHashTable table = new ChainedHashTable(5);
+            table.insert(0, "a");
+            table.insert(5, "b");
+            table.insert(10, "c");
+            table.insert(2, "d");
+            StringWriter out = new StringWriter();
+            table.dump(out);
+            String results = out + " " + out.toString().equals(table.toString()) + " "
+                + table.preview(3, 2) + " " + table.preview(0, 0);
+            String expected = "[{10; 5; 0}, null, {2}, null, null] true [{10; 5; ...}, null, {2}, ...] [...]";
             System.out.println("actual results:");
             System.out.println(results);
             System.out.println("expected results:");
             System.out.println(expected);
             System.out.print("MATCHES EXPECTED RESULTS?: ");
-            System.out.println(results.equals(expected)); 
+            System.out.println(results.equals(expected));
         } catch (Exception e) {
             System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
-        
         }
 
         System.out.println();
-        System.out.println("(1) Testing on search()");
+        System.out.println("(1) Testing on LLQueue's dump() and toString()");
         System.out.println();
 
         try {
-            ChainedHashTable table = new ChainedHashTable(3);
-            table.insert("math", 20);
-            table.insert("biology", 10);
-            table.insert("chemistry", 15);
-            table.insert("history",25);
-            String results = table.search("biology").toString();
-            String expected = "{10}";
+            LLQueue<Object> queue = new LLQueue<Object>();
+            String results = queue.toString();
+            queue.insert(1);
+            queue.insert("two");
+            queue.insert(null);
+            StringWriter out = new StringWriter();
+            queue.dump(out);
+            results += " " + queue + " " + out;
+            String expected = "{} {1, two, null} {1, two, null}";
             System.out.println("actual results:");
             System.out.println(results);
             System.out.println("expected results:");
             System.out.println(expected);
             System.out.print("MATCHES EXPECTED RESULTS?: ");
-            System.out.println(results.equals(expected)); 
+            System.out.println(results.equals(expected));
         } catch (Exception e) {
             System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
-        
         }
 
         System.out.println();
 
-        System.out.println("--- Testing method getNumKeys() ---");
+        System.out.println("--- Testing the value index ---");
         System.out.println();
-        System.out.println("(0) Testing on getNumKeys()");
+        System.out.println("(0) Testing on keysWithValue() after inserts and removes");
         System.out.println();
 
+        Function<Object[], String> sorted = (keys) -> {
+            Arrays.sort(keys);
+            return Arrays.toString(keys);
+        };
         try {
-            ChainedHashTable table = new ChainedHashTable(7);
-            table.insert("math", 20);
-            table.insert("biology", 10);
-            table.insert("chemistry", 15);
-            table.insert("history",25);
-            table.remove("history");
-            table.insert("biology", 20);
-            table.insert("literature", 10);
-            table.insert("math", 30);
-            table.remove("math");
-            int results = table.getNumKeys();
-            int expected = 3;
+            ChainedHashTable table = new ChainedHashTable(5, 1.0);
+            table.insert("a", 1);
+            table.insert("b", 1);
+            table.insert("b", 2);
+            table.insert("c", 2);
+            table.insert("c", 2);
+            String results = sorted.apply(table.keysWithValue(1)) + " "
+                + sorted.apply(table.keysWithValue(2)) + " " + table.keysWithValue(3).length;
+            for (int i = 0; i < 20; i++) {      // makes the table grow
+                table.insert("d" + i, 1);
+            }
+            table.remove("b");
+            for (int i = 1; i < 20; i++) {
+                table.remove("d" + i);
+            }
+            table.insertAll(new Object[] {"c", "e"}, new Object[] {3, 2});
+            results += " " + sorted.apply(table.keysWithValue(1)) + " "
+                + sorted.apply(table.keysWithValue(2)) + " " + sorted.apply(table.keysWithValue(3));
+            String expected = "[a, b] [b, c] 0 [a, d0] [c, e] [c]";
             System.out.println("actual results:");
             System.out.println(results);
             System.out.println("expected results:");
             System.out.println(expected);
             System.out.print("MATCHES EXPECTED RESULTS?: ");
-            System.out.println(results==expected); 
+            System.out.println(results.equals(expected));
         } catch (Exception e) {
             System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
-        
         }
 
         System.out.println();
-        System.out.println("(1) Testing on getNumKeys()");
+        System.out.println("(1) Testing that dropped, evicted and expired values leave the index");
         System.out.println();
 
         try {
-            ChainedHashTable table = new ChainedHashTable(4);
-            table.insert("volleyball", 20);
-            table.insert("basketball", 10);
-            table.insert("tennis", 15);
-            table.insert("jogging",25);
-            table.remove("jogging");
-            table.insert("tennis", 20);
-            int results = table.getNumKeys();
-            int expected = 3;
+            ChainedHashTable table = new ChainedHashTable(8);
+            long[] now = {0};
+            table.setClock(() -> now[0]);
+            table.setCacheLimits(0, 2);
+            table.insert("x", "v1");
+            table.insert("x", "v2");
+            table.keysWithValue("v1");
+            table.insert("x", "v3");            // drops v1
+            table.insertExpiring("y", "v3", 10);
+            String results = table.keysWithValue("v1").length + " "
+                + sorted.apply(table.keysWithValue("v3"));
+            now[0] = 20;
+            results += " " + sorted.apply(table.keysWithValue("v3"));
+            table.dropValueIndex();
+            results += " " + sorted.apply(table.keysWithValue("v2"));
+            table.setCacheLimits(1, 2);
+            table.insert("z", "v2");            // evicts x
+            results += " " + sorted.apply(table.keysWithValue("v2"));
+            String expected = "0 [x, y] [x] [x] [z]";
             System.out.println("actual results:");
             System.out.println(results);
             System.out.println("expected results:");
             System.out.println(expected);
             System.out.print("MATCHES EXPECTED RESULTS?: ");
-            System.out.println(results==expected); 
+            System.out.println(results.equals(expected));
         } catch (Exception e) {
             System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
-        
         }
 
-        System.out.println("--- Testing method getAllKeys() ---");
-        System.out.println();
-        System.out.println("(0) Testing on getAllKeys()");
         System.out.println();
 
+        System.out.println("--- Testing snapshots ---");
+        System.out.println();
+        System.out.println("(0) Testing that snapshot() is not affected by later changes");
+        System.out.println();
 
         try {
-            ChainedHashTable table = new ChainedHashTable(8);
-            table.insert("australia", 20);
-            table.insert("america", 10);
-            table.insert("belgium", 15);
-            table.insert("thailand",25);
-            table.insert("dubai", 20);
-            String results = Arrays.toString(table.getAllKeys());
-            String expected = "[australia, dubai, belgium, america, thailand]";
+            ChainedHashTable table = new ChainedHashTable(4, 1.0);
+            table.insert("a", 1);
+            table.insert("b", 2);
+            ChainedHashTable.TableSnapshot first = table.snapshot();
+            table.insert("a", 3);
+            table.remove("b");
+            for (int i = 0; i < 20; i++) {      // makes the table grow
+                table.insert("k" + i, i);
+            }
+            ChainedHashTable.TableSnapshot second = table.snapshot();
+            table.insert("k0", 100);
+            table.remove("k1");
+            String results = first.search("a") + " " + first.search("b") + " "
+                + first.search("k0") + " " + first.getNumKeys() + " "
+                + second.search("a") + " " + second.search("b") + " " + second.search("k0")
+                + " " + second.search("k1") + " " + second.getAllKeys().length + " "
+                + table.search("k0") + " " + table.search("k1") + " " + table.getNumKeys();
+            try {
+                first.insert("c", 4);
+            } catch (UnsupportedOperationException e) {
+                results += " read-only";
+            }
+            first.close();
+            try {
+                first.search("a");
+            } catch (IllegalStateException e) {
+                results += " closed";
+            }
+            String expected = "{1} {2} null 2 {1, 3} null {0} {1} 21 {0, 100} null 20 read-only closed";
             System.out.println("actual results:");
             System.out.println(results);
             System.out.println("expected results:");
             System.out.println(expected);
             System.out.print("MATCHES EXPECTED RESULTS?: ");
-            System.out.println(results.equals(expected)); 
+            System.out.println(results.equals(expected));
         } catch (Exception e) {
             System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
-
         }
-        
+
         System.out.println();
-        System.out.println("(1) Testing on getAllKeys()");
+        System.out.println("(1) Testing insertAll() on keys that share a bucket with a snapshot");
         System.out.println();
 
-
         try {
-            ChainedHashTable table = new ChainedHashTable(7);
-            table.insert("pepsi", 20);
-            table.insert("coke", 10);
-            table.insert("lemonade", 15);
-            table.insert("coffee",25);
-            String results = Arrays.toString(table.getAllKeys());
-            String expected = "[coffee, lemonade, coke, pepsi]";
+            ChainedHashTable table = new ChainedHashTable(1);
+            table.insert("a", 1);
+            table.insert("b", 2);
+            ChainedHashTable.TableSnapshot snapshot = table.snapshot();
+            table.insertAll(new Object[] {"a", "b"}, new Object[] {10, 20});
+            String results = table.search("a") + " " + table.search("b") + " "
+                + snapshot.search("a") + " " + snapshot.search("b");
+            String expected = "{1, 10} {2, 20} {1} {2}";
             System.out.println("actual results:");
             System.out.println(results);
             System.out.println("expected results:");
             System.out.println(expected);
             System.out.print("MATCHES EXPECTED RESULTS?: ");
-            System.out.println(results.equals(expected)); 
+            System.out.println(results.equals(expected));
         } catch (Exception e) {
             System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
-
         }
 
         System.out.println();
-
-        System.out.println("--- Testing method load() ---");
-        System.out.println();
-        System.out.println("(0) Testing on load()");
+        System.out.println("(2) Testing scans of a snapshot while another thread changes the table");
         System.out.println();
 
         try {
-            ChainedHashTable table = new ChainedHashTable(7);
-            table.insert("pepsi", 20);
-            table.insert("coke", 10);
-            table.insert("lemonade", 15);
-            table.insert("coffee",25);
-            table.insert("juice", 20);
-            double results = table.load();
-            double expected = 5.0/7.0;
+            ChainedHashTable table = new ChainedHashTable(1, 1.0, true);
+            ChainedHashTable trees = new ChainedHashTable(1);     // one bucket, so a tree
+            for (int i = 0; i < 10000; i++) {
+                table.insert(i, i);
+            }
+            for (int i = 0; i < 50; i++) {
+                trees.insert(i, i);
+            }
+            ChainedHashTable.TableSnapshot snapshot = table.snapshot();
+            ChainedHashTable.TableSnapshot treeSnapshot = trees.snapshot();
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < 200000; i++) {
+                    table.insert(i % 20000, -1);
+                    table.remove((i * 7) % 10000);
+                    trees.remove(i % 50);
+                    trees.insert(i % 50, -1);
+                }
+            });
+            writer.start();
+            boolean same = true;
+            int scans = 0;
+            do {
+                long[] sum = {0, 0};
+                snapshot.forEachPair((key, value) -> {
+                    sum[0] += (Integer) value;
+                    sum[1]++;
+                });
+                same &= sum[0] == 49995000L && sum[1] == 10000
+                    && snapshot.getAllKeys().length == 10000
+                    && snapshot.search(1234).toString().equals("{1234}")
+                    && treeSnapshot.search(7).toString().equals("{7}");
+                scans++;
+            } while (writer.isAlive() || scans < 2);
+            writer.join();
+            String results = same + " " + snapshot.search(20001) + " " + table.search(20001)
+                + " " + table.search(15000) + " " + trees.search(49);
+            String expected = "true null null {-1, -1, -1, -1, -1, -1, -1, -1, -1, -1} {-1}";
             System.out.println("actual results:");
             System.out.println(results);
             System.out.println("expected results:");
             System.out.println(expected);
             System.out.print("MATCHES EXPECTED RESULTS?: ");
-            System.out.println(results==expected); 
+            System.out.println(results.equals(expected));
         } catch (Exception e) {
             System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
-        
         }
 
         System.out.println();
-        System.out.println("(1) Testing on load()");
+        System.out.println("(3) Testing searches of a snapshot while another thread fills its empty buckets");
         System.out.println();
 
         try {
-            ChainedHashTable table = new ChainedHashTable(3);
-            table.insert("library", 20);
-            table.insert("dorm", 10);
-            table.insert("kitchen", 15);
-            table.insert("bedroom",25);
-            table.insert("classroom", 20);
-            double results = table.load();
-            double expected = 5.0/3.0;
+            ChainedHashTable table = new ChainedHashTable(1 << 16);
+            for (int i = 0; i < 100; i++) {
+                table.insert(i, i);
+            }
+            ChainedHashTable.TableSnapshot snapshot = table.snapshot();
+            Thread writer = new Thread(() -> {
+                for (int round = 0; round < 5; round++) {
+                    for (int i = 100; i < 50000; i++) {
+                        table.insert(i, i);
+                    }
+                    for (int i = 100; i < 50000; i++) {
+                        table.remove(i);
+                    }
+                }
+            });
+            writer.start();
+            boolean same = true;
+            int searches = 0;
+            do {
+                int key = 100 + (searches * 7919) % 49900;
+                same &= snapshot.search(key) == null 
+                    && snapshot.search(key % 100).toString().equals("{" + (key % 100) + "}");
+                searches++;
+            } while (writer.isAlive() || searches < 2);
+            writer.join();
+            String results = same + " " + snapshot.getNumKeys() + " " + table.getNumKeys();
+            String expected = "true 100 100";
             System.out.println("actual results:");
             System.out.println(results);
             System.out.println("expected results:");
             System.out.println(expected);
             System.out.print("MATCHES EXPECTED RESULTS?: ");
-            System.out.println(results==expected); 
+            System.out.println(results.equals(expected));
         } catch (Exception e) {
             System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
-        
         }
 
         System.out.println();
 
-        System.out.println("--- Testing method resize() ---");
+        System.out.println("--- Testing the miss filter ---");
         System.out.println();
-        System.out.println("(0) Testing on resize()");
+        System.out.println("(0) Testing on searches through inserts, removes, growth and resize");
         System.out.println();
 
-
         try {
-            ChainedHashTable table = new ChainedHashTable(3);
-            table.insert("library", 20);
-            table.insert("dorm", 10);
-            table.insert("kitchen", 15);
-            table.insert("bedroom",25);
-            table.insert("classroom", 20);
-            System.out.println("table before resize: ");
-            System.out.println(table);
-            table.resize(7);
-            String results = table.toString();
-            String expected = "[{kitchen}, null, null, null, null, {classroom}, {library; dorm; bedroom}]";
+            ChainedHashTable table = new ChainedHashTable(4, 1.0);
+            ChainedHashTable trees = new ChainedHashTable(1);     // one bucket, so a tree
+            for (int i = 0; i < 100; i++) {
+                table.insert("k" + i, i);
+            }
+            table.enableMissFilter();
+            trees.enableMissFilter();
+            for (int i = 100; i < 2000; i++) {      // makes the table grow as it goes
+                table.insert("k" + i, i);
+                if (i % 3 == 0) {
+                    table.remove("k" + (i / 2));
+                }
+            }
+            for (int i = 0; i < 50; i++) {
+                trees.insert(i, i);
+            }
+            for (int i = 0; i < 50; i += 2) {
+                trees.remove(i);
+            }
+            boolean same = true;
+            Object[] keys = new Object[4000];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = "k" + i;
+            }
+            Queue<Object>[] found = table.searchAll(keys);
+            for (int i = 0; i < keys.length; i++) {
+                boolean removed = (2 * i + 1) % 3 == 0 && 2 * i + 1 >= 100 && 2 * i + 1 < 2000
+                    || 2 * i % 3 == 0 && 2 * i >= 100 && 2 * i < 2000;
+                boolean present = i < 2000 && !removed;
+                Queue<Object> result = table.search(keys[i]);
+                same &= (result != null) == present && (found[i] != null) == present;
+            }
+            for (int i = 0; i < 50; i++) {
+                same &= (trees.search(i) != null) == (i % 2 == 1);
+            }
+            table.resize(50000);
+            for (int i = 0; i < 2000; i += 7) {
+                same &= (table.search(keys[i]) != null) == (found[i] != null);
+            }
+            long missing = table.getFilterRejects() + table.getFilterFalsePositives();
+            table.disableMissFilter();
+            String results = same + " " + table.search("k1999") + " " + table.search("k4000")
+                + " " + trees.search(49) + " " + (missing > 0) + " "
+                + (table.getFilterFalsePositiveRate() < 0.5);
+            String expected = "true {1999} null {49} true true";
             System.out.println("actual results:");
             System.out.println(results);
             System.out.println("expected results:");
@@ -630,35 +4096,36 @@ public class ChainedHashTable implements HashTable {
             System.out.println(results.equals(expected));
         } catch (Exception e) {
             System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
-        
         }
 
         System.out.println();
-        System.out.println("(0) Testing on resize()");
+        System.out.println("(1) Testing that the filter rejects most missing keys");
         System.out.println();
 
-
         try {
-            ChainedHashTable table = new ChainedHashTable(4);
-            table.insert("book", 20);
-            table.insert("phone", 10);
-            table.insert("mirror", 15);
-            table.insert("table",25);
-            table.insert("desk", 20);
-            System.out.println("table before resize: ");
-            System.out.println(table);
-            table.resize(9);
-            String results = table.toString();
-            String expected = "[null, null, null, {mirror}, {book}, null, {desk}, {phone; table}, null]";
+            ChainedHashTable table = new ChainedHashTable(1024, 1.0, true);
+            table.enableMissFilter();
+            for (int i = 0; i < 1000; i++) {
+                table.insert(i, i);
+            }
+            for (int i = 1000; i < 101000; i++) {
+                table.search(i);
+            }
+            for (int i = 0; i < 1000; i++) {
+                table.search(i);
+            }
+            String results = (table.getFilterRejects() + table.getFilterFalsePositives()) + " "
+                + (table.getFilterFalsePositiveRate() < 0.05);
+            String expected = "100000 true";
             System.out.println("actual results:");
             System.out.println(results);
             System.out.println("expected results:");
             System.out.println(expected);
             System.out.print("MATCHES EXPECTED RESULTS?: ");
             System.out.println(results.equals(expected));
+            System.out.println("(false-positive rate " + table.getFilterFalsePositiveRate() + ")");
         } catch (Exception e) {
             System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
-        
         }
 
 
@@ -0,0 +1,197 @@
+/*
+ * ChunkedArrayQueue.java
+ *
+ * Computer Science 112, Boston University
+ */
+
+import java.util.*;
+import java.util.function.*;
+
+/*
+ * A generic class that implements our Queue interface using a linked
+ * list of arrays ("chunks") instead of a linked list of nodes, so that
+ * each item costs about one array slot instead of a whole node.
+ *
+ * The last slot of every chunk holds a reference to the next chunk.
+ * The first chunk is small, because most queues in a hash table hold
+ * only one or two items, and each new chunk is twice as large as the
+ * one before it, up to MAX_CHUNK slots.
+ */
+public class ChunkedArrayQueue<T> implements Queue<T>, Iterable<T> {
+    private static final int FIRST_CHUNK = 2;
+    private static final int MAX_CHUNK = 1024;
+
+    // the fields of the ChunkedArrayQueue object
+    private Object[] front;     // the chunk containing the item at the front
+    private Object[] rear;      // the chunk containing the item at the rear
+    private int frontIndex;     // the position of the front item in front
+    private int rearIndex;      // the position after the rear item in rear
+    private int size;           // the number of items in the queue
+
+    /*
+     * Constructs a ChunkedArrayQueue object for a queue that is
+     * initially empty.  No chunk is allocated until the first insert.
+     */
+    public ChunkedArrayQueue() {
+        front = null;
+        rear = null;
+        frontIndex = 0;
+        rearIndex = 0;
+    }
+
+    /*
+     * isEmpty - returns true if the queue is empty, and false otherwise
+     */
+    public boolean isEmpty() {
+        return (front == rear && frontIndex == rearIndex);
+    }
+
+    /*
+     * isFull - always returns false, because new chunks can be added
+     * indefinitely and thus the queue is never full.
+     */
+    public boolean isFull() {
+        return false;
+    }
+
+    /*
+     * insert - adds the specified item at the rear of the queue.
+     * Always returns true, because the queue is never full.
+     */
+    public boolean insert(T item) {
+        if (rear == null) {
+            rear = new Object[FIRST_CHUNK];
+            front = rear;
+        } else if (rearIndex == rear.length - 1) {    // the last slot links to the next chunk
+            Object[] chunk = new Object[Math.min(2 * rear.length, MAX_CHUNK)];
+            rear[rearIndex] = chunk;
+            rear = chunk;
+            rearIndex = 0;
+        }
+
+        rear[rearIndex] = item;
+        rearIndex++;
+        size++;
+        return true;
+    }
+
+    /*
+     * remove - removes the item at the front of the queue and returns a
+     * reference to the removed object.  Returns null if the queue is
+     * empty.
+     */
+    @SuppressWarnings("unchecked")
+    public T remove() {
+        if (isEmpty()) {
+            return null;
+        }
+
+        T removed = (T) front[frontIndex];
+        front[frontIndex] = null;
+        frontIndex++;
+        size--;
+        if (front == rear && frontIndex == rearIndex) {  // removed the only item
+            frontIndex = 0;                 // reuse the chunk from its start
+            rearIndex = 0;
+        } else if (frontIndex == front.length - 1) {     // go on to the next chunk
+            front = (Object[]) front[frontIndex];
+            frontIndex = 0;
+        }
+
+        return removed;
+    }
+
+    /*
+     * peek - returns a reference to the item at the front of the queue
+     * without removing it. Returns null if the queue is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public T peek() {
+        if (isEmpty()) {
+            return null;
+        }
+        return (T) front[frontIndex];
+    }
+
+    /* size - returns the number of items in the queue */
+    public int size() {
+        return size;
+    }
+
+    /*
+     * forEach - performs the specified action on each item, from the
+     * front of the queue to the rear, without allocating an iterator
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super T> action) {
+        Object[] chunk = front;
+        int i = frontIndex;
+        while (chunk != null && !(chunk == rear && i == rearIndex)) {
+            if (i == chunk.length - 1) {
+                chunk = (Object[]) chunk[i];
+                i = 0;
+            } else {
+                action.accept((T) chunk[i]);
+                i++;
+            }
+        }
+    }
+
+    /*
+     * iterator - returns an iterator over the items, from the front of
+     * the queue to the rear.  The queue must not be changed while the
+     * iterator is in use.
+     */
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private Object[] chunk = front;
+            private int i = frontIndex;
+
+            public boolean hasNext() {
+                if (chunk != null && i == chunk.length - 1 && !(chunk == rear && i == rearIndex)) {
+                    chunk = (Object[]) chunk[i];
+                    i = 0;
+                }
+                return chunk != null && !(chunk == rear && i == rearIndex);
+            }
+
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                T item = (T) chunk[i];
+                i++;
+                return item;
+            }
+        };
+    }
+
+    /*
+     * toString - converts the queue into a String of the form
+     * {front, one-after-front, two-after-front, ...}
+     */
+    public String toString() {
+        StringBuilder str = new StringBuilder("{");
+
+        Object[] chunk = front;
+        int i = frontIndex;
+        boolean first = true;
+        while (chunk != null && !(chunk == rear && i == rearIndex)) {
+            if (i == chunk.length - 1) {
+                chunk = (Object[]) chunk[i];
+                i = 0;
+                continue;
+            }
+            if (!first) {
+                str.append(", ");
+            }
+            first = false;
+            str.append(chunk[i]);
+            i++;
+        }
+
+        str.append("}");
+        return str.toString();
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * ConcurrentArrayQueue.java
+ *
+ * Computer Science 112, Boston University
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * A generic class that implements our Queue interface using a circular
+ * array of fixed capacity that any number of threads can insert into
+ * and remove from at the same time, without locks.
+ *
+ * Every slot has a sequence number that says whose turn it is.  The
+ * insert with position p may fill slot p % capacity once the slot's
+ * sequence is p, and then sets it to p + 1.  The remove with position
+ * p may empty the slot once its sequence is p + 1, and then sets it
+ * to p + capacity, the position of the next insert that uses it.
+ * Threads claim positions with a compare-and-set on rearPos or
+ * frontPos.  No memory is allocated after construction.
+ */
+public class ConcurrentArrayQueue<T> implements Queue<T> {
+    private final Object[] items;
+    private final AtomicLongArray sequence;
+    private final AtomicLong frontPos;     // the position of the next remove
+    private final AtomicLong rearPos;      // the position of the next insert
+
+    /*
+     * Constructs a ConcurrentArrayQueue object for a queue that is
+     * initially empty and can hold at most maxSize items.
+     */
+    public ConcurrentArrayQueue(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException();
+        }
+        items = new Object[maxSize];
+        sequence = new AtomicLongArray(maxSize);
+        for (int i = 0; i < maxSize; i++) {
+            sequence.set(i, i);
+        }
+        frontPos = new AtomicLong(0);
+        rearPos = new AtomicLong(0);
+    }
+
+    /*
+     * insert - adds the specified item at the rear of the queue.
+     * Returns false if the queue is full, and true otherwise.
+     */
+    public boolean insert(T item) {
+        while (true) {
+            long pos = rearPos.get();
+            int i = (int) (pos % items.length);
+            long diff = sequence.get(i) - pos;
+            if (diff < 0) {                 // the slot still holds the item from a lap ago
+                return false;
+            }
+            if (diff == 0 && rearPos.compareAndSet(pos, pos + 1)) {
+                items[i] = item;
+                sequence.set(i, pos + 1);   // publishes the item to removers
+                return true;
+            }
+        }
+    }
+
+    /*
+     * remove - removes the item at the front of the queue and returns a
+     * reference to the removed object.  Returns null if the queue is
+     * empty.
+     */
+    @SuppressWarnings("unchecked")
+    public T remove() {
+        while (true) {
+            long pos = frontPos.get();
+            int i = (int) (pos % items.length);
+            long diff = sequence.get(i) - (pos + 1);
+            if (diff < 0) {                 // the slot has not been filled yet
+                return null;
+            }
+            if (diff == 0 && frontPos.compareAndSet(pos, pos + 1)) {
+                T removed = (T) items[i];
+                items[i] = null;
+                sequence.set(i, pos + items.length);
+                return removed;
+            }
+        }
+    }
+
+    /*
+     * peek - returns a reference to the item at the front of the queue
+     * without removing it. Returns null if the queue is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public T peek() {
+        while (true) {
+            long pos = frontPos.get();
+            int i = (int) (pos % items.length);
+            long diff = sequence.get(i) - (pos + 1);
+            if (diff < 0) {
+                return null;
+            }
+            T item = (T) items[i];
+            if (diff == 0 && frontPos.get() == pos) {  // the item was not removed meanwhile
+                return item;
+            }
+        }
+    }
+
+    /*
+     * size - returns the number of items in the queue.  The result
+     * may already be out of date if other threads are using the queue.
+     */
+    public int size() {
+        while (true) {
+            long front = frontPos.get();
+            long rear = rearPos.get();
+            if (front == frontPos.get()) {
+                return (int) Math.max(0, Math.min(items.length, rear - front));
+            }
+        }
+    }
+
+    /*
+     * isEmpty - returns true if the queue is empty, and false otherwise
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /*
+     * isFull - returns true if the queue holds maxSize items, and
+     * false otherwise
+     */
+    public boolean isFull() {
+        return size() == items.length;
+    }
+
+    /*
+     * toString - converts the queue into a String of the form
+     * {front, one-after-front, two-after-front, ...}.  Items inserted
+     * or removed meanwhile may or may not be included.
+     */
+    public String toString() {
+        StringBuilder str = new StringBuilder("{");
+
+        long front = frontPos.get();
+        long rear = rearPos.get();
+        for (long pos = front; pos < rear; pos++) {
+            int i = (int) (pos % items.length);
+            if (sequence.get(i) != pos + 1) {   // not filled yet, or already removed
+                break;
+            }
+            if (pos > front) {
+                str.append(", ");
+            }
+            str.append(items[i]);
+        }
+
+        str.append("}");
+        return str.toString();
+    }
+
+    public static void main(String[] args) {
+        System.out.println("--- Testing method insert() ---");
+        System.out.println();
+        System.out.println("(0) Testing on a full queue");
+        System.out.println();
+
+        try {
+            ConcurrentArrayQueue<Integer> queue = new ConcurrentArrayQueue<Integer>(3);
+            queue.insert(1);
+            queue.insert(2);
+            queue.insert(3);
+            boolean inserted = queue.insert(4);
+            boolean full = queue.isFull();
+            queue.remove();
+            queue.insert(5);
+            String results = inserted + " " + full + " " + queue;
+            String expected = "false true {2, 3, 5}";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+
+        }
+
+        System.out.println();
+        System.out.println("(1) Testing on several producers and consumers");
+        System.out.println();
+
+        try {
+            final ConcurrentArrayQueue<Integer> queue = new ConcurrentArrayQueue<Integer>(64);
+            final ConcurrentLLQueue<Long> sums = new ConcurrentLLQueue<Long>();
+            final int count = 100000;
+            Thread[] threads = new Thread[8];
+            for (int t = 0; t < threads.length; t++) {
+                final boolean producer = (t % 2 == 0);
+                threads[t] = new Thread() {
+                    public void run() {
+                        long sum = 0;
+                        for (int i = 1; i <= count; i++) {
+                            if (producer) {
+                                while (!queue.insert(i)) {
+                                    Thread.yield();
+                                }
+                            } else {
+                                Integer item = queue.remove();
+                                while (item == null) {
+                                    Thread.yield();
+                                    item = queue.remove();
+                                }
+                                sum += item;
+                            }
+                        }
+                        if (!producer) {
+                            sums.insert(sum);
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+            for (int t = 0; t < threads.length; t++) {
+                threads[t].join();
+            }
+            long total = 0;
+            Long sum = sums.remove();
+            while (sum != null) {
+                total += sum;
+                sum = sums.remove();
+            }
+            String results = total + " " + queue.isEmpty();
+            String expected = (4L * count * (count + 1) / 2) + " true";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+
+        }
+    }
+}
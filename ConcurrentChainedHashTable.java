@@ -0,0 +1,435 @@
+/*
+ * ConcurrentChainedHashTable.java
+ *
+ * Computer Science 112, Boston University
+ */
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/*
+ * A thread-safe hash table that uses separate chaining.
+ *
+ * A key is added to an empty bucket with a compare-and-set on the
+ * bucket, and any other change to a bucket is made while holding the
+ * lock of the bucket's first node, so threads only wait for each other
+ * when they use the same bucket.  search never locks: chains are only
+ * changed by writing volatile next fields, so a reader always sees a
+ * complete chain.  The values of a key are kept in a ConcurrentLLQueue,
+ * so they can be added to and read without locks as well.
+ *
+ * The bucket count is a power of two and doubles when the load goes
+ * past maxLoad.  While the table is growing, every thread that tries
+ * to change a bucket that has already been moved helps to move the
+ * remaining buckets, a few at a time.  A moved bucket is replaced by
+ * a ForwardingNode that points readers and writers to the new array.
+ */
+public class ConcurrentChainedHashTable implements HashTable {
+    /*
+     * Private inner class for a node in a linked list
+     * for a given position of the hash table
+     */
+    private static class Node {
+        private final Object key;
+        private final int hash;
+        private final Queue<Object> values;
+        private volatile Node next;
+
+        private Node(Object key, int hash, Queue<Object> values, Node next) {
+            this.key = key;
+            this.hash = hash;
+            this.values = values;
+            this.next = next;
+        }
+    }
+
+    /*
+     * Private inner class for the node that marks a bucket that has
+     * already been moved into the new bucket array of a resize
+     */
+    private static class ForwardingNode extends Node {
+        private final Resize resize;
+
+        private ForwardingNode(Resize resize) {
+            super(null, 0, null, null);
+            this.resize = resize;
+        }
+    }
+
+    /*
+     * Private inner class for the state of a resize that is in progress
+     */
+    private static class Resize {
+        private final AtomicReferenceArray<Node> oldTable;
+        private final AtomicReferenceArray<Node> newTable;
+        private final ForwardingNode forward;
+        private final AtomicInteger nextIndex;    // the next old bucket to be claimed
+        private final AtomicInteger remaining;    // the old buckets not moved yet
+
+        private Resize(AtomicReferenceArray<Node> oldTable, int newSize) {
+            this.oldTable = oldTable;
+            newTable = new AtomicReferenceArray<Node>(newSize);
+            forward = new ForwardingNode(this);
+            nextIndex = new AtomicInteger(0);
+            remaining = new AtomicInteger(oldTable.length());
+        }
+    }
+
+    /* the largest bucket array that the table will use */
+    private static final int MAX_SIZE = 1 << 30;
+
+    /* the number of old buckets that a thread claims at a time when resizing */
+    private static final int STRIDE = 16;
+
+    private volatile AtomicReferenceArray<Node> table;   // the hash table itself
+    private volatile Resize resize;      // the resize in progress, or null
+    private final Object resizeLock;     // held while starting a resize
+    private final LongAdder numKeys;     // the total number of keys in the table
+    private final double maxLoad;        // the load factor that triggers growth
+
+    /*
+     * Constructs a table with at least the specified number of buckets
+     * that doubles in size whenever its load exceeds maxLoad
+     */
+    public ConcurrentChainedHashTable(int size, double maxLoad) {
+        if (size <= 0 || !(maxLoad > 0)) {
+            throw new IllegalArgumentException();
+        }
+        int n = 1;
+        while (n < size && n < MAX_SIZE) {
+            n *= 2;
+        }
+        table = new AtomicReferenceArray<Node>(n);
+        resizeLock = new Object();
+        numKeys = new LongAdder();
+        this.maxLoad = maxLoad;
+    }
+
+    public ConcurrentChainedHashTable(int size) {
+        this(size, 0.75);
+    }
+
+    /*
+     * hash - returns the key's hash code with its high bits spread
+     * into the low bits, which are the ones used to pick a bucket
+     */
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /* matches - returns true if the specified node holds the key with the specified hash */
+    private static boolean matches(Node trav, Object key, int hash) {
+        return trav.hash == hash && (trav.key == key || key.equals(trav.key));
+    }
+
+    /*
+     * insert - insert the specified (key, value) pair in the hash table.
+     * Returns true if the pair can be added and false if there is overflow.
+     */
+    public boolean insert(Object key, Object value) {
+        if (key == null) {
+            throw new IllegalArgumentException();
+        }
+        int hash = hash(key);
+        AtomicReferenceArray<Node> tab = table;
+
+        while (true) {
+            int i = hash & (tab.length() - 1);
+            Node head = tab.get(i);
+
+            if (head == null) {                 // if position i is empty
+                Node newNode = new Node(key, hash, newValues(value), null);
+                if (tab.compareAndSet(i, null, newNode)) {
+                    break;
+                }
+            } else if (head instanceof ForwardingNode) {
+                Resize r = ((ForwardingNode) head).resize;
+                helpResize(r);
+                tab = r.newTable;
+            } else {
+                synchronized (head) {
+                    if (tab.get(i) == head) {   // the bucket did not change before we locked it
+                        Node trav = head;
+                        while (!matches(trav, key, hash) && trav.next != null) {
+                            trav = trav.next;
+                        }
+                        if (matches(trav, key, hash)) {
+                            trav.values.insert(value);
+                            return true;
+                        }
+                        trav.next = new Node(key, hash, newValues(value), null);
+                        break;
+                    }
+                }
+            }
+        }
+
+        numKeys.increment();
+        growIfNeeded(tab);
+        return true;
+    }
+
+    /*
+     * search - search for the specified key and return the
+     * associated collection of values, or null if the key
+     * is not in the table
+     */
+    public Queue<Object> search(Object key) {
+        int hash = hash(key);
+        AtomicReferenceArray<Node> tab = table;
+
+        while (true) {
+            Node trav = tab.get(hash & (tab.length() - 1));
+            if (trav instanceof ForwardingNode) {
+                tab = ((ForwardingNode) trav).resize.newTable;
+                continue;
+            }
+            while (trav != null && !matches(trav, key, hash)) {
+                trav = trav.next;
+            }
+            return (trav == null) ? null : trav.values;
+        }
+    }
+
+    /*
+     * remove - remove from the table the entry for the specified key
+     * and return the associated collection of values, or null if the key
+     * is not in the table
+     */
+    public Queue<Object> remove(Object key) {
+        int hash = hash(key);
+        AtomicReferenceArray<Node> tab = table;
+
+        while (true) {
+            int i = hash & (tab.length() - 1);
+            Node head = tab.get(i);
+
+            if (head == null) {
+                return null;
+            } else if (head instanceof ForwardingNode) {
+                Resize r = ((ForwardingNode) head).resize;
+                helpResize(r);
+                tab = r.newTable;
+            } else {
+                synchronized (head) {
+                    if (tab.get(i) == head) {
+                        Node prev = null;
+                        Node trav = head;
+                        while (trav != null && !matches(trav, key, hash)) {
+                            prev = trav;
+                            trav = trav.next;
+                        }
+                        if (trav == null) {     // the key is not found after traversal
+                            return null;
+                        }
+                        if (prev == null) {
+                            tab.set(i, trav.next);
+                        } else {
+                            prev.next = trav.next;
+                        }
+                        numKeys.decrement();
+                        return trav.values;
+                    }
+                }
+            }
+        }
+    }
+
+    /* newValues - returns a new collection of values holding just the specified value */
+    private static Queue<Object> newValues(Object value) {
+        Queue<Object> values = new ConcurrentLLQueue<Object>();
+        values.insert(value);
+        return values;
+    }
+
+    /*
+     * growIfNeeded - starts doubling the specified bucket array if the
+     * load exceeds maxLoad and it is not already being resized
+     */
+    private void growIfNeeded(AtomicReferenceArray<Node> tab) {
+        int n = tab.length();
+        if (n >= MAX_SIZE || numKeys.sum() <= maxLoad * n) {
+            return;
+        }
+
+        Resize r = null;
+        synchronized (resizeLock) {
+            // a resize that finishes sets table before clearing resize,
+            // so a stale tab is noticed here
+            if (resize == null && table == tab) {
+                r = new Resize(tab, 2 * n);
+                resize = r;
+            }
+        }
+        if (r != null) {
+            helpResize(r);
+        }
+    }
+
+    /*
+     * helpResize - moves buckets of the specified resize until none are
+     * left to claim.  The thread that moves the last bucket makes the
+     * new bucket array the table.
+     */
+    private void helpResize(Resize r) {
+        int n = r.oldTable.length();
+        while (true) {
+            int start = r.nextIndex.getAndAdd(STRIDE);
+            if (start >= n) {
+                return;
+            }
+            int end = Math.min(n, start + STRIDE);
+            for (int i = start; i < end; i++) {
+                moveBucket(r, i);
+            }
+            if (r.remaining.addAndGet(start - end) == 0) {
+                table = r.newTable;
+                resize = null;
+            }
+        }
+    }
+
+    /*
+     * moveBucket - copies the chain at position i of the old bucket array
+     * into positions i and i + n of the new one, and then replaces it with
+     * the forwarding node.  The old chain is left as it was, because
+     * readers may still be walking it.
+     */
+    private static void moveBucket(Resize r, int i) {
+        int n = r.oldTable.length();
+        while (true) {
+            Node head = r.oldTable.get(i);
+            if (head == null) {
+                if (r.oldTable.compareAndSet(i, null, r.forward)) {
+                    return;
+                }
+                continue;
+            }
+            synchronized (head) {
+                if (r.oldTable.get(i) != head) {
+                    continue;
+                }
+                Node low = null;
+                Node high = null;
+                for (Node trav = head; trav != null; trav = trav.next) {
+                    if ((trav.hash & n) == 0) {
+                        low = new Node(trav.key, trav.hash, trav.values, low);
+                    } else {
+                        high = new Node(trav.key, trav.hash, trav.values, high);
+                    }
+                }
+                r.newTable.set(i, low);
+                r.newTable.set(i + n, high);
+                r.oldTable.set(i, r.forward);
+                return;
+            }
+        }
+    }
+
+    /* getNumKeys - returns the number of keys in the table */
+    public int getNumKeys() {
+        return (int) numKeys.sum();
+    }
+
+    /* load - returns the number of keys per bucket */
+    public double load() {
+        return (double) numKeys.sum() / (double) table.length();
+    }
+
+    /*
+     * getAllKeys - returns an array of the keys in the table.  Keys that
+     * are added or removed while the array is being built may or may not
+     * be in it.
+     */
+    public Object[] getAllKeys() {
+        ArrayList<Object> keys = new ArrayList<Object>();
+        AtomicReferenceArray<Node> tab = table;
+        for (int i = 0; i < tab.length(); i++) {
+            addKeys(tab, i, keys);
+        }
+        return keys.toArray();
+    }
+
+    /* addKeys - adds the keys in position i of the specified bucket array to the list */
+    private static void addKeys(AtomicReferenceArray<Node> tab, int i, ArrayList<Object> keys) {
+        Node trav = tab.get(i);
+        if (trav instanceof ForwardingNode) {
+            AtomicReferenceArray<Node> next = ((ForwardingNode) trav).resize.newTable;
+            addKeys(next, i, keys);
+            addKeys(next, i + tab.length(), keys);
+            return;
+        }
+        for ( ; trav != null; trav = trav.next) {
+            keys.add(trav.key);
+        }
+    }
+
+    public static void main(String[] args) {
+        System.out.println("--- Testing method insert() ---");
+        System.out.println();
+        System.out.println("(0) Testing on insert() and search()");
+        System.out.println();
+
+        try {
+            ConcurrentChainedHashTable table = new ConcurrentChainedHashTable(2);
+            for (int i = 0; i < 100; i++) {
+                table.insert("key" + i, i);
+            }
+            table.insert("key7", 70);
+            table.remove("key8");
+            String results = table.getNumKeys() + " " + table.search("key7") + " "
+                + table.search("key8") + " " + (table.load() <= 0.75);
+            String expected = "99 {7, 70} null true";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+
+        }
+
+        System.out.println();
+        System.out.println("(1) Testing on insert() from several threads");
+        System.out.println();
+
+        try {
+            final ConcurrentChainedHashTable table = new ConcurrentChainedHashTable(1);
+            Thread[] threads = new Thread[8];
+            for (int t = 0; t < threads.length; t++) {
+                final int id = t;
+                threads[t] = new Thread() {
+                    public void run() {
+                        for (int i = 0; i < 20000; i++) {
+                            table.insert(i, id);              // shared keys
+                            table.insert("t" + id + "-" + i, i); // keys of this thread only
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+            for (int t = 0; t < threads.length; t++) {
+                threads[t].join();
+            }
+            int values = 0;
+            Queue<Object> q = table.search(12345);
+            while (q.remove() != null) {
+                values++;
+            }
+            String results = table.getNumKeys() + " " + table.getAllKeys().length + " " + values;
+            String expected = "180000 180000 8";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * ConcurrentLLQueue.java
+ *
+ * Computer Science 112, Boston University
+ */
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/*
+ * A generic class that implements our Queue interface using a linked
+ * list that any number of threads can insert into and remove from at
+ * the same time, without locks (the Michael-Scott queue).
+ *
+ * The list always starts with a dummy node: front is the dummy, and
+ * the item at the front of the queue is in the node after it.  Nodes
+ * are added by a compare-and-set on the next field of the last node,
+ * and removed by a compare-and-set on front.  rear may fall one node
+ * behind the real last node; any thread that notices moves it along.
+ */
+public class ConcurrentLLQueue<T> implements Queue<T> {
+    // Inner class for a node.
+    private static class Node<T> {
+        private volatile T item;
+        private volatile Node<T> next;
+
+        private Node(T i) {
+            item = i;
+        }
+    }
+
+    private static final VarHandle FRONT;
+    private static final VarHandle REAR;
+    private static final VarHandle NEXT;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            FRONT = lookup.findVarHandle(ConcurrentLLQueue.class, "front", Node.class);
+            REAR = lookup.findVarHandle(ConcurrentLLQueue.class, "rear", Node.class);
+            NEXT = lookup.findVarHandle(Node.class, "next", Node.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // the fields of the ConcurrentLLQueue object
+    private volatile Node<T> front;    // the dummy node before the front item
+    private volatile Node<T> rear;     // the last node, or the one before it
+
+    /*
+     * Constructs a ConcurrentLLQueue object for a queue that is
+     * initially empty.
+     */
+    public ConcurrentLLQueue() {
+        Node<T> dummy = new Node<T>(null);
+        front = dummy;
+        rear = dummy;
+    }
+
+    /*
+     * isEmpty - returns true if the queue is empty, and false otherwise
+     */
+    public boolean isEmpty() {
+        return (front.next == null);
+    }
+
+    /*
+     * isFull - always returns false, because the linked list can
+     * grow indefinitely and thus the queue is never full.
+     */
+    public boolean isFull() {
+        return false;
+    }
+
+    /*
+     * insert - adds the specified item at the rear of the queue.
+     * Always returns true, because the linked list is never full.
+     */
+    public boolean insert(T item) {
+        Node<T> newNode = new Node<T>(item);
+
+        while (true) {
+            Node<T> last = rear;
+            Node<T> next = last.next;
+            if (next != null) {                 // rear fell behind, move it along
+                REAR.compareAndSet(this, last, next);
+            } else if (NEXT.compareAndSet(last, null, newNode)) {
+                REAR.compareAndSet(this, last, newNode);
+                return true;
+            }
+        }
+    }
+
+    /*
+     * remove - removes the item at the front of the queue and returns a
+     * reference to the removed object.  Returns null if the queue is
+     * empty.
+     */
+    public T remove() {
+        while (true) {
+            Node<T> first = front;
+            Node<T> last = rear;
+            Node<T> next = first.next;
+            if (next == null) {
+                return null;
+            }
+            if (first == last) {                // rear fell behind, move it along
+                REAR.compareAndSet(this, last, next);
+            } else {
+                T removed = next.item;
+                if (FRONT.compareAndSet(this, first, next)) {
+                    next.item = null;           // next is the dummy node now
+                    return removed;
+                }
+            }
+        }
+    }
+
+    /*
+     * peek - returns a reference to the item at the front of the queue
+     * without removing it. Returns null if the queue is empty.
+     */
+    public T peek() {
+        while (true) {
+            Node<T> first = front;
+            Node<T> next = first.next;
+            if (next == null) {
+                return null;
+            }
+            T item = next.item;
+            if (first == front) {               // next was not removed meanwhile
+                return item;
+            }
+        }
+    }
+
+    /*
+     * toString - converts the queue into a String of the form
+     * {front, one-after-front, two-after-front, ...}.  Items inserted
+     * or removed meanwhile may or may not be included.
+     */
+    public String toString() {
+        StringBuilder str = new StringBuilder("{");
+
+        Node<T> trav = front.next;
+        while (trav != null) {
+            str.append(trav.item);
+            if (trav.next != null) {
+                str.append(", ");
+            }
+            trav = trav.next;
+        }
+
+        str.append("}");
+        return str.toString();
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * ConsistentHashRing.java
+ *
+ * Computer Science 112, Boston University
+ */
+
+import java.util.*;
+
+/*
+ * Assigns keys to shards by consistent hashing.  Every key, and each of
+ * a shard's virtualNodes points, has a position on a ring of 2^32
+ * positions, and a key belongs to the shard of the first point at or
+ * after the key's position, going round to the smallest point after
+ * the largest one.  Giving each shard many points spreads its keys
+ * evenly, and adding a shard only takes over the ranges just before
+ * its own points, so no other key changes shards.
+ *
+ * The points are kept sorted in an array, with the shard of each point
+ * in a second array, so a lookup is a binary search.
+ *
+ * Positions depend only on keys' hashCodes, so they are the same in
+ * every JVM for keys such as Strings and Integers, whose hashCodes are
+ * specified.
+ */
+public class ConsistentHashRing {
+    private final int virtualNodes;
+    private int[] points = new int[0];      // the points, in increasing order
+    private int[] owners = new int[0];      // owners[i] is the shard of points[i]
+
+    public ConsistentHashRing(int virtualNodes) {
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.virtualNodes = virtualNodes;
+    }
+
+    /* position - returns the position of the specified key on the ring */
+    public static int position(Object key) {
+        return mix(key.hashCode());
+    }
+
+    /* mix - spreads the bits of h over the whole int (murmur3's fmix32) */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /* shardFor - returns the shard that the specified key belongs to */
+    public int shardFor(Object key) {
+        if (points.length == 0) {
+            throw new IllegalStateException("the ring has no shards");
+        }
+        int i = successor(position(key));
+        return owners[i];
+    }
+
+    /* successor - returns the index of the first point at or after the specified position */
+    private int successor(int position) {
+        int i = Arrays.binarySearch(points, position);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return (i == points.length) ? 0 : i;
+    }
+
+    /*
+     * addShard - gives the specified shard its points and returns the
+     * ranges of positions that it takes over, as a list of moves.  Each
+     * move is {start, end, previous owner}, for the positions after
+     * start, up to and including end.  An empty ring returns no moves.
+     */
+    public List<int[]> addShard(int shard) {
+        for (int owner : owners) {
+            if (owner == shard) {
+                throw new IllegalArgumentException("shard " + shard + " is already on the ring");
+            }
+        }
+        int oldLength = points.length;
+        int[] newPoints = Arrays.copyOf(points, oldLength + virtualNodes);
+        int[] newOwners = Arrays.copyOf(owners, oldLength + virtualNodes);
+        for (int r = 0; r < virtualNodes; r++) {
+            newPoints[oldLength + r] = mix(shard * 0x9E3779B9 + mix(r));
+            newOwners[oldLength + r] = shard;
+        }
+        sort(newPoints, newOwners);
+        points = newPoints;
+        owners = newOwners;
+
+        ArrayList<int[]> moves = new ArrayList<int[]>();
+        if (oldLength == 0) {
+            return moves;
+        }
+        for (int i = 0; i < points.length; i++) {
+            if (owners[i] != shard) {
+                continue;
+            }
+            // the positions after the previous point used to belong to the
+            // first point after this one that is not the new shard's
+            int next = i;
+            while (owners[next] == shard) {
+                next = (next + 1) % points.length;
+            }
+            int previous = (i == 0) ? points[points.length - 1] : points[i - 1];
+            moves.add(new int[] {previous, points[i], owners[next]});
+        }
+        return moves;
+    }
+
+    /*
+     * removeShard - takes the specified shard's points off the ring, so
+     * that the positions it took over belong to their previous owners
+     * again
+     */
+    public void removeShard(int shard) {
+        int kept = 0;
+        for (int i = 0; i < points.length; i++) {
+            if (owners[i] != shard) {
+                points[kept] = points[i];
+                owners[kept] = owners[i];
+                kept++;
+            }
+        }
+        points = Arrays.copyOf(points, kept);
+        owners = Arrays.copyOf(owners, kept);
+    }
+
+    /* inRange - returns true if the position is after start, up to and including end, on the ring */
+    public static boolean inRange(int position, int start, int end) {
+        if (start < end) {
+            return start < position && position <= end;
+        }
+        return position > start || position <= end;    // the range goes round
+    }
+
+    /* sort - sorts the points and their owners together, by point */
+    private static void sort(int[] points, int[] owners) {
+        long[] pairs = new long[points.length];
+        for (int i = 0; i < points.length; i++) {
+            pairs[i] = ((long) points[i] << 32) | (owners[i] & 0xffffffffL);
+        }
+        Arrays.sort(pairs);
+        for (int i = 0; i < points.length; i++) {
+            points[i] = (int) (pairs[i] >> 32);
+            owners[i] = (int) pairs[i];
+        }
+    }
+
+    public int getNumPoints() {
+        return points.length;
+    }
+}
@@ -0,0 +1,617 @@
+/*
+ * DurableHashTable.java
+ *
+ * Computer Science 112, Boston University
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;     // to allow for the use of Arrays.toString() in testing
+import java.util.zip.CRC32;
+
+/*
+ * A HashTable whose contents survive a crash.  It keeps a
+ * ChainedHashTable in memory, and every insert and remove is also
+ * appended to a write-ahead log in the table's directory.  When the
+ * table is opened again, the latest snapshot is read and the log
+ * written after it is replayed.
+ *
+ * Log records are not written and synced one at a time.  They are
+ * collected in memory, and a committer thread writes each batch and
+ * syncs it with one force call (group commit) once the batch reaches
+ * maxBatchBytes or its oldest record is maxDelayMillis old.  insert
+ * and remove return without waiting for the disk, so a crash can lose
+ * the operations of the last maxDelayMillis; sync waits until every
+ * operation so far is on disk.
+ *
+ * The log is a series of numbered segments, log-<n>.  Once the
+ * current segment is larger than compactBytes, the committer starts a
+ * new one, and a compaction thread replays the previous snapshot and
+ * the finished segments into a table of its own, writes that table as
+ * snapshot-<n + 1>, and deletes the files it replaced.  snapshot-<n>
+ * holds the effect of every segment numbered below n.  Segments that
+ * are finished while a compaction runs are compacted by the same
+ * thread as soon as it is done, so the log does not pile up when
+ * compaction is slower than the writes.  Compaction
+ * never holds the table's lock, so it does not hold up inserts and
+ * removes.
+ *
+ * Each log record is its length, a CRC32 of its contents, and the
+ * contents: 'I', the key and the value, or 'R' and the key, each as a
+ * length and the serialized bytes.  Replay stops at the first record
+ * that is cut short or does not match its CRC, which can only be at
+ * the end of the log, where a crash interrupted a write.
+ *
+ * Changes made through a queue returned by search are not logged.
+ */
+public class DurableHashTable implements HashTable {
+    private static final byte INSERT = 'I';
+    private static final byte REMOVE = 'R';
+
+    private final Path directory;
+    private final Serializer keySerializer;
+    private final Serializer valueSerializer;
+    private final long maxDelayNanos;
+    private final int maxBatchBytes;
+    private final long compactBytes;
+
+    private final ChainedHashTable table;
+
+    // guarded by this
+    private ByteArrayOutputStream pending;      // records that have not been written yet
+    private long firstPendingTime;              // when the oldest pending record was added
+    private long appended;                      // the number of records added so far
+    private long durable;                       // the number of records that are on disk
+    private boolean syncRequested;
+    private boolean compacting;
+    private int snapshotSegment;                // the number of the newest snapshot, or 0
+    private int finishedSegment;                // the number of the newest finished log segment
+    private boolean closed;
+    private IOException failure;                // the error that stopped the committer, if any
+
+    // used only by the committer thread
+    private FileChannel log;
+    private int segment;                        // the number of the current log segment
+
+    private final Thread committer;
+
+    public DurableHashTable(Path directory) throws IOException {
+        this(directory, new ObjectSerializer(), new ObjectSerializer(), 10, 1 << 16, 1 << 26);
+    }
+
+    /*
+     * Opens the durable table kept in the specified directory, creating
+     * it if needed.  A batch of log records is synced once it holds
+     * maxBatchBytes or its oldest record is maxDelayMillis old, and a
+     * log segment is compacted once it holds more than compactBytes.
+     */
+    public DurableHashTable(Path directory, Serializer keySerializer, Serializer valueSerializer,
+                            long maxDelayMillis, int maxBatchBytes, long compactBytes)
+            throws IOException {
+        if (maxDelayMillis < 0 || maxBatchBytes <= 0 || compactBytes <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.directory = directory;
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        this.maxDelayNanos = maxDelayMillis * 1000000;
+        this.maxBatchBytes = maxBatchBytes;
+        this.compactBytes = compactBytes;
+        Files.createDirectories(directory);
+
+        snapshotSegment = newest("snapshot-");
+        ChainedHashTable loaded;
+        if (snapshotSegment > 0) {
+            loaded = ChainedHashTable.readSnapshot(snapshotPath(snapshotSegment),
+                                                   keySerializer, valueSerializer);
+        } else {
+            loaded = new ChainedHashTable(16, 1.0);
+        }
+        int last = newest("log-");
+        for (int n = Math.max(snapshotSegment, 1); n <= last; n++) {
+            replay(logPath(n), loaded, true);
+        }
+        table = loaded;
+
+        segment = Math.max(last, snapshotSegment) + 1;
+        finishedSegment = segment - 1;
+        log = openSegment(segment);
+        pending = new ByteArrayOutputStream();
+
+        committer = new Thread(this::commitLoop, "DurableHashTable committer");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    private Path logPath(int n) {
+        return directory.resolve("log-" + n);
+    }
+
+    private Path snapshotPath(int n) {
+        return directory.resolve("snapshot-" + n);
+    }
+
+    /* newest - returns the largest n for which the directory has a file prefix + n, or 0 */
+    private int newest(String prefix) throws IOException {
+        int max = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*")) {
+            for (Path file : files) {
+                String suffix = file.getFileName().toString().substring(prefix.length());
+                if (suffix.matches("[0-9]+")) {
+                    max = Math.max(max, Integer.parseInt(suffix));
+                }
+            }
+        }
+        return max;
+    }
+
+    private FileChannel openSegment(int n) throws IOException {
+        return FileChannel.open(logPath(n), StandardOpenOption.WRITE,
+                                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /*
+     * replay - applies the records of the specified log segment to the
+     * specified table.  If truncate is true, anything after the last
+     * whole record is cut off the file.
+     */
+    private void replay(Path file, ChainedHashTable into, boolean truncate) throws IOException {
+        long valid = 0;
+        long size = Files.size(file);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(file), 1 << 16))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                int check;
+                byte[] record;
+                try {
+                    length = in.readInt();
+                    check = in.readInt();
+                    if (length <= 0 || length > size - valid - 8) {    // a cut-off length
+                        break;
+                    }
+                    record = new byte[length];
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(record);
+                if ((int) crc.getValue() != check) {
+                    break;
+                }
+                apply(ByteBuffer.wrap(record), into);
+                valid += 8 + length;
+            }
+        }
+        if (truncate && valid < size) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+    }
+
+    /* apply - applies the operation in the specified log record to the specified table */
+    private void apply(ByteBuffer record, ChainedHashTable into) {
+        byte op = record.get();
+        Object key = keySerializer.fromBytes(bytes(record));
+        if (op == INSERT) {
+            into.insert(key, valueSerializer.fromBytes(bytes(record)));
+        } else {
+            into.remove(key);
+        }
+    }
+
+    private static byte[] bytes(ByteBuffer record) {
+        byte[] bytes = new byte[record.getInt()];
+        record.get(bytes);
+        return bytes;
+    }
+
+    /*
+     * insert - insert the specified (key, value) pair in the hash table.
+     * Returns true if the pair can be added and false if there is overflow.
+     */
+    public synchronized boolean insert(Object key, Object value) {
+        checkOpen();
+        boolean added = table.insert(key, value);
+        if (added) {
+            append(INSERT, keySerializer.toBytes(key), valueSerializer.toBytes(value));
+        }
+        return added;
+    }
+
+    /*
+     * search - search for the specified key and return the
+     * associated collection of values, or null if the key
+     * is not in the table
+     */
+    public synchronized Queue<Object> search(Object key) {
+        checkOpen();
+        return table.search(key);
+    }
+
+    /*
+     * remove - remove from the table the entry for the specified key
+     * and return the associated collection of values, or null if the key
+     * is not in the table
+     */
+    public synchronized Queue<Object> remove(Object key) {
+        checkOpen();
+        Queue<Object> removed = table.remove(key);
+        if (removed != null) {
+            append(REMOVE, keySerializer.toBytes(key), null);
+        }
+        return removed;
+    }
+
+    public synchronized int getNumKeys() {
+        return table.getNumKeys();
+    }
+
+    public synchronized double load() {
+        return table.load();
+    }
+
+    public synchronized Object[] getAllKeys() {
+        return table.getAllKeys();
+    }
+
+    /* append - adds a log record to the pending batch */
+    private void append(byte op, byte[] key, byte[] value) {
+        int length = 1 + 4 + key.length + ((value == null) ? 0 : 4 + value.length);
+        ByteBuffer record = ByteBuffer.allocate(length);
+        record.put(op).putInt(key.length).put(key);
+        if (value != null) {
+            record.putInt(value.length).put(value);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array());
+
+        if (pending.size() == 0) {
+            firstPendingTime = System.nanoTime();
+        }
+        ByteBuffer header = ByteBuffer.allocate(8).putInt(length).putInt((int) crc.getValue());
+        pending.write(header.array(), 0, 8);
+        pending.write(record.array(), 0, length);
+        appended++;
+        if (pending.size() >= maxBatchBytes) {
+            notifyAll();
+        }
+    }
+
+    /*
+     * sync - waits until every insert and remove made so far is on
+     * disk.  Throws an UncheckedIOException if the log could not be
+     * written.
+     */
+    public synchronized void sync() {
+        long target = appended;
+        syncRequested = true;
+        notifyAll();
+        boolean interrupted = false;
+        while (durable < target && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+    }
+
+    /*
+     * commitLoop - the committer thread: waits for a batch of records
+     * to be ready, then writes and syncs it outside of the lock, so new
+     * records can be added while the disk is busy
+     */
+    private void commitLoop() {
+        while (true) {
+            byte[] batch;
+            long count;
+            synchronized (this) {
+                try {
+                    while (!closed && !batchReady()) {
+                        if (pending.size() == 0) {
+                            wait();
+                        } else {
+                            long left = firstPendingTime + maxDelayNanos - System.nanoTime();
+                            wait(Math.max(1, left / 1000000), 0);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    closed = true;
+                }
+                if (closed && pending.size() == 0) {
+                    return;
+                }
+                batch = pending.toByteArray();
+                pending.reset();
+                count = appended;
+                syncRequested = false;
+            }
+
+            try {
+                ByteBuffer buf = ByteBuffer.wrap(batch);
+                while (buf.hasRemaining()) {
+                    log.write(buf);
+                }
+                log.force(false);
+                if (log.size() > compactBytes) {
+                    startNewSegment();
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    closed = true;
+                    notifyAll();
+                }
+                return;
+            }
+            synchronized (this) {
+                durable = count;
+                notifyAll();
+            }
+        }
+    }
+
+    /* batchReady - returns true if the pending records should be written now */
+    private boolean batchReady() {
+        return pending.size() > 0 && (syncRequested || pending.size() >= maxBatchBytes
+            || System.nanoTime() - firstPendingTime >= maxDelayNanos);
+    }
+
+    /*
+     * startNewSegment - closes the current log segment, opens the next
+     * one, and compacts the closed segments unless a compaction is
+     * already running
+     */
+    private void startNewSegment() throws IOException {
+        log.close();
+        segment++;
+        log = openSegment(segment);
+
+        int from;
+        int to = segment;
+        synchronized (this) {
+            finishedSegment = segment - 1;
+            if (compacting) {
+                return;         // the running compaction goes on to these when it is done
+            }
+            compacting = true;
+            from = snapshotSegment;
+        }
+        Thread compactor = new Thread(() -> compact(from, to), "DurableHashTable compactor");
+        compactor.setDaemon(true);
+        compactor.start();
+    }
+
+    /*
+     * compact - does compactOnce(from, to), and then the same for any
+     * segments that were finished in the meantime
+     */
+    private void compact(int from, int to) {
+        boolean again = true;
+        try {
+            while (again) {
+                boolean done = compactOnce(from, to);
+                synchronized (this) {
+                    if (done) {
+                        snapshotSegment = to;
+                    }
+                    again = done && finishedSegment >= to;
+                    if (again) {
+                        from = to;
+                        to = finishedSegment + 1;
+                    } else {
+                        compacting = false;
+                        notifyAll();
+                    }
+                }
+            }
+        } finally {
+            if (again) {        // something unexpected was thrown
+                synchronized (this) {
+                    compacting = false;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /*
+     * compactOnce - writes snapshot-<to>, the result of replaying
+     * snapshot-<from> (if from > 0) and log segments from to to - 1,
+     * and then deletes those files.  Returns false if it could not.
+     */
+    private boolean compactOnce(int from, int to) {
+        try {
+            ChainedHashTable copy;
+            if (from > 0) {
+                copy = ChainedHashTable.readSnapshot(snapshotPath(from),
+                                                     keySerializer, valueSerializer);
+            } else {
+                copy = new ChainedHashTable(16, 1.0);
+            }
+            for (int n = Math.max(from, 1); n < to; n++) {
+                if (Files.exists(logPath(n))) {
+                    replay(logPath(n), copy, false);
+                }
+            }
+
+            Path temp = directory.resolve("snapshot-" + to + ".tmp");
+            copy.writeSnapshot(temp, keySerializer, valueSerializer);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temp, snapshotPath(to), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the old snapshot and segments are still there; the next compaction tries again
+            return false;
+        }
+        try {
+            if (from > 0) {
+                Files.deleteIfExists(snapshotPath(from));
+            }
+            for (int n = Math.max(from, 1); n < to; n++) {
+                Files.deleteIfExists(logPath(n));
+            }
+        } catch (IOException e) {
+            // snapshot-<to> holds all of it; leftover files are ignored when the table is opened
+        }
+        return true;
+    }
+
+    private synchronized void checkOpen() {
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("the table is closed");
+        }
+    }
+
+    /*
+     * close - writes and syncs every pending record, waits for any
+     * compaction to finish, and closes the log.  The table cannot be
+     * used after it is closed.
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                committer.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        synchronized (this) {
+            while (compacting) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("--- Testing durability ---");
+        System.out.println();
+        System.out.println("(0) Testing on closing and opening again");
+        System.out.println();
+
+        Path directory = Files.createTempDirectory("durable");
+        try {
+            DurableHashTable table = new DurableHashTable(directory);
+            table.insert("howdy", 15);
+            table.insert("goodbye", 10);
+            table.insert("apple", 5);
+            table.insert("howdy", 25);
+            table.remove("goodbye");
+            table.close();
+
+            DurableHashTable reopened = new DurableHashTable(directory);
+            String results = reopened.search("howdy") + " " + reopened.search("apple") + " "
+                + reopened.search("goodbye") + " " + reopened.getNumKeys();
+            String expected = "{15, 25} {5} null 2";
+            reopened.close();
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        }
+
+        System.out.println();
+        System.out.println("(1) Testing on compaction and a cut-off last record");
+        System.out.println();
+
+        try {
+            DurableHashTable table = new DurableHashTable(directory, new ObjectSerializer(),
+                new ObjectSerializer(), 1, 1 << 10, 1 << 12);
+            for (int i = 0; i < 20000; i++) {
+                table.insert(i % 1000, i);
+                if (i % 3 == 0) {
+                    table.remove((i + 500) % 1000);
+                }
+            }
+            String before = table.search(999) + " " + table.getNumKeys();
+            table.close();
+
+            // add "last" with a table that never compacts, so that it stays in the newest log
+            DurableHashTable tail = new DurableHashTable(directory, new ObjectSerializer(),
+                new ObjectSerializer(), 1, 1 << 10, Long.MAX_VALUE);
+            tail.insert("last", 1);
+            tail.close();
+
+            // cut the log in the middle of its last record, the insert of "last"
+            Path newest = null;
+            for (int n = tail.newest("log-"); newest == null; n--) {
+                if (Files.size(directory.resolve("log-" + n)) > 0) {
+                    newest = directory.resolve("log-" + n);
+                }
+            }
+            try (FileChannel channel = FileChannel.open(newest, StandardOpenOption.WRITE)) {
+                channel.truncate(channel.size() - 3);
+            }
+            DurableHashTable reopened = new DurableHashTable(directory);
+            String after = reopened.search(999) + " " + reopened.getNumKeys();
+            String last = "" + reopened.search("last");
+            reopened.close();
+            int snapshots = 0;
+            int logs = 0;
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    if (file.getFileName().toString().startsWith("snapshot-")) {
+                        snapshots++;
+                    } else {
+                        logs++;
+                    }
+                }
+            }
+            String results = before.equals(after) + " " + last + " " + (snapshots == 1)
+                + " " + (logs < 10);
+            String expected = "true null true true";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
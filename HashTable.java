@@ -24,4 +24,47 @@ public interface HashTable {
      * is not in the table
      */
     Queue<Object> remove(Object key);
+    
+    /*
+     * insertAll - insert the pair (keys[i], values[i]) for every i.
+     * Returns true if all of the pairs can be added.
+     */
+    default boolean insertAll(Object[] keys, Object[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException();
+        }
+        boolean added = true;
+        for (int i = 0; i < keys.length; i++) {
+            added &= insert(keys[i], values[i]);
+        }
+        return added;
+    }
+    
+    /*
+     * searchAll - search for each of the specified keys and return an
+     * array whose element i is the collection of values of keys[i], or
+     * null if keys[i] is not in the table
+     */
+    default Queue<Object>[] searchAll(Object[] keys) {
+        @SuppressWarnings("unchecked")
+        Queue<Object>[] results = (Queue<Object>[]) new Queue<?>[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            results[i] = search(keys[i]);
+        }
+        return results;
+    }
+    
+    /*
+     * removeAll - remove each of the specified keys and return an
+     * array whose element i is the collection of values of keys[i], or
+     * null if keys[i] was not in the table
+     */
+    default Queue<Object>[] removeAll(Object[] keys) {
+        @SuppressWarnings("unchecked")
+        Queue<Object>[] results = (Queue<Object>[]) new Queue<?>[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            results[i] = remove(keys[i]);
+        }
+        return results;
+    }
 }
\ No newline at end of file
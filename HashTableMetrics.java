@@ -0,0 +1,188 @@
+/*
+ * HashTableMetrics.java
+ *
+ * Computer Science 112, Boston University
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.*;
+
+/*
+ * Counters and histograms that show how a ChainedHashTable is doing,
+ * from ChainedHashTable.enableMetrics().  The counters are LongAdders,
+ * which can be read at any time from another thread, such as the one
+ * that answers JMX requests.  Adding to a LongAdder is an atomic 
+ * instruction, which stops the processor from overlapping the cache
+ * misses of one search with those of the next, so the table counts 
+ * into plain fields and adds them to the LongAdders every FLUSH_EVERY
+ * operations.  The counters can therefore be that far behind.
+ *
+ * The histograms need a pass over the whole table, so they are not
+ * kept up to date as the table changes.  They are sampled when the
+ * metrics are enabled and whenever ChainedHashTable.sampleMetrics() is
+ * called, by the thread that is using the table; JMX only ever reads
+ * the last sample.
+ */
+public class HashTableMetrics implements HashTableMetricsMXBean {
+    /* the number of elements in the chain-length histogram */
+    static final int CHAIN_LENGTHS = 17;
+
+    /* the number of elements in the value-count histogram */
+    static final int VALUE_COUNTS = 32;
+
+    /* the number of operations counted before the counts are flushed */
+    static final int FLUSH_EVERY = 1024;
+
+    /* the probes are counted for one search in this many */
+    static final int PROBE_SAMPLE = 8;
+
+    final LongAdder inserts = new LongAdder();
+    final LongAdder searches = new LongAdder();
+    final LongAdder removes = new LongAdder();
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder sampledHits = new LongAdder();
+    final LongAdder sampledMisses = new LongAdder();
+    final LongAdder hitProbes = new LongAdder();
+    final LongAdder missProbes = new LongAdder();
+    final LongAdder resizes = new LongAdder();
+    final LongAdder resizeNanos = new LongAdder();
+
+    // the counts since the last flush, used only by the table's thread
+    long pendingInserts;
+    long pendingSearches;
+    long pendingRemoves;
+    long pendingHits;
+    long pendingMisses;
+    long pendingSampledHits;
+    long pendingSampledMisses;
+    long pendingHitProbes;
+    long pendingMissProbes;
+    private int pending;
+
+    private volatile Sample sample = new Sample(new long[CHAIN_LENGTHS], 0, new long[VALUE_COUNTS], 0);
+    private ObjectName name;    // the name it is registered under, or null
+
+    /* the histograms and other numbers from one pass over a table */
+    static class Sample {
+        final long[] chainLengths;
+        final int maxChainLength;
+        final long[] valueCounts;
+        final double load;
+
+        Sample(long[] chainLengths, int maxChainLength, long[] valueCounts, double load) {
+            this.chainLengths = chainLengths;
+            this.maxChainLength = maxChainLength;
+            this.valueCounts = valueCounts;
+            this.load = load;
+        }
+    }
+
+    /* counted - notes that an operation has been counted, flushing if it is time */
+    void counted() {
+        if (++pending == FLUSH_EVERY) {
+            flush();
+        }
+    }
+
+    /* flush - adds the pending counts to the counters */
+    void flush() {
+        inserts.add(pendingInserts);
+        searches.add(pendingSearches);
+        removes.add(pendingRemoves);
+        hits.add(pendingHits);
+        misses.add(pendingMisses);
+        sampledHits.add(pendingSampledHits);
+        sampledMisses.add(pendingSampledMisses);
+        hitProbes.add(pendingHitProbes);
+        missProbes.add(pendingMissProbes);
+        pendingInserts = pendingSearches = pendingRemoves = 0;
+        pendingHits = pendingMisses = 0;
+        pendingSampledHits = pendingSampledMisses = pendingHitProbes = pendingMissProbes = 0;
+        pending = 0;
+    }
+
+    /* update - replaces the last sample */
+    void update(Sample sample) {
+        this.sample = sample;
+    }
+
+    public long getInserts() {
+        return inserts.sum();
+    }
+
+    public long getSearches() {
+        return searches.sum();
+    }
+
+    public long getRemoves() {
+        return removes.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getAverageProbesPerHit() {
+        return average(hitProbes, sampledHits);
+    }
+
+    public double getAverageProbesPerMiss() {
+        return average(missProbes, sampledMisses);
+    }
+
+    private static double average(LongAdder total, LongAdder count) {
+        long n = count.sum();
+        return (n == 0) ? 0 : (double) total.sum() / n;
+    }
+
+    public long getResizes() {
+        return resizes.sum();
+    }
+
+    public double getResizeMillis() {
+        return resizeNanos.sum() / 1e6;
+    }
+
+    public long[] getChainLengthHistogram() {
+        return sample.chainLengths.clone();
+    }
+
+    public int getMaxChainLength() {
+        return sample.maxChainLength;
+    }
+
+    public long[] getValueCountHistogram() {
+        return sample.valueCounts.clone();
+    }
+
+    public double getLoad() {
+        return sample.load;
+    }
+
+    /*
+     * register - exports the metrics through the platform MBean server,
+     * under the name ChainedHashTable:name=<the specified name>
+     */
+    public synchronized void register(String tableName) throws JMException {
+        if (name != null) {
+            throw new IllegalStateException("already registered as " + name);
+        }
+        ObjectName objectName = new ObjectName("ChainedHashTable", "name", tableName);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        name = objectName;
+    }
+
+    /* unregister - stops exporting the metrics, if they are exported */
+    public synchronized void unregister() throws JMException {
+        if (name != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            name = null;
+        }
+    }
+}
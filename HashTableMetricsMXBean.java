@@ -0,0 +1,48 @@
+/*
+ * HashTableMetricsMXBean.java
+ *
+ * Computer Science 112, Boston University
+ */
+
+/*
+ * The attributes of a HashTableMetrics that are exported through JMX.
+ * The counters are running totals; the histograms, maximum chain length
+ * and load are from the last time that the table was sampled.
+ */
+public interface HashTableMetricsMXBean {
+    long getInserts();
+    long getSearches();
+    long getRemoves();
+    long getHits();
+    long getMisses();
+
+    /*
+     * the average number of nodes looked at by a search that found its
+     * key, over a sample of the searches
+     */
+    double getAverageProbesPerHit();
+
+    /* the same for the searches that did not find their key */
+    double getAverageProbesPerMiss();
+
+    long getResizes();
+
+    /* the total time spent resizing, from the start of each resize to its end */
+    double getResizeMillis();
+
+    /*
+     * element i is the number of buckets with i keys; the last element
+     * counts the buckets with that many keys or more
+     */
+    long[] getChainLengthHistogram();
+
+    int getMaxChainLength();
+
+    /*
+     * element i is the number of keys with from 2^i to 2^(i+1) - 1
+     * values
+     */
+    long[] getValueCountHistogram();
+
+    double getLoad();
+}
@@ -0,0 +1,550 @@
+/*
+ * HashTableServer.java
+ *
+ * Computer Science 112, Boston University
+ */
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;     // to allow for the use of Arrays.toString() in testing
+
+/*
+ * A network server for a ChainedHashTable that serves every connection
+ * from one thread, with a Selector, instead of a thread per connection.
+ * It speaks the batch format that ShardServer describes (INSERT,
+ * SEARCH, REMOVE and SIZE; a single operation is a batch of one), so a
+ * SocketShardTransport can be its client.
+ *
+ * A client may send any number of batches without waiting for their
+ * results (pipelining).  Each time data arrives, every complete batch
+ * in it is carried out, and the results are sent back in order.  A
+ * connection whose client stops reading is not read from again until
+ * the results that it has waiting fall below MAX_PENDING_BYTES.
+ *
+ * A connection is dropped if it sends a request that is not valid, a
+ * batch of more than ShardServer.MAX_BATCH requests or MAX_BATCH_BYTES
+ * bytes, or a key or value longer than ShardServer.MAX_OBJECT_BYTES.
+ * Nothing is allocated for a batch until all of it has arrived, so
+ * sizes that a client sends cannot make the server allocate more than
+ * the client has sent.
+ *
+ * The server never turns keys or values back into objects.  A key is
+ * kept as its bytes, so keys are compared by their bytes, and a value
+ * is kept exactly as it arrived, with its length in front.  The
+ * results of a search are then the stored arrays themselves, handed to
+ * one gathering write without being serialized or copied again.
+ */
+public class HashTableServer implements Closeable {
+    private static final int READ_BUFFER = 1 << 16;
+    private static final int MAX_PENDING_BYTES = 1 << 20;
+    private static final int MAX_BATCH_BYTES = 1 << 26;
+    private static final int MAX_GATHER = 64;      // the most buffers written by one call
+
+    private final ChainedHashTable table = new ChainedHashTable(16, 1.0, true);
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final Thread loop;
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+    private volatile boolean closed;
+
+    /* a key, as the bytes that its Serializer gave */
+    private static final class Key {
+        private final byte[] bytes;
+        private final int hash;
+
+        private Key(byte[] bytes) {
+            this.bytes = bytes;
+            hash = Arrays.hashCode(bytes);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object other) {
+            return other instanceof Key && Arrays.equals(bytes, ((Key) other).bytes);
+        }
+    }
+
+    /* the state of one client connection */
+    private static final class Connection {
+        private final SocketChannel channel;
+        private ByteBuffer in = ByteBuffer.allocate(READ_BUFFER);  // kept ready for reading into
+        private final ArrayDeque<ByteBuffer> out = new ArrayDeque<ByteBuffer>();
+        private final ByteBuffer small = ByteBuffer.allocate(1 << 10);  // small results not yet in out
+        private long pendingBytes;          // the bytes in out
+        private int checkedRequests;        // the requests of the front batch known to have arrived
+        private int checkedBytes;           // and their bytes, after the batch size
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /* Starts a server on the specified address; a port of 0 picks a free port */
+    public HashTableServer(InetSocketAddress address) throws IOException {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(address);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        loop = new Thread(this::selectLoop, "HashTableServer");
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    /* Starts a server on a free port of the loopback address */
+    public HashTableServer() throws IOException {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    private void selectLoop() {
+        try {
+            while (!closed) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection c = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            read(c);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(c);
+                        }
+                        if (key.isValid()) {
+                            int ops = c.out.isEmpty() ? 0 : SelectionKey.OP_WRITE;
+                            if (c.pendingBytes < MAX_PENDING_BYTES) {
+                                ops |= SelectionKey.OP_READ;
+                            }
+                            key.interestOps(ops);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        // a broken connection or a bad request: drop the connection
+                        key.cancel();
+                        c.channel.close();
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            // the server has been closed
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+    }
+
+    /*
+     * read - reads what has arrived on the connection, carries out the
+     * complete batches in it, and starts writing their results
+     */
+    private void read(Connection c) throws IOException {
+        if (c.channel.read(c.in) < 0) {
+            c.channel.close();
+            return;
+        }
+        c.in.flip();
+        while (c.in.hasRemaining() && batch(c)) {
+        }
+        c.in.compact();
+        if (!c.in.hasRemaining()) {     // a batch larger than the buffer
+            if (c.in.capacity() >= MAX_BATCH_BYTES) {
+                throw new IOException("batch larger than " + MAX_BATCH_BYTES + " bytes");
+            }
+            ByteBuffer larger = ByteBuffer.allocate(2 * c.in.capacity());
+            c.in.flip();
+            larger.put(c.in);
+            c.in = larger;
+        }
+        flushSmall(c);
+        write(c);
+    }
+
+    /*
+     * batch - carries out the batch at the front of c.in and returns
+     * true, or returns false without using up any of c.in if the batch
+     * has not all arrived yet.  Nothing is allocated for a batch until
+     * it has all arrived, and the requests that have been checked are
+     * remembered in c, so that a large batch that arrives over many
+     * reads is only checked once.
+     */
+    private boolean batch(Connection c) throws IOException {
+        ByteBuffer in = c.in;
+        if (in.remaining() < 4) {
+            return false;
+        }
+        int count = in.getInt(in.position());
+        if (count < 0 || count > ShardServer.MAX_BATCH) {
+            throw new IOException("bad batch size " + count);
+        }
+        int start = in.position() + 4;
+        while (c.checkedRequests < count) {
+            int next = checked(in, start + c.checkedBytes);
+            if (next < 0) {
+                return false;
+            }
+            c.checkedBytes = next - start;
+            c.checkedRequests++;
+        }
+        c.checkedRequests = 0;
+        c.checkedBytes = 0;
+
+        in.position(start);
+        byte[] ops = new byte[count];
+        Key[] keys = new Key[count];
+        byte[][] values = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            ops[i] = in.get();
+            if (ops[i] != ShardServer.SIZE) {
+                keys[i] = new Key(framed(in, false));
+                if (ops[i] == ShardServer.INSERT) {
+                    values[i] = framed(in, true);
+                }
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            switch (ops[i]) {
+            case ShardServer.INSERT:
+                small(c, 1).put((byte) (table.insert(keys[i], values[i]) ? 1 : 0));
+                break;
+            case ShardServer.SEARCH:
+                values(c, table.search(keys[i]));
+                break;
+            case ShardServer.REMOVE:
+                values(c, table.remove(keys[i]));
+                break;
+            default:
+                small(c, 4).putInt(table.getNumKeys());
+            }
+        }
+        return true;
+    }
+
+    /*
+     * checked - checks the request at index i of the buffer without
+     * moving its position, and returns the index just past it, or -1 if
+     * it has not all arrived
+     */
+    private static int checked(ByteBuffer in, int i) throws IOException {
+        if (i >= in.limit()) {
+            return -1;
+        }
+        byte op = in.get(i);
+        if (op == ShardServer.SIZE) {
+            return i + 1;
+        }
+        if (op != ShardServer.INSERT && op != ShardServer.SEARCH
+                && op != ShardServer.REMOVE) {
+            throw new IOException("unsupported operation " + op);
+        }
+        i = checkedFrame(in, i + 1);
+        if (i >= 0 && op == ShardServer.INSERT) {
+            i = checkedFrame(in, i);
+        }
+        return i;
+    }
+
+    /*
+     * checkedFrame - checks the length and bytes at index i of the
+     * buffer and returns the index just past them, or -1 if they have
+     * not all arrived
+     */
+    private static int checkedFrame(ByteBuffer in, int i) throws IOException {
+        if (in.limit() - i < 4) {
+            return -1;
+        }
+        int length = in.getInt(i);
+        if (length < 0 || length > ShardServer.MAX_OBJECT_BYTES) {
+            throw new IOException("bad length " + length);
+        }
+        if (in.limit() - i - 4 < length) {
+            return -1;
+        }
+        return i + 4 + length;
+    }
+
+    /*
+     * framed - returns the bytes of the next length and bytes in the
+     * buffer, which checked() has found to have arrived, with the length
+     * in front if withLength is true
+     */
+    private static byte[] framed(ByteBuffer in, boolean withLength) {
+        int length = in.getInt(in.position());
+        if (!withLength) {
+            in.position(in.position() + 4);
+        }
+        byte[] bytes = new byte[withLength ? 4 + length : length];
+        in.get(bytes);
+        return bytes;
+    }
+
+    /* small - returns a buffer with room for n more bytes of small results */
+    private static ByteBuffer small(Connection c, int n) {
+        if (c.small.remaining() < n) {
+            flushSmall(c);
+        }
+        return c.small;
+    }
+
+    /*
+     * flushSmall - adds a copy of the small results collected so far to
+     * the output, so that c.small can be reused
+     */
+    private static void flushSmall(Connection c) {
+        if (c.small.position() > 0) {
+            c.small.flip();
+            queue(c, ByteBuffer.allocate(c.small.remaining()).put(c.small).flip());
+            c.small.clear();
+        }
+    }
+
+    /* values - adds the results of a search or remove to the output */
+    private static void values(Connection c, Queue<Object> values) {
+        if (values == null) {
+            small(c, 4).putInt(-1);
+            return;
+        }
+        ChunkedArrayQueue<?> queue = (ChunkedArrayQueue<?>) values;
+        small(c, 4).putInt(queue.size());
+        flushSmall(c);
+        for (Object value : queue) {
+            queue(c, ByteBuffer.wrap((byte[]) value));
+        }
+    }
+
+    private static void queue(Connection c, ByteBuffer buffer) {
+        c.out.add(buffer);
+        c.pendingBytes += buffer.remaining();
+    }
+
+    /* write - writes as much of the output as the socket will take */
+    private void write(Connection c) throws IOException {
+        while (!c.out.isEmpty()) {
+            int n = 0;
+            for (ByteBuffer b : c.out) {
+                gather[n++] = b;
+                if (n == MAX_GATHER) {
+                    break;
+                }
+            }
+            long written = c.channel.write(gather, 0, n);
+            c.pendingBytes -= written;
+            while (!c.out.isEmpty() && !c.out.peek().hasRemaining()) {
+                c.out.remove();
+            }
+            if (written == 0) {
+                return;         // the socket is full; OP_WRITE says when it is not
+            }
+        }
+    }
+
+    /* close - stops the server and drops every connection */
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        try {
+            loop.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("--- Testing the server ---");
+        System.out.println();
+        System.out.println("(0) Testing on single operations");
+        System.out.println();
+
+        try (HashTableServer server = new HashTableServer();
+             SocketShardTransport client = new SocketShardTransport(server.getPort())) {
+            ShardServer.Request[][] batches = {
+                {ShardServer.Request.insert("howdy", 15)},
+                {ShardServer.Request.insert("goodbye", 10)},
+                {ShardServer.Request.insert("howdy", 25)},
+                {ShardServer.Request.search("howdy")},
+                {ShardServer.Request.search("pear")},
+                {ShardServer.Request.remove("goodbye")},
+                {ShardServer.Request.size()}
+            };
+            String results = "";
+            for (ShardServer.Request[] batch : batches) {
+                client.send(batch);
+                results += client.receive()[0] + " ";
+            }
+            String expected = "true true true {15, 25} null {10} 1 ";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        }
+
+        System.out.println();
+        System.out.println("(1) Testing on pipelined batches from several clients");
+        System.out.println();
+
+        try (HashTableServer server = new HashTableServer()) {
+            SocketShardTransport[] clients = new SocketShardTransport[3];
+            for (int c = 0; c < clients.length; c++) {
+                clients[c] = new SocketShardTransport(server.getPort());
+            }
+            // 50 batches of 100 inserts from each client before any results are read
+            for (int b = 0; b < 50; b++) {
+                for (int c = 0; c < clients.length; c++) {
+                    ShardServer.Request[] batch = new ShardServer.Request[100];
+                    for (int i = 0; i < batch.length; i++) {
+                        batch[i] = ShardServer.Request.insert(b * 100 + i, c);
+                    }
+                    clients[c].send(batch);
+                }
+            }
+            boolean inserted = true;
+            for (int b = 0; b < 50; b++) {
+                for (SocketShardTransport client : clients) {
+                    for (Object result : client.receive()) {
+                        inserted &= (Boolean) result;
+                    }
+                }
+            }
+            ShardServer.Request[] batch = new ShardServer.Request[5001];
+            for (int i = 0; i < batch.length; i++) {
+                batch[i] = ShardServer.Request.search(i);
+            }
+            clients[0].send(batch);
+            clients[0].send(new ShardServer.Request[] {ShardServer.Request.size()});
+            Object[] found = clients[0].receive();
+            // each key should have one value from each client, in any order,
+            // since the clients' batches may be carried out in any order
+            boolean all = true;
+            for (int i = 0; i < 5000; i++) {
+                ChunkedArrayQueue<?> values = (ChunkedArrayQueue<?>) found[i];
+                int seen = 0;
+                for (Object value : values) {
+                    seen |= 1 << (Integer) value;
+                }
+                all &= values.size() == 3 && seen == 7;
+            }
+            String results = inserted + " " + all + " " + found[5000] + " "
+                + clients[0].receive()[0];
+            String expected = "true true null 5000";
+            for (SocketShardTransport client : clients) {
+                client.close();
+            }
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        }
+
+        System.out.println();
+        System.out.println("(2) Testing that bad requests drop only their own connections");
+        System.out.println();
+
+        try (HashTableServer server = new HashTableServer();
+             SocketShardTransport client = new SocketShardTransport(server.getPort())) {
+            byte[][] requests = {
+                {0x7f, -1, -1, -1},                                     // a batch of 2^31 - 1
+                {0, 0, 0, 1, ShardServer.SEARCH, 0x7f, -1, -1, -1},     // a huge key
+                {0, 0, 0, 1, ShardServer.EXTRACT}                       // not supported here
+            };
+            String results = "";
+            for (byte[] request : requests) {
+                try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+                    socket.setSoTimeout(5000);
+                    socket.getOutputStream().write(request);
+                    results += socket.getInputStream().read() + " ";
+                }
+            }
+            client.send(new ShardServer.Request[] {ShardServer.Request.insert("howdy", 15)});
+            client.send(new ShardServer.Request[] {ShardServer.Request.search("howdy")});
+            results += client.receive()[0] + " " + client.receive()[0];
+            String expected = "-1 -1 -1 true {15}";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        }
+
+        System.out.println();
+        System.out.println("(3) Testing on a batch that arrives a little at a time");
+        System.out.println();
+
+        try (HashTableServer server = new HashTableServer();
+             Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            socket.setSoTimeout(5000);
+            socket.setTcpNoDelay(true);
+            int n = 3000;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream batch = new DataOutputStream(bytes);
+            batch.writeInt(n + 1);
+            for (int i = 0; i < n; i++) {
+                batch.writeByte(ShardServer.INSERT);
+                batch.writeInt(4);
+                batch.writeInt(i);
+                batch.writeInt(1);
+                batch.writeByte(i);
+            }
+            batch.writeByte(ShardServer.SIZE);
+            byte[] request = bytes.toByteArray();
+            OutputStream out = socket.getOutputStream();
+            for (int i = 0; i < request.length; i += 100) {
+                out.write(request, i, Math.min(100, request.length - i));
+                out.flush();
+                Thread.sleep(1);
+            }
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            int inserted = 0;
+            for (int i = 0; i < n; i++) {
+                inserted += in.readByte();
+            }
+            String results = inserted + " " + in.readInt();
+            String expected = n + " " + n;
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        }
+    }
+}
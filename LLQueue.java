@@ -4,6 +4,9 @@
  * Computer Science 112, Boston University
  */
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 /*
  * A generic class that implements our Queue interface using a linked list.
  */
@@ -103,17 +106,31 @@ public class LLQueue<T> implements Queue<T> {
      * {front, one-after-front, two-after-front, ...}
      */
     public String toString() {
-        String str = "{";
+        StringBuilder str = new StringBuilder();
+        try {
+            dump(str);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);      // a StringBuilder does not throw
+        }
+        return str.toString();
+    }
+    
+    /*
+     * dump - writes the string that toString returns to the specified
+     * Appendable (a StringBuilder or a Writer, for example) as it goes,
+     * in time proportional to the length of the queue
+     */
+    public void dump(Appendable out) throws IOException {
+        out.append('{');
         
         Node trav = front;
         while (trav != null) {
-            str = str + trav.item;
+            out.append(String.valueOf(trav.item));
             if (trav.next != null)
-                str = str + ", ";
+                out.append(", ");
             trav = trav.next;
         }
         
-        str = str + "}";
-        return str;
+        out.append('}');
     }
 }
@@ -0,0 +1,37 @@
+/*
+ * LocalShardTransport.java
+ *
+ * Computer Science 112, Boston University
+ */
+
+import java.util.ArrayDeque;
+
+/*
+ * A ShardTransport to a ShardServer in the same JVM.  send carries the
+ * batch out right away and keeps its results until they are received.
+ * The queues of values in the results are the shard's own, as they
+ * are from ChainedHashTable.search.
+ */
+public class LocalShardTransport implements ShardTransport {
+    private final ShardServer server;
+    private final ArrayDeque<Object[]> results = new ArrayDeque<Object[]>();
+
+    public LocalShardTransport(ShardServer server) {
+        this.server = server;
+    }
+
+    public void send(ShardServer.Request[] batch) {
+        results.add(server.execute(batch));
+    }
+
+    public Object[] receive() {
+        if (results.isEmpty()) {
+            throw new IllegalStateException("no batch has been sent");
+        }
+        return results.remove();
+    }
+
+    public void close() {
+        results.clear();
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * LongLongChainedMultiMap.java
+ *
+ * Computer Science 112, Boston University
+ */
+
+import java.util.*;     // to allow for the use of Arrays.toString() in testing
+
+/*
+ * A hash table that uses separate chaining to map long keys to one or
+ * more long values, like ChainedHashTable but without boxing and
+ * without any object per key or per value.
+ *
+ * Keys are kept in "entries" and values in "value slots", both of
+ * which are positions in parallel primitive arrays.  A bucket holds
+ * the position of its first entry, and next[e] links entry e to the
+ * next one in the chain.  The values of entry e form a list that runs
+ * from firstValue[e] to lastValue[e] through valueNext.  -1 marks the
+ * end of a chain or list.  Entries and value slots that are freed by
+ * remove go on free lists and are reused by later inserts.
+ */
+public class LongLongChainedMultiMap {
+    private static final int NONE = -1;
+
+    private int[] table;         // the position of the first entry in each bucket
+    private int numKeys;         // the total number of keys in the table
+    private double maxLoad;      // the load factor that triggers automatic growth
+
+    // the entries
+    private long[] keys;
+    private int[] next;
+    private int[] firstValue;
+    private int[] lastValue;
+    private int[] numValues;
+    private int entriesUsed;     // entries at or past this position were never used
+    private int freeEntry;       // the first entry on the free list
+
+    // the value slots
+    private long[] values;
+    private int[] valueNext;
+    private int valuesUsed;      // value slots at or past this position were never used
+    private int freeValue;       // the first value slot on the free list
+
+    public LongLongChainedMultiMap(int size) {
+        this(size, Double.POSITIVE_INFINITY);
+    }
+
+    /*
+     * Constructs a table that doubles its number of buckets whenever
+     * its load exceeds maxLoad
+     */
+    public LongLongChainedMultiMap(int size, double maxLoad) {
+        if (size <= 0 || !(maxLoad > 0)) {
+            throw new IllegalArgumentException();
+        }
+        table = new int[size];
+        Arrays.fill(table, NONE);
+        this.maxLoad = maxLoad;
+
+        int capacity = Math.max(size, 4);
+        keys = new long[capacity];
+        next = new int[capacity];
+        firstValue = new int[capacity];
+        lastValue = new int[capacity];
+        numValues = new int[capacity];
+        freeEntry = NONE;
+
+        values = new long[capacity];
+        valueNext = new int[capacity];
+        freeValue = NONE;
+    }
+
+    /* hash function, giving the same positions as ChainedHashTable gives Long keys */
+    public int h1(long key) {
+        return index(key, table.length);
+    }
+
+    private static int index(long key, int length) {
+        int h1 = Long.hashCode(key) % length;
+        if (h1 < 0) {
+            h1 += length;
+        }
+        return h1;
+    }
+
+    /* find - returns the entry for the specified key, or -1 if it is not in the table */
+    private int find(long key) {
+        int e = table[h1(key)];
+        while (e != NONE && keys[e] != key) {
+            e = next[e];
+        }
+        return e;
+    }
+
+    /*
+     * insert - insert the specified (key, value) pair in the hash table.
+     * Returns true if the pair can be added and false if there is overflow.
+     */
+    public boolean insert(long key, long value) {
+        int e = find(key);
+        if (e == NONE) {        // add a new entry at the front of the chain
+            e = newEntry();
+            int i = h1(key);
+            keys[e] = key;
+            next[e] = table[i];
+            firstValue[e] = NONE;
+            lastValue[e] = NONE;
+            numValues[e] = 0;
+            table[i] = e;
+            numKeys++;
+        }
+
+        int v = newValue();
+        values[v] = value;
+        valueNext[v] = NONE;
+        if (lastValue[e] == NONE) {
+            firstValue[e] = v;
+        } else {
+            valueNext[lastValue[e]] = v;
+        }
+        lastValue[e] = v;
+        numValues[e]++;
+
+        if (load() > maxLoad) {
+            resize(2 * table.length + 1);
+        }
+        return true;
+    }
+
+    /*
+     * search - search for the specified key and return the
+     * associated values, in the order in which they were inserted,
+     * or null if the key is not in the table
+     */
+    public long[] search(long key) {
+        int e = find(key);
+        if (e == NONE) {
+            return null;
+        }
+        return valuesOf(e);
+    }
+
+    /*
+     * remove - remove from the table the entry for the specified key
+     * and return the associated values, or null if the key
+     * is not in the table
+     */
+    public long[] remove(long key) {
+        int i = h1(key);
+        int e = table[i];
+        int prev = NONE;
+        while (e != NONE && keys[e] != key) {
+            prev = e;
+            e = next[e];
+        }
+        if (e == NONE) {        // the key is not found after traversal
+            return null;
+        }
+
+        if (prev == NONE) {
+            table[i] = next[e];
+        } else {
+            next[prev] = next[e];
+        }
+        long[] removed = valuesOf(e);
+
+        // put the entry and its whole list of values on the free lists
+        valueNext[lastValue[e]] = freeValue;
+        freeValue = firstValue[e];
+        next[e] = freeEntry;
+        freeEntry = e;
+        numKeys--;
+        return removed;
+    }
+
+    /* numValues - returns the number of values of the specified key */
+    public int numValues(long key) {
+        int e = find(key);
+        return (e == NONE) ? 0 : numValues[e];
+    }
+
+    public int getNumKeys() {
+        return numKeys;
+    }
+
+    public double load() {
+        return (double)(numKeys) / (double)(table.length);
+    }
+
+    public long[] getAllKeys() {
+        long[] result = new long[numKeys];
+        int arrIndex = 0;
+        for (int i = 0; i < table.length; i++) {
+            for (int e = table[i]; e != NONE; e = next[e]) {
+                result[arrIndex] = keys[e];
+                arrIndex++;
+            }
+        }
+        return result;
+    }
+
+    /*
+     * resize - grows the table to the specified number of buckets by
+     * relinking the existing entries; only the bucket array is allocated
+     */
+    public void resize(int newSize) {
+        if (newSize < table.length) {
+            throw new IllegalArgumentException();
+        }
+        else if (newSize == table.length) {
+            return;
+        }
+
+        int[] newTable = new int[newSize];
+        Arrays.fill(newTable, NONE);
+        for (int i = 0; i < table.length; i++) {
+            int e = table[i];
+            while (e != NONE) {
+                int nextEntry = next[e];
+                int j = index(keys[e], newSize);
+                next[e] = newTable[j];
+                newTable[j] = e;
+                e = nextEntry;
+            }
+        }
+        table = newTable;
+    }
+
+    /* valuesOf - returns an array of the values of entry e */
+    private long[] valuesOf(int e) {
+        long[] result = new long[numValues[e]];
+        int v = firstValue[e];
+        for (int k = 0; k < result.length; k++) {
+            result[k] = values[v];
+            v = valueNext[v];
+        }
+        return result;
+    }
+
+    /* newEntry - returns a free entry, growing the entry arrays if needed */
+    private int newEntry() {
+        if (freeEntry != NONE) {
+            int e = freeEntry;
+            freeEntry = next[e];
+            return e;
+        }
+        if (entriesUsed == keys.length) {
+            int capacity = 2 * keys.length;
+            keys = Arrays.copyOf(keys, capacity);
+            next = Arrays.copyOf(next, capacity);
+            firstValue = Arrays.copyOf(firstValue, capacity);
+            lastValue = Arrays.copyOf(lastValue, capacity);
+            numValues = Arrays.copyOf(numValues, capacity);
+        }
+        entriesUsed++;
+        return entriesUsed - 1;
+    }
+
+    /* newValue - returns a free value slot, growing the value arrays if needed */
+    private int newValue() {
+        if (freeValue != NONE) {
+            int v = freeValue;
+            freeValue = valueNext[v];
+            return v;
+        }
+        if (valuesUsed == values.length) {
+            int capacity = 2 * values.length;
+            values = Arrays.copyOf(values, capacity);
+            valueNext = Arrays.copyOf(valueNext, capacity);
+        }
+        valuesUsed++;
+        return valuesUsed - 1;
+    }
+
+    /*
+     * toString - returns a string representation of this table in the
+     * same format as ChainedHashTable.toString
+     */
+    public String toString() {
+        StringBuilder s = new StringBuilder("[");
+
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] == NONE) {
+                s.append("null");
+            } else {
+                s.append("{");
+                for (int e = table[i]; e != NONE; e = next[e]) {
+                    s.append(keys[e]);
+                    if (next[e] != NONE) {
+                        s.append("; ");
+                    }
+                }
+                s.append("}");
+            }
+
+            if (i < table.length - 1) {
+                s.append(", ");
+            }
+        }
+
+        s.append("]");
+        return s.toString();
+    }
+
+    public static void main(String[] args) {
+        System.out.println("--- Testing methods insert() and remove() ---");
+        System.out.println();
+        System.out.println("(0) Testing on insert() and remove()");
+        System.out.println();
+
+        try {
+            LongLongChainedMultiMap table = new LongLongChainedMultiMap(5);
+            table.insert(3, 30);
+            table.insert(8, 80);
+            table.insert(3, 31);
+            table.insert(4, 40);
+            String removed = Arrays.toString(table.remove(8));
+            table.insert(13, 130);      // reuses the entry and value slot of key 8
+            String results = removed + " " + Arrays.toString(table.search(3)) + " "
+                + table.getNumKeys() + " " + table;
+            String expected = "[80] [30, 31] 3 [null, null, null, {13; 3}, {4}]";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+
+        }
+
+        System.out.println();
+        System.out.println("(1) Testing on automatic growth");
+        System.out.println();
+
+        try {
+            LongLongChainedMultiMap table = new LongLongChainedMultiMap(3, 2.0);
+            for (long k = 0; k < 10000; k++) {
+                table.insert(k * 1000003L, k);
+                table.insert(k * 1000003L, -k);
+            }
+            for (long k = 0; k < 10000; k += 2) {
+                table.remove(k * 1000003L);
+            }
+            long[] values = table.search(9999 * 1000003L);
+            String results = table.getNumKeys() + " " + table.getAllKeys().length + " "
+                + Arrays.toString(values) + " " + (table.load() <= 2.0) + " "
+                + table.search(9998 * 1000003L);
+            String expected = "5000 5000 [9999, -9999] true null";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+
+        }
+    }
+}
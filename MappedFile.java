@@ -0,0 +1,119 @@
+/*
+ * MappedFile.java
+ *
+ * Computer Science 112, Boston University
+ */
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/*
+ * A read-only view of a whole file through FileChannel.map.  A single
+ * mapping cannot be larger than 2 GB, so the file is mapped in
+ * segments of 1 GB, and a read that crosses the end of a segment is
+ * put together from the two segments.  Positions are longs.
+ */
+public class MappedFile {
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+    private MappedByteBuffer[] segments;
+    private final long length;
+
+    public MappedFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            length = channel.size();
+            int count = (int) ((length + SEGMENT_MASK) >>> SEGMENT_BITS);
+            segments = new MappedByteBuffer[count];
+            for (int s = 0; s < count; s++) {
+                long start = (long) s << SEGMENT_BITS;
+                long size = Math.min(1L << SEGMENT_BITS, length - start);
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            }
+        }
+    }
+
+    /* length - returns the number of bytes in the file */
+    public long length() {
+        return length;
+    }
+
+    public int getInt(long pos) {
+        MappedByteBuffer segment = segments[(int) (pos >>> SEGMENT_BITS)];
+        int offset = (int) (pos & SEGMENT_MASK);
+        if (offset + 4 <= segment.limit()) {
+            return segment.getInt(offset);
+        }
+        return (int) getAcross(pos, 4);
+    }
+
+    public long getLong(long pos) {
+        MappedByteBuffer segment = segments[(int) (pos >>> SEGMENT_BITS)];
+        int offset = (int) (pos & SEGMENT_MASK);
+        if (offset + 8 <= segment.limit()) {
+            return segment.getLong(offset);
+        }
+        return getAcross(pos, 8);
+    }
+
+    public double getDouble(long pos) {
+        return Double.longBitsToDouble(getLong(pos));
+    }
+
+    /* getAcross - reads a big-endian number of n bytes one byte at a time */
+    private long getAcross(long pos, int n) {
+        long result = 0;
+        for (int b = 0; b < n; b++) {
+            result = (result << 8) | (getByte(pos + b) & 0xff);
+        }
+        return result;
+    }
+
+    public byte getByte(long pos) {
+        return segments[(int) (pos >>> SEGMENT_BITS)].get((int) (pos & SEGMENT_MASK));
+    }
+
+    /* getBytes - returns a copy of the n bytes at the specified position */
+    public byte[] getBytes(long pos, int n) {
+        byte[] bytes = new byte[n];
+        int done = 0;
+        while (done < n) {
+            MappedByteBuffer segment = segments[(int) ((pos + done) >>> SEGMENT_BITS)];
+            int offset = (int) ((pos + done) & SEGMENT_MASK);
+            int count = Math.min(n - done, segment.limit() - offset);
+            segment.get(offset, bytes, done, count);
+            done += count;
+        }
+        return bytes;
+    }
+
+    /* equalBytes - returns true if the bytes at the specified position are the specified bytes */
+    public boolean equalBytes(long pos, byte[] bytes) {
+        MappedByteBuffer segment = segments[(int) (pos >>> SEGMENT_BITS)];
+        int offset = (int) (pos & SEGMENT_MASK);
+        if (offset + bytes.length <= segment.limit()) {
+            for (int b = 0; b < bytes.length; b++) {
+                if (segment.get(offset + b) != bytes[b]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        for (int b = 0; b < bytes.length; b++) {
+            if (getByte(pos + b) != bytes[b]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * close - lets go of the mappings.  The memory is given back when
+     * the mapped buffers are garbage collected.
+     */
+    public void close() {
+        segments = null;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * ObjectSerializer.java
+ *
+ * Computer Science 112, Boston University
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * A Serializer for any Serializable object.  Strings, Integers and
+ * Longs get a short form of their own (a tag byte and their contents),
+ * and everything else is written with Java serialization.  Bytes from
+ * a source that is not trusted should be read by an ObjectSerializer
+ * with a filter, such as JAVA_TYPES, that limits the classes that Java
+ * serialization may create.
+ */
+public class ObjectSerializer implements Serializer {
+    private static final byte STRING = 'S';
+    private static final byte INTEGER = 'I';
+    private static final byte LONG = 'L';
+    private static final byte OBJECT = 'O';
+
+    /* the most bytes, and the longest array, that JAVA_TYPES lets an object have */
+    public static final int MAX_FILTERED_BYTES = 1 << 24;
+
+    /*
+     * a filter that only lets Java serialization create objects of
+     * classes in java.lang, java.util and java.math (and arrays of them
+     * or of primitive types), nested at most 20 deep, from at most
+     * MAX_FILTERED_BYTES bytes
+     */
+    public static final ObjectInputFilter JAVA_TYPES = ObjectInputFilter.Config.createFilter(
+        "maxdepth=20;maxrefs=100000;maxbytes=" + MAX_FILTERED_BYTES + ";maxarray="
+        + MAX_FILTERED_BYTES + ";java.lang.*;java.util.*;java.math.*;!*");
+
+    private final ObjectInputFilter filter;
+
+    /* Constructs a serializer that reads objects of any class */
+    public ObjectSerializer() {
+        this(null);
+    }
+
+    /*
+     * Constructs a serializer that reads only the objects that the
+     * filter allows.  It also rejects any array (including the arrays
+     * inside collections such as ArrayList and HashMap) that is longer
+     * than the bytes being read, since each element takes at least a
+     * byte, so that a few bytes that claim a huge array cannot make it
+     * allocate one.
+     */
+    public ObjectSerializer(ObjectInputFilter filter) {
+        this.filter = filter;
+    }
+
+    public byte[] toBytes(Object o) {
+        if (o instanceof String) {
+            byte[] chars = ((String) o).getBytes(StandardCharsets.UTF_8);
+            return ByteBuffer.allocate(1 + chars.length).put(STRING).put(chars).array();
+        } else if (o instanceof Integer) {
+            return ByteBuffer.allocate(5).put(INTEGER).putInt((Integer) o).array();
+        } else if (o instanceof Long) {
+            return ByteBuffer.allocate(9).put(LONG).putLong((Long) o).array();
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            bytes.write(OBJECT);
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(o);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {           // o is not Serializable
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    public Object fromBytes(byte[] bytes) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        switch (buf.get()) {
+        case STRING:
+            return new String(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8);
+        case INTEGER:
+            return buf.getInt();
+        case LONG:
+            return buf.getLong();
+        case OBJECT:
+            try {
+                ObjectInputStream in = new ObjectInputStream(
+                    new ByteArrayInputStream(bytes, 1, bytes.length - 1));
+                if (filter != null) {
+                    in.setObjectInputFilter(info -> (info.arrayLength() > bytes.length)
+                        ? ObjectInputFilter.Status.REJECTED : filter.checkInput(info));
+                }
+                return in.readObject();
+            } catch (IOException | ClassNotFoundException e) {
+                throw new IllegalArgumentException(e);
+            }
+        default:
+            throw new IllegalArgumentException("unknown tag " + bytes[0]);
+        }
+    }
+}
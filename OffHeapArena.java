@@ -0,0 +1,171 @@
+/*
+ * OffHeapArena.java
+ *
+ * Computer Science 112, Boston University
+ */
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/*
+ * A memory allocator for blocks that live outside of the heap, in
+ * direct ByteBuffers ("chunks").  However many blocks are allocated,
+ * the heap only holds the chunk objects.
+ *
+ * A block is named by a long address: the chunk number plus one in
+ * the high 32 bits, and the offset in the chunk in the low 32 bits,
+ * so 0 is never a block's address and can be used as null.
+ *
+ * Block sizes are rounded up to a power of two, and a freed block is
+ * put on a free list for its size, from which later allocations of
+ * the same size are taken.  A free block's first 8 bytes hold the
+ * address of the next block on its free list.
+ */
+public class OffHeapArena {
+    private static final int MIN_SIZE_CLASS = 4;    // blocks are at least 16 bytes
+    private static final int MAX_SIZE_CLASS = 30;
+
+    private final int chunkSize;
+    private ArrayList<ByteBuffer> chunks;
+    private ByteBuffer current;        // the chunk that new blocks are cut from
+    private long[] freeLists;          // the first free block of each size class
+    private long allocatedBytes;       // the bytes in blocks that are in use
+
+    /*
+     * Constructs an arena that reserves memory chunkSize bytes at a time
+     */
+    public OffHeapArena(int chunkSize) {
+        if (chunkSize < (1 << MIN_SIZE_CLASS)) {
+            throw new IllegalArgumentException();
+        }
+        this.chunkSize = chunkSize;
+        chunks = new ArrayList<ByteBuffer>();
+        freeLists = new long[MAX_SIZE_CLASS + 1];
+    }
+
+    /* sizeClass - returns the power of two that a block of the specified size is rounded to */
+    private static int sizeClass(int size) {
+        if (size <= 0 || size > (1 << MAX_SIZE_CLASS)) {
+            throw new IllegalArgumentException();
+        }
+        return Math.max(MIN_SIZE_CLASS, 32 - Integer.numberOfLeadingZeros(size - 1));
+    }
+
+    /*
+     * allocate - returns the address of a block of at least the
+     * specified number of bytes.  The block's contents are undefined.
+     */
+    public long allocate(int size) {
+        checkOpen();
+        int sizeClass = sizeClass(size);
+        int blockSize = 1 << sizeClass;
+        allocatedBytes += blockSize;
+
+        long address = freeLists[sizeClass];
+        if (address != 0) {
+            freeLists[sizeClass] = getLong(address);
+            return address;
+        }
+
+        if (current == null || current.remaining() < blockSize) {
+            current = ByteBuffer.allocateDirect(Math.max(chunkSize, blockSize));
+            chunks.add(current);
+        }
+        int offset = current.position();
+        current.position(offset + blockSize);
+        return ((long) chunks.size() << 32) | offset;
+    }
+
+    /*
+     * free - gives back the block at the specified address, which was
+     * allocated with the specified size
+     */
+    public void free(long address, int size) {
+        checkOpen();
+        int sizeClass = sizeClass(size);
+        allocatedBytes -= 1 << sizeClass;
+        putLong(address, freeLists[sizeClass]);
+        freeLists[sizeClass] = address;
+    }
+
+    /*
+     * close - gives back all of the arena's memory.  The chunks are
+     * direct buffers, so their memory is returned to the operating
+     * system once the garbage collector has collected them.
+     */
+    public void close() {
+        chunks = null;
+        current = null;
+        freeLists = null;
+        allocatedBytes = 0;
+    }
+
+    /* allocatedBytes - returns the number of bytes in blocks that are in use */
+    public long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /* reservedBytes - returns the number of bytes in all of the chunks */
+    public long reservedBytes() {
+        long total = 0;
+        if (chunks != null) {
+            for (ByteBuffer chunk : chunks) {
+                total += chunk.capacity();
+            }
+        }
+        return total;
+    }
+
+    private void checkOpen() {
+        if (chunks == null) {
+            throw new IllegalStateException("arena is closed");
+        }
+    }
+
+    private ByteBuffer chunk(long address) {
+        return chunks.get((int) (address >>> 32) - 1);
+    }
+
+    private static int offset(long address) {
+        return (int) address;
+    }
+
+    public long getLong(long address) {
+        return chunk(address).getLong(offset(address));
+    }
+
+    public void putLong(long address, long value) {
+        chunk(address).putLong(offset(address), value);
+    }
+
+    public int getInt(long address) {
+        return chunk(address).getInt(offset(address));
+    }
+
+    public void putInt(long address, int value) {
+        chunk(address).putInt(offset(address), value);
+    }
+
+    /* getBytes - returns a copy of the length bytes at the specified address */
+    public byte[] getBytes(long address, int length) {
+        byte[] bytes = new byte[length];
+        chunk(address).get(offset(address), bytes);
+        return bytes;
+    }
+
+    public void putBytes(long address, byte[] bytes) {
+        chunk(address).put(offset(address), bytes);
+    }
+
+    /* equalBytes - returns true if the bytes at the specified address are the specified bytes */
+    public boolean equalBytes(long address, byte[] bytes) {
+        ByteBuffer chunk = chunk(address);
+        int offset = offset(address);
+        for (int i = 0; i < bytes.length; i++) {
+            if (chunk.get(offset + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
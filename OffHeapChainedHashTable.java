@@ -0,0 +1,374 @@
+/*
+ * OffHeapChainedHashTable.java
+ *
+ * Computer Science 112, Boston University
+ */
+
+import java.nio.ByteBuffer;
+import java.util.*;     // to allow for the use of Arrays.toString() in testing
+
+/*
+ * A hash table that uses separate chaining like ChainedHashTable, but
+ * that keeps its buckets, chains, keys and values outside of the heap.
+ * Keys and values are turned into bytes by Serializers and stored in
+ * blocks of an OffHeapArena, so the heap only holds a handful of
+ * objects however large the table gets.
+ *
+ * A key block holds:
+ *     0: the address of the next key block in the chain
+ *     8: the address of the key's first value block
+ *    16: the address of the key's last value block
+ *    24: the key's hash code
+ *    28: the number of bytes in the key
+ *    32: the bytes of the key
+ *
+ * A value block holds:
+ *     0: the address of the key's next value block
+ *     8: the number of bytes in the value
+ *    12: the bytes of the value
+ *
+ * Keys are compared by their bytes, so keys that are equal must be
+ * serialized to the same bytes.  search and remove return a queue of
+ * copies of the values; changing that queue does not change the table.
+ * close gives back all of the table's memory.
+ */
+public class OffHeapChainedHashTable implements HashTable {
+    private static final int NEXT = 0;
+    private static final int FIRST_VALUE = 8;
+    private static final int LAST_VALUE = 16;
+    private static final int HASH = 24;
+    private static final int KEY_LENGTH = 28;
+    private static final int KEY_BYTES = 32;
+
+    private static final int VALUE_LENGTH = 8;
+    private static final int VALUE_BYTES = 12;
+
+    private static final int MAX_SIZE = 1 << 28;
+
+    private ByteBuffer table;        // the address of the first key block in each bucket
+    private int size;                // the number of buckets
+    private int numKeys;             // the total number of keys in the table
+    private double maxLoad;          // the load factor that triggers automatic growth
+    private OffHeapArena arena;
+    private Serializer keySerializer;
+    private Serializer valueSerializer;
+
+    /*
+     * Constructs a table that grows once its load exceeds maxLoad and
+     * reserves off-heap memory chunkSize bytes at a time
+     */
+    public OffHeapChainedHashTable(int size, double maxLoad, int chunkSize,
+                                   Serializer keySerializer, Serializer valueSerializer) {
+        if (size <= 0 || size > MAX_SIZE || !(maxLoad > 0)) {
+            throw new IllegalArgumentException();
+        }
+        this.size = size;
+        table = ByteBuffer.allocateDirect(8 * size);
+        this.maxLoad = maxLoad;
+        arena = new OffHeapArena(chunkSize);
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+    }
+
+    public OffHeapChainedHashTable(int size) {
+        this(size, Double.POSITIVE_INFINITY, 1 << 20, new ObjectSerializer(), new ObjectSerializer());
+    }
+
+    /* hash function */
+    public int h1(Object key) {
+        return index(key.hashCode(), size);
+    }
+
+    private static int index(int hash, int length) {
+        int h1 = hash % length;
+        if (h1 < 0) {
+            h1 += length;
+        }
+        return h1;
+    }
+
+    private long bucket(ByteBuffer buckets, int i) {
+        return buckets.getLong(8 * i);
+    }
+
+    /*
+     * find - returns the address of the key block for the key with the
+     * specified hash and bytes, or 0 if the key is not in the table
+     */
+    private long find(int hash, byte[] keyBytes) {
+        long k = bucket(table, index(hash, size));
+        while (k != 0 && !matches(k, hash, keyBytes)) {
+            k = arena.getLong(k + NEXT);
+        }
+        return k;
+    }
+
+    private boolean matches(long k, int hash, byte[] keyBytes) {
+        return arena.getInt(k + HASH) == hash
+            && arena.getInt(k + KEY_LENGTH) == keyBytes.length
+            && arena.equalBytes(k + KEY_BYTES, keyBytes);
+    }
+
+    /*
+     * insert - insert the specified (key, value) pair in the hash table.
+     * Returns true if the pair can be added and false if there is overflow.
+     */
+    public boolean insert(Object key, Object value) {
+        if (key == null) {
+            throw new IllegalArgumentException();
+        }
+        int hash = key.hashCode();
+        byte[] keyBytes = keySerializer.toBytes(key);
+
+        long k = find(hash, keyBytes);
+        if (k == 0) {           // add a new key block at the front of the chain
+            int i = index(hash, size);
+            k = arena.allocate(KEY_BYTES + keyBytes.length);
+            arena.putLong(k + NEXT, bucket(table, i));
+            arena.putLong(k + FIRST_VALUE, 0);
+            arena.putLong(k + LAST_VALUE, 0);
+            arena.putInt(k + HASH, hash);
+            arena.putInt(k + KEY_LENGTH, keyBytes.length);
+            arena.putBytes(k + KEY_BYTES, keyBytes);
+            table.putLong(8 * i, k);
+            numKeys++;
+        }
+
+        byte[] valueBytes = valueSerializer.toBytes(value);
+        long v = arena.allocate(VALUE_BYTES + valueBytes.length);
+        arena.putLong(v + NEXT, 0);
+        arena.putInt(v + VALUE_LENGTH, valueBytes.length);
+        arena.putBytes(v + VALUE_BYTES, valueBytes);
+
+        long last = arena.getLong(k + LAST_VALUE);
+        if (last == 0) {
+            arena.putLong(k + FIRST_VALUE, v);
+        } else {
+            arena.putLong(last + NEXT, v);
+        }
+        arena.putLong(k + LAST_VALUE, v);
+
+        if (load() > maxLoad && size < MAX_SIZE) {
+            resize(Math.min(2 * size + 1, MAX_SIZE));
+        }
+        return true;
+    }
+
+    /*
+     * search - search for the specified key and return a copy of the
+     * associated collection of values, or null if the key
+     * is not in the table
+     */
+    public Queue<Object> search(Object key) {
+        long k = find(key.hashCode(), keySerializer.toBytes(key));
+        if (k == 0) {
+            return null;
+        }
+        return valuesOf(k);
+    }
+
+    /*
+     * remove - remove from the table the entry for the specified key
+     * and return the associated collection of values, or null if the key
+     * is not in the table.  The key's blocks are freed.
+     */
+    public Queue<Object> remove(Object key) {
+        int hash = key.hashCode();
+        byte[] keyBytes = keySerializer.toBytes(key);
+        int i = index(hash, size);
+
+        long k = bucket(table, i);
+        long prev = 0;
+        while (k != 0 && !matches(k, hash, keyBytes)) {
+            prev = k;
+            k = arena.getLong(k + NEXT);
+        }
+        if (k == 0) {           // the key is not found after traversal
+            return null;
+        }
+
+        if (prev == 0) {
+            table.putLong(8 * i, arena.getLong(k + NEXT));
+        } else {
+            arena.putLong(prev + NEXT, arena.getLong(k + NEXT));
+        }
+        Queue<Object> removed = valuesOf(k);
+
+        long v = arena.getLong(k + FIRST_VALUE);
+        while (v != 0) {
+            long next = arena.getLong(v + NEXT);
+            arena.free(v, VALUE_BYTES + arena.getInt(v + VALUE_LENGTH));
+            v = next;
+        }
+        arena.free(k, KEY_BYTES + keyBytes.length);
+        numKeys--;
+        return removed;
+    }
+
+    /* valuesOf - returns a queue of copies of the values of the key block at k */
+    private Queue<Object> valuesOf(long k) {
+        Queue<Object> values = new ChunkedArrayQueue<Object>();
+        for (long v = arena.getLong(k + FIRST_VALUE); v != 0; v = arena.getLong(v + NEXT)) {
+            byte[] bytes = arena.getBytes(v + VALUE_BYTES, arena.getInt(v + VALUE_LENGTH));
+            values.insert(valueSerializer.fromBytes(bytes));
+        }
+        return values;
+    }
+
+    private Object keyOf(long k) {
+        return keySerializer.fromBytes(arena.getBytes(k + KEY_BYTES, arena.getInt(k + KEY_LENGTH)));
+    }
+
+    public int getNumKeys() {
+        return numKeys;
+    }
+
+    public double load() {
+        return (double)(numKeys) / (double)(size);
+    }
+
+    public Object[] getAllKeys() {
+        Object[] result = new Object[numKeys];
+        int arrIndex = 0;
+        for (int i = 0; i < size; i++) {
+            for (long k = bucket(table, i); k != 0; k = arena.getLong(k + NEXT)) {
+                result[arrIndex] = keyOf(k);
+                arrIndex++;
+            }
+        }
+        return result;
+    }
+
+    /*
+     * resize - grows the table to the specified number of buckets by
+     * relinking the existing key blocks; only the bucket array is allocated
+     */
+    public void resize(int newSize) {
+        if (newSize < size || newSize > MAX_SIZE) {
+            throw new IllegalArgumentException();
+        }
+        else if (newSize == size) {
+            return;
+        }
+
+        ByteBuffer newTable = ByteBuffer.allocateDirect(8 * newSize);
+        for (int i = 0; i < size; i++) {
+            long k = bucket(table, i);
+            while (k != 0) {
+                long next = arena.getLong(k + NEXT);
+                int j = index(arena.getInt(k + HASH), newSize);
+                arena.putLong(k + NEXT, bucket(newTable, j));
+                newTable.putLong(8 * j, k);
+                k = next;
+            }
+        }
+        table = newTable;
+        size = newSize;
+    }
+
+    /* offHeapBytes - returns the number of off-heap bytes that the table has reserved */
+    public long offHeapBytes() {
+        return table.capacity() + arena.reservedBytes();
+    }
+
+    /*
+     * close - gives back all of the table's off-heap memory.  The table
+     * cannot be used after it is closed.
+     */
+    public void close() {
+        arena.close();
+        table = null;
+        numKeys = 0;
+    }
+
+    /*
+     * toString - returns a string representation of this table in the
+     * same format as ChainedHashTable.toString
+     */
+    public String toString() {
+        StringBuilder s = new StringBuilder("[");
+
+        for (int i = 0; i < size; i++) {
+            long k = bucket(table, i);
+            if (k == 0) {
+                s.append("null");
+            } else {
+                s.append("{");
+                while (k != 0) {
+                    s.append(keyOf(k));
+                    k = arena.getLong(k + NEXT);
+                    if (k != 0) {
+                        s.append("; ");
+                    }
+                }
+                s.append("}");
+            }
+
+            if (i < size - 1) {
+                s.append(", ");
+            }
+        }
+
+        s.append("]");
+        return s.toString();
+    }
+
+    public static void main(String[] args) {
+        System.out.println("--- Testing methods insert() and search() ---");
+        System.out.println();
+        System.out.println("(0) Testing on insert() and search()");
+        System.out.println();
+
+        try {
+            OffHeapChainedHashTable table = new OffHeapChainedHashTable(5);
+            table.insert("strawberry", 15);
+            table.insert("apple", 5);
+            table.insert("banana", 10);
+            table.insert("apple", 7L);
+            String results = table + " " + table.search("apple") + " " + table.search("kiwi");
+            String expected = "[{apple}, null, null, {banana; strawberry}, null] {5, 7} null";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+            table.close();
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+
+        }
+
+        System.out.println();
+        System.out.println("(1) Testing on remove() and reuse of freed memory");
+        System.out.println();
+
+        try {
+            OffHeapChainedHashTable table = new OffHeapChainedHashTable(7, 1.0, 4096,
+                new ObjectSerializer(), new ObjectSerializer());
+            for (int i = 0; i < 1000; i++) {
+                table.insert(i, "value" + i);
+            }
+            for (int i = 0; i < 1000; i++) {
+                table.remove(i);
+            }
+            long reserved = table.arena.reservedBytes();
+            for (int i = 0; i < 1000; i++) {
+                table.insert(i + 5000, "value" + i);
+            }
+            String results = table.getNumKeys() + " " + table.search(5999) + " "
+                + (table.arena.reservedBytes() == reserved) + " " + table.remove(999);
+            String expected = "1000 {value999} true null";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+            table.close();
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+
+        }
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * OpenAddressingHashTable.java
+ *
+ * Computer Science 112, Boston University
+ */
+
+import java.util.*;     // to allow for the use of Arrays.toString() in testing
+
+/*
+ * A hash table that uses open addressing with Robin Hood linear probing
+ * instead of separate chaining.  Like ChainedHashTable, it maps each 
+ * key to a queue of one or more values.
+ *
+ * The table is three parallel arrays: the hash of the key in each
+ * slot, the key itself, and its queue of values.  A hash of 0 marks an
+ * empty slot, so a key whose hash is 0 is stored with a hash of 1.  A
+ * search looks only at the hash array until it finds a matching hash,
+ * so a lookup usually touches one or two cache lines of that array
+ * instead of following a chain of nodes.
+ *
+ * A key is stored in a slot at or after its home slot, and the keys
+ * in each run of full slots are kept in order of their home slots.
+ * When an insert probes past a key that is closer to its home than the
+ * new key already is, the two swap places and the insert goes on with
+ * the displaced key (the "Robin Hood" rule).  So a search for a missing
+ * key can stop at the first key that is closer to its home than the
+ * search has come, instead of at the next empty slot.
+ *
+ * remove does not leave a tombstone: the keys after the removed one
+ * that are not in their home slots are shifted back by one slot
+ * (backward-shift deletion), so deletions do not slow down later
+ * searches.
+ */
+public class OpenAddressingHashTable implements HashTable {
+    /* the largest number of slots that the table will use */
+    private static final int MAX_SLOTS = 1 << 30;
+
+    private int[] hashes;       // the hash of the key in each slot, or 0 if it is empty
+    private Object[] keys;      // the key in each slot
+    private Object[] values;    // the ChunkedArrayQueue of values in each slot
+    private int numKeys;        // the total number of keys in the table
+    private double maxLoad;     // the load factor that triggers automatic growth
+
+    public OpenAddressingHashTable(int size) {
+        this(size, 0.75);
+    }
+
+    /*
+     * Constructs a table with at least size slots (rounded up to a
+     * power of two), that doubles its number of slots whenever its load
+     * exceeds maxLoad.  maxLoad must be less than 1, since every key
+     * needs a slot of its own.
+     */
+    public OpenAddressingHashTable(int size, double maxLoad) {
+        if (size <= 0 || !(maxLoad > 0) || maxLoad >= 1) {
+            throw new IllegalArgumentException();
+        }
+        int slots = roundUp(size);
+        hashes = new int[slots];
+        keys = new Object[slots];
+        values = new Object[slots];
+        this.maxLoad = maxLoad;
+    }
+
+    /* hash function - returns the home slot of the specified key */
+    public int h1(Object key) {
+        return hash(key) & (hashes.length - 1);
+    }
+
+    /*
+     * hash - returns the hash that is stored for the specified key.  The
+     * hash code is multiplied by a large odd constant and its high bits
+     * are spread into the low bits, which choose the slot, so that keys
+     * with nearby hash codes (like "k1", "k2", ...) do not fill a run
+     * of neighboring slots.
+     */
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        h ^= (h >>> 16);
+        return (h == 0) ? 1 : h;
+    }
+
+    /*
+     * roundUp - returns the smallest power of two that is at least
+     * the specified size
+     */
+    private static int roundUp(int size) {
+        if (size >= MAX_SLOTS) {
+            return MAX_SLOTS;
+        }
+        int n = Integer.highestOneBit(size);
+        return (n == size) ? n : n << 1;
+    }
+
+    /*
+     * distance - returns how far slot i is past the home slot of the
+     * hash in it
+     */
+    private int distance(int i) {
+        int mask = hashes.length - 1;
+        return (i - (hashes[i] & mask)) & mask;
+    }
+
+    /*
+     * find - returns the slot that holds the specified key, or -1 if
+     * the key is not in the table
+     */
+    private int find(Object key, int hash) {
+        int mask = hashes.length - 1;
+        int i = hash & mask;
+        for (int dist = 0; hashes[i] != 0 && distance(i) >= dist; dist++) {
+            if (hashes[i] == hash && (keys[i] == key || key.equals(keys[i]))) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /*
+     * place - stores the specified key, which is not in the table, and
+     * its queue of values, following the Robin Hood rule
+     */
+    private void place(int hash, Object key, Object queue) {
+        int mask = hashes.length - 1;
+        int i = hash & mask;
+        int dist = 0;
+        while (hashes[i] != 0) {
+            int d = distance(i);
+            if (d < dist) {     // swap, and go on placing the key that was here
+                int h = hashes[i];
+                Object k = keys[i];
+                Object q = values[i];
+                hashes[i] = hash;
+                keys[i] = key;
+                values[i] = queue;
+                hash = h;
+                key = k;
+                queue = q;
+                dist = d;
+            }
+            i = (i + 1) & mask;
+            dist++;
+        }
+        hashes[i] = hash;
+        keys[i] = key;
+        values[i] = queue;
+    }
+
+    /*
+     * insert - insert the specified (key, value) pair in the hash table.
+     * Returns true if the pair can be added and false if there is overflow.
+     */
+    public boolean insert(Object key, Object value) {
+        if (key == null) {
+            throw new IllegalArgumentException();
+        }
+        int hash = hash(key);
+        int i = find(key, hash);
+        if (i != -1) {      // a duplicate key: add the value only
+            queue(i).insert(value);
+            return true;
+        }
+
+        if (numKeys == hashes.length - 1) {     // one slot must stay empty to end every probe
+            if (hashes.length == MAX_SLOTS) {
+                return false;
+            }
+            resize(2 * hashes.length);
+        }
+        ChunkedArrayQueue<Object> queue = new ChunkedArrayQueue<Object>();
+        queue.insert(value);
+        place(hash, key, queue);
+        numKeys++;
+
+        if (load() > maxLoad && hashes.length < MAX_SLOTS) {
+            resize(2 * hashes.length);
+        }
+        return true;
+    }
+
+    /*
+     * search - search for the specified key and return the
+     * associated collection of values, or null if the key
+     * is not in the table
+     */
+    public Queue<Object> search(Object key) {
+        int i = find(key, hash(key));
+        if (i == -1) {
+            return null;
+        }
+        return queue(i);
+    }
+
+    /*
+     * remove - remove from the table the entry for the specified key
+     * and return the associated collection of values, or null if the key
+     * is not in the table
+     */
+    public Queue<Object> remove(Object key) {
+        int i = find(key, hash(key));
+        if (i == -1) {
+            return null;
+        }
+        Queue<Object> removed = queue(i);
+
+        // shift the following keys back by one slot, until a key that
+        // is in its home slot or an empty slot ends the run
+        int mask = hashes.length - 1;
+        int gap = i;
+        int j = (i + 1) & mask;
+        while (hashes[j] != 0 && distance(j) > 0) {
+            hashes[gap] = hashes[j];
+            keys[gap] = keys[j];
+            values[gap] = values[j];
+            gap = j;
+            j = (j + 1) & mask;
+        }
+        hashes[gap] = 0;
+        keys[gap] = null;
+        values[gap] = null;
+
+        numKeys--;
+        return removed;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ChunkedArrayQueue<Object> queue(int i) {
+        return (ChunkedArrayQueue<Object>) values[i];
+    }
+
+    public int getNumKeys() {
+        return numKeys;
+    }
+
+    public double load() {
+        return (double)(numKeys) / (double)(hashes.length);
+    }
+
+    public Object[] getAllKeys() {
+        Object[] result = new Object[numKeys];
+        int arrIndex = 0;
+        for (int i = 0; i < hashes.length; i++) {
+            if (hashes[i] != 0) {
+                result[arrIndex] = keys[i];
+                arrIndex++;
+            }
+        }
+        return result;
+    }
+
+    /*
+     * resize - grows the table to at least the specified number of
+     * slots (rounded up to a power of two) and puts every key back in
+     * its place for the new size.  The queues of values are not copied.
+     */
+    public void resize(int newSize) {
+        newSize = roundUp(newSize);
+        if (newSize < hashes.length) {
+            throw new IllegalArgumentException();
+        }
+        else if (newSize == hashes.length) {
+            return;
+        }
+
+        int[] oldHashes = hashes;
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        hashes = new int[newSize];
+        keys = new Object[newSize];
+        values = new Object[newSize];
+        for (int i = 0; i < oldHashes.length; i++) {
+            if (oldHashes[i] != 0) {
+                place(oldHashes[i], oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    /*
+     * toString - returns a string representation of this table in the
+     * same format as ChainedHashTable.toString, with one slot per
+     * position
+     */
+    public String toString() {
+        StringBuilder s = new StringBuilder("[");
+
+        for (int i = 0; i < hashes.length; i++) {
+            if (hashes[i] == 0) {
+                s.append("null");
+            } else {
+                s.append("{").append(keys[i]).append("}");
+            }
+
+            if (i < hashes.length - 1) {
+                s.append(", ");
+            }
+        }
+
+        s.append("]");
+        return s.toString();
+    }
+
+    /* withHome - returns the first Integer key, from start on, whose home slot is home */
+    private static int withHome(OpenAddressingHashTable table, int home, int start) {
+        int key = start;
+        while (table.h1(key) != home) {
+            key++;
+        }
+        return key;
+    }
+
+    public static void main(String[] args) {
+        System.out.println("--- Testing methods insert() and remove() ---");
+        System.out.println();
+        System.out.println("(0) Testing on insert() and remove()");
+        System.out.println();
+
+        try {
+            OpenAddressingHashTable table = new OpenAddressingHashTable(8);
+            int a = 1;
+            int b = withHome(table, table.h1(a), a + 1);             // collides with a
+            int c = withHome(table, (table.h1(a) + 1) % 8, 0);       // goes after b
+            table.insert(a, "a");
+            table.insert(b, "b");
+            table.insert(c, "c");
+            table.insert(a, "d");
+            String removed = table.remove(a) + " " + table.remove(-1);
+            String[] slots = table.toString().split(", ");
+            String results = removed + " " + table.search(b) + " " + table.search(c)
+                + " " + table.getNumKeys() + " " + slots[table.h1(b)].contains("" + b)
+                + " " + slots[table.h1(c)].contains("" + c);
+            String expected = "{a, d} null {b} {c} 2 true true";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        }
+
+        System.out.println();
+        System.out.println("(1) Testing on a run that wraps around the end of the table");
+        System.out.println();
+
+        try {
+            OpenAddressingHashTable table = new OpenAddressingHashTable(8);
+            int w = withHome(table, 7, 0);
+            int x = withHome(table, 7, w + 1);      // wraps around to slot 0
+            int y = withHome(table, 0, 0);          // goes in slot 1
+            int z = withHome(table, 7, x + 1);      // takes slot 1 from y, which moves to slot 2
+            table.insert(w, "w");
+            table.insert(x, "x");
+            table.insert(y, "y");
+            table.insert(z, "z");
+            table.remove(w);
+            String results = table.search(x) + " " + table.search(y) + " "
+                + table.search(z) + " " + table.toString().replace("" + x, "x")
+                .replace("" + y, "y").replace("" + z, "z");
+            String expected = "{x} {y} {z} [{z}, {y}, null, null, null, null, null, {x}]";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        }
+
+        System.out.println();
+        System.out.println("(2) Testing against ChainedHashTable");
+        System.out.println();
+
+        try {
+            OpenAddressingHashTable table = new OpenAddressingHashTable(4, 0.5);
+            ChainedHashTable chained = new ChainedHashTable(4, 1.0);
+            Random random = new Random(112);
+            boolean same = true;
+            for (int i = 0; i < 100000; i++) {
+                Integer key = random.nextInt(2000);
+                int op = random.nextInt(3);
+                String a;
+                String b;
+                if (op == 0) {
+                    a = "" + table.insert(key, i);
+                    b = "" + chained.insert(key, i);
+                } else if (op == 1) {
+                    a = "" + table.search(key);
+                    b = "" + chained.search(key);
+                } else {
+                    a = "" + table.remove(key);
+                    b = "" + chained.remove(key);
+                }
+                if (!a.equals(b)) {
+                    same = false;
+                }
+            }
+            String results = same + " " + (table.getNumKeys() == chained.getNumKeys());
+            String expected = "true true";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        }
+    }
+}
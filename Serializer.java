@@ -0,0 +1,18 @@
+/*
+ * Serializer.java
+ *
+ * Computer Science 112, Boston University
+ */
+
+/*
+ * An interface for objects that turn keys or values into bytes and
+ * back, for the tables that keep their contents outside of the heap.
+ * Two keys that are equal must be turned into the same bytes.
+ */
+public interface Serializer {
+    /* returns the bytes that represent the specified object */
+    byte[] toBytes(Object o);
+
+    /* returns an object equal to the one that was turned into the specified bytes */
+    Object fromBytes(byte[] bytes);
+}
@@ -0,0 +1,385 @@
+/*
+ * ShardServer.java
+ *
+ * Computer Science 112, Boston University
+ */
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+/*
+ * One shard of a ShardedHashTable: a ChainedHashTable that carries out
+ * batches of requests.  A LocalShardTransport calls execute directly;
+ * listen also serves batches over loopback sockets, one thread per
+ * connection, for SocketShardTransports.
+ *
+ * On a socket, a batch is the number of requests followed by the
+ * requests, and its results are written back in the same order.  A
+ * request is its operation byte and then:
+ *
+ *     INSERT     the key and the value
+ *     SEARCH     the key
+ *     REMOVE     the key
+ *     SIZE       nothing
+ *     EXTRACT    the number of ranges, and the start and end of each
+ *     COPY       the same as EXTRACT
+ *
+ * and its result is:
+ *
+ *     INSERT     a boolean
+ *     SEARCH     the number of values (-1 if the key is not there), and
+ *     REMOVE     the values
+ *     SIZE       the number of keys
+ *     EXTRACT    the number of keys, and each key, its number of values
+ *     COPY       and its values
+ *
+ * with each key and value written as the length and the bytes that its
+ * Serializer gives.  A connection is closed after a request that fails,
+ * and after a batch, a key or value, or a list of ranges that is longer
+ * than MAX_BATCH, MAX_OBJECT_BYTES or MAX_RANGES; the requests, ranges
+ * and bytes of a batch are only allocated as they arrive.  The default
+ * serializers only read Java-serialized objects of classes in java.lang,
+ * java.util and java.math from a socket (see ObjectSerializer.JAVA_TYPES),
+ * with no array longer than the object's bytes, so a client can neither
+ * make the server create objects of other classes nor make it allocate
+ * a huge array that it only claims to send.
+ */
+public class ShardServer implements Closeable {
+    static final byte INSERT = 'I';
+    static final byte SEARCH = 'S';
+    static final byte REMOVE = 'R';
+    static final byte SIZE = 'N';
+    static final byte EXTRACT = 'X';
+    static final byte COPY = 'C';
+
+    /* the most requests in a batch, bytes in a key or value, and ranges in an EXTRACT */
+    static final int MAX_BATCH = 1 << 20;
+    static final int MAX_OBJECT_BYTES = ObjectSerializer.MAX_FILTERED_BYTES;
+    static final int MAX_RANGES = 1 << 20;
+
+    /* a request to a shard; make one with the static methods */
+    public static class Request {
+        final byte op;
+        final Object key;
+        final Object value;
+        final int[] ranges;         // for EXTRACT, the start and end of each range
+
+        private Request(byte op, Object key, Object value, int[] ranges) {
+            this.op = op;
+            this.key = key;
+            this.value = value;
+            this.ranges = ranges;
+        }
+
+        public static Request insert(Object key, Object value) {
+            return new Request(INSERT, key, value, null);
+        }
+
+        public static Request search(Object key) {
+            return new Request(SEARCH, key, null, null);
+        }
+
+        public static Request remove(Object key) {
+            return new Request(REMOVE, key, null, null);
+        }
+
+        public static Request size() {
+            return new Request(SIZE, null, null, null);
+        }
+
+        /*
+         * extract - removes and returns the keys whose ring positions
+         * are in the specified ranges (see ConsistentHashRing.inRange),
+         * given as the start and end of each range in turn.  The result
+         * is an array of each key followed by its queue of values.
+         */
+        public static Request extract(int[] ranges) {
+            if (ranges.length % 2 != 0) {
+                throw new IllegalArgumentException();
+            }
+            return new Request(EXTRACT, null, null, ranges);
+        }
+
+        /*
+         * copy - returns the keys in the specified ranges as extract
+         * does, but with copies of their values, and leaves them in the
+         * shard
+         */
+        public static Request copy(int[] ranges) {
+            if (ranges.length % 2 != 0) {
+                throw new IllegalArgumentException();
+            }
+            return new Request(COPY, null, null, ranges);
+        }
+    }
+
+    private final ChainedHashTable table;
+    private final Serializer keySerializer;
+    private final Serializer valueSerializer;
+    private ServerSocket server;
+    private final List<Socket> connections = new ArrayList<Socket>();
+
+    public ShardServer(Serializer keySerializer, Serializer valueSerializer) {
+        table = new ChainedHashTable(16, 1.0, true);
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+    }
+
+    public ShardServer() {
+        this(new ObjectSerializer(ObjectSerializer.JAVA_TYPES),
+             new ObjectSerializer(ObjectSerializer.JAVA_TYPES));
+    }
+
+    /*
+     * execute - carries out the specified requests in order and returns
+     * their results: a Boolean, a Queue of values or null, an Integer,
+     * or the array that Request.extract and Request.copy describe
+     */
+    public synchronized Object[] execute(Request[] batch) {
+        Object[] results = new Object[batch.length];
+        for (int i = 0; i < batch.length; i++) {
+            Request r = batch[i];
+            switch (r.op) {
+            case INSERT:
+                results[i] = table.insert(r.key, r.value);
+                break;
+            case SEARCH:
+                results[i] = table.search(r.key);
+                break;
+            case REMOVE:
+                results[i] = table.remove(r.key);
+                break;
+            case SIZE:
+                results[i] = table.getNumKeys();
+                break;
+            case EXTRACT:
+                results[i] = extract(r.ranges, true);
+                break;
+            default:
+                results[i] = extract(r.ranges, false);
+            }
+        }
+        return results;
+    }
+
+    /*
+     * extract - returns the keys in the specified ranges and their values,
+     * removing them if remove is true (see Request.extract) and copying
+     * the values if it is not (see Request.copy)
+     */
+    private Object[] extract(int[] ranges, boolean remove) {
+        ArrayList<Object> keys = new ArrayList<Object>();
+        for (Object key : table.keys()) {
+            int position = ConsistentHashRing.position(key);
+            for (int r = 0; r < ranges.length; r += 2) {
+                if (ConsistentHashRing.inRange(position, ranges[r], ranges[r + 1])) {
+                    keys.add(key);
+                    break;
+                }
+            }
+        }
+        Object[] pairs = new Object[2 * keys.size()];
+        for (int k = 0; k < keys.size(); k++) {
+            pairs[2 * k] = keys.get(k);
+            if (remove) {
+                pairs[2 * k + 1] = table.remove(keys.get(k));
+            } else {
+                ChunkedArrayQueue<Object> values = new ChunkedArrayQueue<Object>();
+                for (Object value : (ChunkedArrayQueue<?>) table.search(keys.get(k))) {
+                    values.insert(value);
+                }
+                pairs[2 * k + 1] = values;
+            }
+        }
+        return pairs;
+    }
+
+    /*
+     * listen - starts serving batches on a loopback socket, and returns
+     * its port number
+     */
+    public synchronized int listen() throws IOException {
+        if (server != null) {
+            return server.getLocalPort();
+        }
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptLoop, "ShardServer acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return server.getLocalPort();
+    }
+
+    private void acceptLoop() {
+        while (true) {
+            Socket socket;
+            try {
+                socket = server.accept();
+                socket.setTcpNoDelay(true);
+            } catch (IOException e) {           // the server has been closed
+                return;
+            }
+            synchronized (this) {
+                connections.add(socket);
+            }
+            Thread thread = new Thread(() -> serve(socket), "ShardServer connection");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /* serve - carries out the batches that arrive on the specified connection */
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            while (true) {
+                int count;
+                try {
+                    count = in.readInt();
+                } catch (EOFException e) {      // the client has closed the connection
+                    return;
+                }
+                if (count < 0 || count > MAX_BATCH) {
+                    throw new IOException("bad batch size " + count);
+                }
+                // the batch grows as its requests arrive, whatever count says
+                ArrayList<Request> requests = new ArrayList<Request>(Math.min(count, 1024));
+                for (int i = 0; i < count; i++) {
+                    requests.add(readRequest(in));
+                }
+                Request[] batch = requests.toArray(new Request[count]);
+                Object[] results = execute(batch);
+                for (int i = 0; i < count; i++) {
+                    writeResult(out, batch[i].op, results[i]);
+                }
+                out.flush();
+            }
+        } catch (IOException | RuntimeException e) {
+            // the connection is dropped, and the client sees it closed
+        } finally {
+            synchronized (this) {
+                connections.remove(socket);
+            }
+        }
+    }
+
+    private Request readRequest(DataInputStream in) throws IOException {
+        byte op = in.readByte();
+        switch (op) {
+        case INSERT:
+            Object key = readObject(in, keySerializer);
+            return Request.insert(key, readObject(in, valueSerializer));
+        case SEARCH:
+            return Request.search(readObject(in, keySerializer));
+        case REMOVE:
+            return Request.remove(readObject(in, keySerializer));
+        case SIZE:
+            return Request.size();
+        case EXTRACT:
+        case COPY:
+            int numRanges = in.readInt();
+            if (numRanges < 0 || numRanges > MAX_RANGES) {
+                throw new IOException("bad number of ranges " + numRanges);
+            }
+            // the ranges grow as they arrive, whatever numRanges says
+            int[] ranges = new int[Math.min(2 * numRanges, 1024)];
+            for (int r = 0; r < 2 * numRanges; r++) {
+                if (r == ranges.length) {
+                    ranges = Arrays.copyOf(ranges, Math.min(2 * ranges.length, 2 * numRanges));
+                }
+                ranges[r] = in.readInt();
+            }
+            return (op == EXTRACT) ? Request.extract(ranges) : Request.copy(ranges);
+        default:
+            throw new IOException("unknown operation " + op);
+        }
+    }
+
+    private void writeResult(DataOutputStream out, byte op, Object result) throws IOException {
+        switch (op) {
+        case INSERT:
+            out.writeBoolean((Boolean) result);
+            break;
+        case SEARCH:
+        case REMOVE:
+            writeValues(out, result, valueSerializer);
+            break;
+        case SIZE:
+            out.writeInt((Integer) result);
+            break;
+        default:
+            Object[] pairs = (Object[]) result;
+            out.writeInt(pairs.length / 2);
+            for (int p = 0; p < pairs.length; p += 2) {
+                writeObject(out, pairs[p], keySerializer);
+                writeValues(out, pairs[p + 1], valueSerializer);
+            }
+        }
+    }
+
+    /*
+     * writeValues - writes a queue of values from the table, or -1 for
+     * null.  The table's queues are ChunkedArrayQueues, which can be
+     * iterated without taking them apart.
+     */
+    private static void writeValues(DataOutputStream out, Object values, Serializer serializer)
+            throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        ChunkedArrayQueue<?> queue = (ChunkedArrayQueue<?>) values;
+        out.writeInt(queue.size());
+        for (Object value : queue) {
+            writeObject(out, value, serializer);
+        }
+    }
+
+    /* readValues - reads what writeValues wrote */
+    static Queue<Object> readValues(DataInputStream in, Serializer serializer) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            return null;
+        }
+        Queue<Object> values = new ChunkedArrayQueue<Object>();
+        for (int v = 0; v < count; v++) {
+            values.insert(readObject(in, serializer));
+        }
+        return values;
+    }
+
+    static void writeObject(DataOutputStream out, Object o, Serializer serializer) throws IOException {
+        byte[] bytes = serializer.toBytes(o);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /*
+     * readObject - reads what writeObject wrote.  The bytes are read as
+     * they arrive, so a length that is larger than what follows it does
+     * not allocate that much.
+     */
+    static Object readObject(DataInputStream in, Serializer serializer) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_OBJECT_BYTES) {
+            throw new IOException("bad object length " + length);
+        }
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length < length) {
+            throw new EOFException();
+        }
+        return serializer.fromBytes(bytes);
+    }
+
+    /* close - stops listening and drops every connection */
+    public synchronized void close() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+        for (Socket socket : connections) {
+            socket.close();
+        }
+        connections.clear();
+    }
+}
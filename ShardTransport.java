@@ -0,0 +1,28 @@
+/*
+ * ShardTransport.java
+ *
+ * Computer Science 112, Boston University
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/*
+ * An interface for the ways that a ShardedHashTable can reach one of
+ * its shards.  Sending a batch does not wait for its results, so a
+ * table can send a batch to every shard before it waits for any of
+ * them, and several batches can be sent to the same shard before their
+ * results are received (pipelining).  The results of the batches come
+ * back in the order that the batches were sent.
+ */
+public interface ShardTransport extends Closeable {
+    /* send - sends a batch of requests to the shard */
+    void send(ShardServer.Request[] batch) throws IOException;
+
+    /*
+     * receive - waits for and returns the results of the oldest batch
+     * whose results have not been received yet, as ShardServer.execute
+     * returns them
+     */
+    Object[] receive() throws IOException;
+}
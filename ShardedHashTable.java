@@ -0,0 +1,500 @@
+/*
+ * ShardedHashTable.java
+ *
+ * Computer Science 112, Boston University
+ */
+
+import java.io.*;
+import java.util.*;     // to allow for the use of Arrays.toString() in testing
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+
+/*
+ * A HashTable whose keys are spread over several shards, each a
+ * ChainedHashTable in a ShardServer, which may be in this JVM or
+ * behind a socket.  Keys are assigned to shards by a
+ * ConsistentHashRing, so a shard added with addShard takes over only
+ * the keys in the ranges of the ring that it now owns, and those keys
+ * are moved to it straight away: they are copied to the new shard
+ * first, and only then removed from the shards that had them, so a
+ * shard that cannot be reached during addShard loses no keys.
+ *
+ * insertAll, searchAll and removeAll group their keys by shard and
+ * send each shard one batch of up to MAX_BATCH requests at a time,
+ * sending to every shard before waiting on any of them, so a round
+ * trip to each shard is shared by a whole batch and the shards work
+ * on their batches at the same time.  Only one batch is outstanding
+ * on each shard at a time, so neither side can fill up the socket
+ * buffers while the other is waiting for it to read.
+ *
+ * Failures to reach a shard surface as UncheckedIOExceptions.  The
+ * table is not thread-safe.
+ */
+public class ShardedHashTable implements HashTable, Closeable {
+    /* the most requests sent to one shard in one batch */
+    private static final int MAX_BATCH = 1 << 12;
+
+    private final ConsistentHashRing ring;
+    private final ArrayList<ShardTransport> shards = new ArrayList<ShardTransport>();
+
+    /* Constructs a table with no shards, giving each shard virtualNodes points on the ring */
+    public ShardedHashTable(int virtualNodes) {
+        ring = new ConsistentHashRing(virtualNodes);
+    }
+
+    public ShardedHashTable() {
+        this(128);
+    }
+
+    /*
+     * addShard - adds a shard, which must be empty, and moves the keys
+     * that now belong to it from the shards that had them.  Returns
+     * the number of keys moved.  If the keys cannot be copied to the new
+     * shard, it is taken off the ring again and the exception is thrown,
+     * with every key still in its old shard.  If they are copied but
+     * cannot all be removed from their old shards, the new shard is
+     * kept, and the old copies are left where no search will find them.
+     */
+    public int addShard(ShardTransport transport) {
+        int id = shards.size();
+        shards.add(transport);
+        List<int[]> moves = ring.addShard(id);
+
+        // ask each shard that loses keys for all of its ranges at once
+        ArrayList<ArrayList<Integer>> ranges = new ArrayList<ArrayList<Integer>>();
+        for (int s = 0; s < id; s++) {
+            ranges.add(new ArrayList<Integer>());
+        }
+        for (int[] move : moves) {
+            ranges.get(move[2]).add(move[0]);
+            ranges.get(move[2]).add(move[1]);
+        }
+        ShardServer.Request[][] batches = new ShardServer.Request[shards.size()][];
+        for (int s = 0; s < id; s++) {
+            if (!ranges.get(s).isEmpty()) {
+                int[] r = ranges.get(s).stream().mapToInt(Integer::intValue).toArray();
+                batches[s] = new ShardServer.Request[] {ShardServer.Request.copy(r)};
+            }
+        }
+
+        ArrayList<Object> movedKeys = new ArrayList<Object>();
+        ArrayList<Integer> from = new ArrayList<Integer>();
+        try {
+            Object[][] results = exchange(batches);
+            ArrayList<Object> keys = new ArrayList<Object>();
+            ArrayList<Object> values = new ArrayList<Object>();
+            for (int s = 0; s < id; s++) {
+                if (results[s] == null) {
+                    continue;
+                }
+                Object[] pairs = (Object[]) results[s][0];
+                for (int p = 0; p < pairs.length; p += 2) {
+                    movedKeys.add(pairs[p]);
+                    from.add(s);
+                    @SuppressWarnings("unchecked")
+                    Queue<Object> queue = (Queue<Object>) pairs[p + 1];
+                    while (!queue.isEmpty()) {
+                        keys.add(pairs[p]);
+                        values.add(queue.remove());
+                    }
+                }
+            }
+            insertAll(keys.toArray(), values.toArray());
+        } catch (RuntimeException e) {
+            ring.removeShard(id);
+            shards.remove(id);
+            throw e;
+        }
+
+        // the new shard has the keys now, so they can go from the old ones
+        Object[] keys = movedKeys.toArray();
+        batch(keys, (i) -> from.get(i), (i) -> ShardServer.Request.remove(keys[i]));
+        return keys.length;
+    }
+
+    public int getNumShards() {
+        return shards.size();
+    }
+
+    /*
+     * exchange - sends batches[s] to shard s for every s that has a
+     * batch, and then receives all of their results.  If a shard fails,
+     * the results of the others are still received, so that their
+     * transports are not left with results waiting, and then the first
+     * failure is thrown.
+     */
+    private Object[][] exchange(ShardServer.Request[][] batches) {
+        Object[][] results = new Object[batches.length][];
+        boolean[] sent = new boolean[batches.length];
+        IOException failure = null;
+        for (int s = 0; s < batches.length; s++) {
+            if (batches[s] != null) {
+                try {
+                    shards.get(s).send(batches[s]);
+                    sent[s] = true;
+                } catch (IOException e) {
+                    failure = (failure == null) ? e : failure;
+                }
+            }
+        }
+        for (int s = 0; s < batches.length; s++) {
+            if (sent[s]) {
+                try {
+                    results[s] = shards.get(s).receive();
+                } catch (IOException e) {
+                    failure = (failure == null) ? e : failure;
+                }
+            }
+        }
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+        return results;
+    }
+
+    /* call - sends one request to the shard for the key and returns its result */
+    private Object call(Object key, ShardServer.Request request) {
+        if (key == null) {
+            throw new IllegalArgumentException();
+        }
+        ShardServer.Request[][] batches = new ShardServer.Request[shards.size()][];
+        batches[ring.shardFor(key)] = new ShardServer.Request[] {request};
+        Object[][] results = exchange(batches);
+        return results[ring.shardFor(key)][0];
+    }
+
+    public boolean insert(Object key, Object value) {
+        return (Boolean) call(key, ShardServer.Request.insert(key, value));
+    }
+
+    @SuppressWarnings("unchecked")
+    public Queue<Object> search(Object key) {
+        return (Queue<Object>) call(key, ShardServer.Request.search(key));
+    }
+
+    @SuppressWarnings("unchecked")
+    public Queue<Object> remove(Object key) {
+        return (Queue<Object>) call(key, ShardServer.Request.remove(key));
+    }
+
+    public boolean insertAll(Object[] keys, Object[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException();
+        }
+        Object[] results = batch(keys, (i) -> ShardServer.Request.insert(keys[i], values[i]));
+        boolean added = true;
+        for (Object result : results) {
+            added &= (Boolean) result;
+        }
+        return added;
+    }
+
+    public Queue<Object>[] searchAll(Object[] keys) {
+        return toQueues(batch(keys, (i) -> ShardServer.Request.search(keys[i])));
+    }
+
+    public Queue<Object>[] removeAll(Object[] keys) {
+        return toQueues(batch(keys, (i) -> ShardServer.Request.remove(keys[i])));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Queue<Object>[] toQueues(Object[] results) {
+        Queue<Object>[] queues = (Queue<Object>[]) new Queue<?>[results.length];
+        for (int i = 0; i < results.length; i++) {
+            queues[i] = (Queue<Object>) results[i];
+        }
+        return queues;
+    }
+
+    /*
+     * batch - makes the request for each key with the specified
+     * function, sends the requests to their shards in rounds of at most
+     * MAX_BATCH per shard, and returns the results in the order of the
+     * keys.  The requests for each shard keep their order.
+     */
+    private Object[] batch(Object[] keys, IntFunction<ShardServer.Request> request) {
+        for (Object key : keys) {
+            if (key == null) {
+                throw new IllegalArgumentException();
+            }
+        }
+        return batch(keys, (i) -> ring.shardFor(keys[i]), request);
+    }
+
+    /* batch - does the same, but sends the request for keys[i] to shard shard(i) */
+    private Object[] batch(Object[] keys, IntUnaryOperator shard,
+                           IntFunction<ShardServer.Request> request) {
+        int numShards = shards.size();
+        int[][] byShard = new int[numShards][];       // the positions of each shard's keys
+        int[] counts = new int[numShards];
+        int[] shardOf = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            shardOf[i] = shard.applyAsInt(i);
+            counts[shardOf[i]]++;
+        }
+        for (int s = 0; s < numShards; s++) {
+            byShard[s] = new int[counts[s]];
+            counts[s] = 0;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            byShard[shardOf[i]][counts[shardOf[i]]++] = i;
+        }
+
+        Object[] results = new Object[keys.length];
+        for (int start = 0; ; start += MAX_BATCH) {
+            ShardServer.Request[][] batches = new ShardServer.Request[numShards][];
+            boolean any = false;
+            for (int s = 0; s < numShards; s++) {
+                int end = Math.min(byShard[s].length, start + MAX_BATCH);
+                if (start < end) {
+                    batches[s] = new ShardServer.Request[end - start];
+                    for (int j = start; j < end; j++) {
+                        batches[s][j - start] = request.apply(byShard[s][j]);
+                    }
+                    any = true;
+                }
+            }
+            if (!any) {
+                break;
+            }
+            Object[][] answers = exchange(batches);
+            for (int s = 0; s < numShards; s++) {
+                if (answers[s] != null) {
+                    for (int j = 0; j < answers[s].length; j++) {
+                        results[byShard[s][start + j]] = answers[s][j];
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /* getNumKeys - returns the total number of keys in all of the shards */
+    public int getNumKeys() {
+        ShardServer.Request[][] batches = new ShardServer.Request[shards.size()][];
+        for (int s = 0; s < batches.length; s++) {
+            batches[s] = new ShardServer.Request[] {ShardServer.Request.size()};
+        }
+        int total = 0;
+        for (Object[] result : exchange(batches)) {
+            total += (Integer) result[0];
+        }
+        return total;
+    }
+
+    /* getShardSizes - returns the number of keys in each shard */
+    public int[] getShardSizes() {
+        ShardServer.Request[][] batches = new ShardServer.Request[shards.size()][];
+        for (int s = 0; s < batches.length; s++) {
+            batches[s] = new ShardServer.Request[] {ShardServer.Request.size()};
+        }
+        Object[][] results = exchange(batches);
+        int[] sizes = new int[results.length];
+        for (int s = 0; s < sizes.length; s++) {
+            sizes[s] = (Integer) results[s][0];
+        }
+        return sizes;
+    }
+
+    /* close - closes the transports to all of the shards */
+    public void close() throws IOException {
+        for (ShardTransport shard : shards) {
+            shard.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("--- Testing sharding ---");
+        System.out.println();
+        System.out.println("(0) Testing on in-process shards");
+        System.out.println();
+
+        try {
+            ShardedHashTable table = new ShardedHashTable(64);
+            for (int s = 0; s < 3; s++) {
+                table.addShard(new LocalShardTransport(new ShardServer()));
+            }
+            table.insert("howdy", 15);
+            table.insert("goodbye", 10);
+            table.insert("apple", 5);
+            table.insert("howdy", 25);
+            String results = table.search("howdy") + " " + table.search("pear") + " "
+                + table.remove("goodbye") + " " + table.getNumKeys();
+            String expected = "{15, 25} null {10} 2";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        }
+
+        System.out.println();
+        System.out.println("(1) Testing on adding socket shards while the table is in use");
+        System.out.println();
+
+        ArrayList<ShardServer> servers = new ArrayList<ShardServer>();
+        try (ShardedHashTable table = new ShardedHashTable(64)) {
+            ShardServer first = new ShardServer();
+            servers.add(first);
+            table.addShard(new SocketShardTransport(first.listen()));
+            Object[] keys = new Object[20000];
+            Object[] values = new Object[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = "k" + (i % 10000);
+                values[i] = i;
+            }
+            table.insertAll(keys, values);
+
+            // each new shard should take about its share of the keys,
+            // and only from the shards that had them
+            boolean fair = true;
+            boolean moved = true;
+            for (int s = 1; s < 4; s++) {
+                ShardServer server = new ShardServer();
+                servers.add(server);
+                int n = table.addShard(new SocketShardTransport(server.listen()));
+                if (n < 10000 / (s + 1) / 2 || n > 10000 / (s + 1) * 2) {
+                    fair = false;
+                }
+                if (table.getShardSizes()[s] != n) {
+                    moved = false;
+                }
+            }
+            boolean same = true;
+            Queue<Object>[] found = table.searchAll(Arrays.copyOf(keys, 10000));
+            for (int i = 0; i < 10000; i++) {
+                if (!found[i].toString().equals("{" + i + ", " + (i + 10000) + "}")) {
+                    same = false;
+                }
+            }
+            int[] sizes = table.getShardSizes();
+            String results = same + " " + (table.search("pear") == null) + " " + fair + " "
+                + moved + " " + (sizes[0] + sizes[1] + sizes[2] + sizes[3])
+                + " " + table.getNumShards();
+            String expected = "true true true true 10000 4";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        } finally {
+            for (ShardServer server : servers) {
+                server.close();
+            }
+        }
+
+        System.out.println();
+        System.out.println("(2) Testing on adding a shard that cannot be reached");
+        System.out.println();
+
+        try {
+            ShardedHashTable table = new ShardedHashTable(64);
+            for (int s = 0; s < 2; s++) {
+                table.addShard(new LocalShardTransport(new ShardServer()));
+            }
+            Object[] keys = new Object[1000];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = "k" + i;
+            }
+            table.insertAll(keys, keys);
+            ShardTransport broken = new ShardTransport() {
+                public void send(ShardServer.Request[] batch) throws IOException {
+                    throw new IOException("unreachable");
+                }
+                public Object[] receive() throws IOException {
+                    throw new IOException("unreachable");
+                }
+                public void close() {
+                }
+            };
+            String results = "";
+            try {
+                table.addShard(broken);
+            } catch (UncheckedIOException e) {
+                results += e.getCause().getMessage();
+            }
+            boolean same = true;
+            Queue<Object>[] found = table.searchAll(keys);
+            for (int i = 0; i < keys.length; i++) {
+                same &= found[i] != null && found[i].toString().equals("{" + keys[i] + "}");
+            }
+            int moved = table.addShard(new LocalShardTransport(new ShardServer()));
+            results += " " + same + " " + table.getNumKeys() + " " + (moved > 0) + " "
+                + table.getNumShards() + " " + table.search("k7");
+            String expected = "unreachable true 1000 true 3 {k7}";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        }
+
+        System.out.println();
+        System.out.println("(3) Testing that a shard server drops only connections that send bad requests");
+        System.out.println();
+
+        ShardServer server = new ShardServer();
+        try {
+            int port = server.listen();
+            byte[] file = new ObjectSerializer().toBytes(new File("x"));
+            ByteArrayOutputStream gadget = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(gadget);
+            out.writeInt(1);
+            out.writeByte(ShardServer.SEARCH);
+            out.writeInt(file.length);
+            out.write(file);
+
+            // a long[1] whose length (just before its 8-byte element)
+            // claims 2^28 elements, or 2 GB
+            byte[] array = new ObjectSerializer().toBytes(new long[1]);
+            array[array.length - 12] = 0x10;
+            ByteArrayOutputStream patched = new ByteArrayOutputStream();
+            out = new DataOutputStream(patched);
+            out.writeInt(1);
+            out.writeByte(ShardServer.SEARCH);
+            out.writeInt(array.length);
+            out.write(array);
+            byte[][] requests = {
+                {0x7f, -1, -1, -1},                             // a batch of 2^31 - 1
+                {0, 0, 0, 1, ShardServer.INSERT, 0x7f, -1, -1, -1},     // a huge key
+                {0, 0, 0, 1, ShardServer.EXTRACT, 0x7f, -1, -1, -1},    // too many ranges
+                gadget.toByteArray(),                           // a class that is not allowed
+                patched.toByteArray()                           // a huge array header
+            };
+            String results = "";
+            for (byte[] request : requests) {
+                try (java.net.Socket socket = new java.net.Socket(
+                        java.net.InetAddress.getLoopbackAddress(), port)) {
+                    socket.setSoTimeout(5000);
+                    socket.getOutputStream().write(request);
+                    results += socket.getInputStream().read() + " ";
+                }
+            }
+            try (ShardedHashTable table = new ShardedHashTable(64)) {
+                table.addShard(new SocketShardTransport(port));
+                table.insert("howdy", 15);
+                results += table.search("howdy");
+            }
+            String expected = "-1 -1 -1 -1 -1 {15}";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        } finally {
+            server.close();
+        }
+    }
+}
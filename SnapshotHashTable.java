@@ -0,0 +1,254 @@
+/*
+ * SnapshotHashTable.java
+ *
+ * Computer Science 112, Boston University
+ */
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;     // to allow for the use of Arrays.toString() in testing
+
+/*
+ * A read-only HashTable that answers searches straight from a snapshot
+ * file written by ChainedHashTable.writeSnapshot.  The file is mapped
+ * into memory with FileChannel.map, and only the keys and values that
+ * a search looks at are turned back into objects, so a table of any
+ * size is ready to use as soon as the file is opened.
+ *
+ * A snapshot file holds, with every number big-endian:
+ *
+ *     the header
+ *         0: MAGIC
+ *         4: VERSION
+ *         8: flags (POWER_OF_TWO if the table used power-of-two sizes)
+ *        12: the number of buckets
+ *        16: the number of keys (a long)
+ *        24: the table's maxLoad (a double)
+ *        32: the position of the bucket index (a long)
+ *
+ *     the key records, grouped by bucket in bucket order, each with
+ *         the key's hash, as ChainedHashTable stores it
+ *         the number of bytes in the key, and the bytes of the key
+ *         the number of values
+ *         for each value, the number of bytes in it and its bytes
+ *
+ *     the bucket index: for each bucket, the position of its first
+ *     key record, and then the position just past the last record
+ *
+ * Keys are compared by their bytes, so keys that are equal must be
+ * serialized to the same bytes.  search returns a queue of copies of
+ * the values.
+ */
+public class SnapshotHashTable implements HashTable {
+    static final int MAGIC = 0x43485453;        // "CHTS"
+    static final int VERSION = 1;
+    static final int POWER_OF_TWO = 1;
+    static final int HEADER_BYTES = 40;
+
+    private MappedFile file;
+    private final boolean powerOfTwo;
+    private final int size;             // the number of buckets
+    private final long numKeys;
+    private final long index;           // the position of the bucket index
+    private final Serializer keySerializer;
+    private final Serializer valueSerializer;
+
+    public SnapshotHashTable(Path path, Serializer keySerializer, Serializer valueSerializer)
+            throws IOException {
+        file = new MappedFile(path);
+        if (file.length() < HEADER_BYTES || file.getInt(0) != MAGIC) {
+            throw new IOException(path + " is not a snapshot");
+        }
+        if (file.getInt(4) != VERSION) {
+            throw new IOException(path + " has unknown snapshot version " + file.getInt(4));
+        }
+        powerOfTwo = (file.getInt(8) & POWER_OF_TWO) != 0;
+        size = file.getInt(12);
+        numKeys = file.getLong(16);
+        index = file.getLong(32);
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+    }
+
+    public SnapshotHashTable(Path path) throws IOException {
+        this(path, new ObjectSerializer(), new ObjectSerializer());
+    }
+
+    /* hash function, giving the same positions as the ChainedHashTable that was saved */
+    public int h1(Object key) {
+        return index(hash(key));
+    }
+
+    private int hash(Object key) {
+        int h = key.hashCode();
+        if (powerOfTwo) {
+            h ^= (h >>> 16);
+        }
+        return h;
+    }
+
+    private int index(int hash) {
+        if (powerOfTwo) {
+            return hash & (size - 1);
+        }
+        int h1 = hash % size;
+        if (h1 < 0) {
+            h1 += size;
+        }
+        return h1;
+    }
+
+    /* the snapshot cannot be changed */
+    public boolean insert(Object key, Object value) {
+        throw new UnsupportedOperationException();
+    }
+
+    /*
+     * search - search for the specified key and return a copy of the
+     * associated collection of values, or null if the key
+     * is not in the table
+     */
+    public Queue<Object> search(Object key) {
+        int hash = hash(key);
+        int i = index(hash);
+        long pos = file.getLong(index + 8L * i);
+        long end = file.getLong(index + 8L * (i + 1));
+        byte[] keyBytes = null;
+        while (pos < end) {
+            int keyLength = file.getInt(pos + 4);
+            if (file.getInt(pos) == hash) {
+                if (keyBytes == null) {
+                    keyBytes = keySerializer.toBytes(key);
+                }
+                if (keyLength == keyBytes.length && file.equalBytes(pos + 8, keyBytes)) {
+                    return valuesAt(pos + 8 + keyLength);
+                }
+            }
+            pos = skipValues(pos + 8 + keyLength);
+        }
+        return null;
+    }
+
+    /* the snapshot cannot be changed */
+    public Queue<Object> remove(Object key) {
+        throw new UnsupportedOperationException();
+    }
+
+    /* valuesAt - returns a queue of copies of the values that start at the specified position */
+    private Queue<Object> valuesAt(long pos) {
+        Queue<Object> values = new ChunkedArrayQueue<Object>();
+        int count = file.getInt(pos);
+        pos += 4;
+        for (int v = 0; v < count; v++) {
+            int length = file.getInt(pos);
+            values.insert(valueSerializer.fromBytes(file.getBytes(pos + 4, length)));
+            pos += 4 + length;
+        }
+        return values;
+    }
+
+    /* skipValues - returns the position just past the values that start at the specified position */
+    private long skipValues(long pos) {
+        int count = file.getInt(pos);
+        pos += 4;
+        for (int v = 0; v < count; v++) {
+            pos += 4 + file.getInt(pos);
+        }
+        return pos;
+    }
+
+    public int getNumKeys() {
+        return (int) numKeys;
+    }
+
+    public double load() {
+        return (double)(numKeys) / (double)(size);
+    }
+
+    public Object[] getAllKeys() {
+        Object[] result = new Object[(int) numKeys];
+        long pos = HEADER_BYTES;
+        for (int k = 0; k < result.length; k++) {
+            int keyLength = file.getInt(pos + 4);
+            result[k] = keySerializer.fromBytes(file.getBytes(pos + 8, keyLength));
+            pos = skipValues(pos + 8 + keyLength);
+        }
+        return result;
+    }
+
+    /*
+     * close - lets go of the mapped file.  The table cannot be used
+     * after it is closed.
+     */
+    public void close() {
+        file.close();
+        file = null;
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("--- Testing snapshots ---");
+        System.out.println();
+        System.out.println("(0) Testing on writeSnapshot() and search()");
+        System.out.println();
+
+        Path path = Files.createTempFile("snapshot", ".chts");
+        try {
+            ChainedHashTable table = new ChainedHashTable(5);
+            table.insert("howdy", 15);
+            table.insert("goodbye", 10);
+            table.insert("apple", 5);
+            table.insert("howdy", 25);
+            table.writeSnapshot(path, new ObjectSerializer(), new ObjectSerializer());
+            SnapshotHashTable snapshot = new SnapshotHashTable(path);
+            String results = snapshot.search("howdy") + " " + snapshot.search("apple") + " "
+                + snapshot.search("pear") + " " + snapshot.getNumKeys() + " "
+                + Arrays.toString(snapshot.getAllKeys());
+            String expected = "{15, 25} {5} null 3 " + Arrays.toString(table.getAllKeys());
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        }
+
+        System.out.println();
+        System.out.println("(1) Testing on readSnapshot() of a power-of-two table");
+        System.out.println();
+
+        try {
+            ChainedHashTable table = new ChainedHashTable(16, 0.75, true);
+            for (int i = 0; i < 10000; i++) {
+                table.insert(i, "v" + i);
+                table.insert(i % 100, "w" + i);
+            }
+            table.writeSnapshot(path, new ObjectSerializer(), new ObjectSerializer());
+            ChainedHashTable loaded = ChainedHashTable.readSnapshot(path,
+                new ObjectSerializer(), new ObjectSerializer());
+            SnapshotHashTable snapshot = new SnapshotHashTable(path);
+            boolean same = true;
+            for (int i = -10; i < 10010; i++) {
+                String values = "" + table.search(i);
+                if (!values.equals("" + loaded.search(i))
+                        || !values.equals("" + snapshot.search(i))) {
+                    same = false;
+                }
+            }
+            String results = same + " " + loaded.getNumKeys() + " " + loaded.load()
+                + " " + Arrays.equals(table.getAllKeys(), loaded.getAllKeys());
+            String expected = "true 10000 " + table.load() + " true";
+            System.out.println("actual results:");
+            System.out.println(results);
+            System.out.println("expected results:");
+            System.out.println(expected);
+            System.out.print("MATCHES EXPECTED RESULTS?: ");
+            System.out.println(results.equals(expected));
+        } catch (Exception e) {
+            System.out.println("INCORRECTLY THREW AN EXCEPTION: " + e);
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * SocketShardTransport.java
+ *
+ * Computer Science 112, Boston University
+ */
+
+import java.io.*;
+import java.net.*;
+import java.util.ArrayDeque;
+
+/*
+ * A ShardTransport to a ShardServer that is listening on a socket,
+ * using the format that ShardServer describes.  send writes the whole
+ * batch and flushes it, and receive reads the results of the oldest
+ * batch, so batches that have been sent but not received are in
+ * flight at the same time.
+ */
+public class SocketShardTransport implements ShardTransport {
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final Serializer keySerializer;
+    private final Serializer valueSerializer;
+    private final ArrayDeque<ShardServer.Request[]> sent = new ArrayDeque<ShardServer.Request[]>();
+
+    public SocketShardTransport(String host, int port, Serializer keySerializer,
+                                Serializer valueSerializer) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+    }
+
+    /* connects to a ShardServer on this machine that uses ObjectSerializers */
+    public SocketShardTransport(int port) throws IOException {
+        this(InetAddress.getLoopbackAddress().getHostAddress(), port,
+             new ObjectSerializer(), new ObjectSerializer());
+    }
+
+    public void send(ShardServer.Request[] batch) throws IOException {
+        out.writeInt(batch.length);
+        for (ShardServer.Request r : batch) {
+            out.writeByte(r.op);
+            switch (r.op) {
+            case ShardServer.INSERT:
+                ShardServer.writeObject(out, r.key, keySerializer);
+                ShardServer.writeObject(out, r.value, valueSerializer);
+                break;
+            case ShardServer.SEARCH:
+            case ShardServer.REMOVE:
+                ShardServer.writeObject(out, r.key, keySerializer);
+                break;
+            case ShardServer.SIZE:
+                break;
+            default:
+                out.writeInt(r.ranges.length / 2);
+                for (int range : r.ranges) {
+                    out.writeInt(range);
+                }
+            }
+        }
+        out.flush();
+        sent.add(batch);
+    }
+
+    public Object[] receive() throws IOException {
+        if (sent.isEmpty()) {
+            throw new IllegalStateException("no batch has been sent");
+        }
+        ShardServer.Request[] batch = sent.remove();
+        Object[] results = new Object[batch.length];
+        for (int i = 0; i < batch.length; i++) {
+            switch (batch[i].op) {
+            case ShardServer.INSERT:
+                results[i] = in.readBoolean();
+                break;
+            case ShardServer.SEARCH:
+            case ShardServer.REMOVE:
+                results[i] = ShardServer.readValues(in, valueSerializer);
+                break;
+            case ShardServer.SIZE:
+                results[i] = in.readInt();
+                break;
+            default:
+                Object[] pairs = new Object[2 * in.readInt()];
+                for (int p = 0; p < pairs.length; p += 2) {
+                    pairs[p] = ShardServer.readObject(in, keySerializer);
+                    pairs[p + 1] = ShardServer.readValues(in, valueSerializer);
+                }
+                results[i] = pairs;
+            }
+        }
+        return results;
+    }
+
+    public void close() throws IOException {
+        socket.close();
+    }
+}
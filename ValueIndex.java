@@ -0,0 +1,100 @@
+/*
+ * ValueIndex.java
+ *
+ * Computer Science 112, Boston University
+ */
+
+import java.util.*;
+
+/*
+ * An inverted index from values to the keys that have them, which a
+ * ChainedHashTable keeps up to date as pairs are inserted and removed
+ * (see ChainedHashTable.keysWithValue).  A pair that is inserted more
+ * than once is counted once per copy, so that removing one copy keeps
+ * the key in the index.  Values are compared with equals, as keys are.
+ *
+ * Most values belong to only one key, so the entry for a value is the
+ * key itself until a second key or a second copy is added, and only
+ * then a Keys map from each key to its number of copies.  An entry goes
+ * back to being a single key when all but one copy are removed.
+ */
+public class ValueIndex {
+    /* the keys of a value that has more than one pair, with their numbers of copies */
+    @SuppressWarnings("serial")     // the index is never serialized
+    private static class Keys extends HashMap<Object, Integer> {
+    }
+
+    private final HashMap<Object, Object> entries = new HashMap<Object, Object>();
+    private long numPairs;
+
+    /* add - adds a copy of the pair (key, value) */
+    public void add(Object value, Object key) {
+        numPairs++;
+        Object entry = entries.putIfAbsent(value, key);
+        if (entry == null) {
+            return;
+        }
+        Keys keys;
+        if (entry instanceof Keys) {
+            keys = (Keys) entry;
+        } else {
+            keys = new Keys();
+            keys.put(entry, 1);
+            entries.put(value, keys);
+        }
+        keys.merge(key, 1, Integer::sum);
+    }
+
+    /*
+     * remove - removes a copy of the pair (key, value), and returns
+     * false if there is none
+     */
+    public boolean remove(Object value, Object key) {
+        Object entry = entries.get(value);
+        if (entry instanceof Keys) {
+            Keys keys = (Keys) entry;
+            Integer count = keys.get(key);
+            if (count == null) {
+                return false;
+            } else if (count > 1) {
+                keys.put(key, count - 1);
+            } else {
+                keys.remove(key);
+            }
+            if (keys.size() == 1) {
+                Map.Entry<Object, Integer> last = keys.entrySet().iterator().next();
+                if (last.getValue() == 1) {
+                    entries.put(value, last.getKey());
+                }
+            }
+        } else if (entry != null && entry.equals(key)) {
+            entries.remove(value);
+        } else {
+            return false;
+        }
+        numPairs--;
+        return true;
+    }
+
+    /* keys - returns the keys that have the specified value, in no particular order */
+    public Object[] keys(Object value) {
+        Object entry = entries.get(value);
+        if (entry == null) {
+            return new Object[0];
+        } else if (entry instanceof Keys) {
+            return ((Keys) entry).keySet().toArray();
+        } else {
+            return new Object[] {entry};
+        }
+    }
+
+    /* the number of different values in the index */
+    public int getNumValues() {
+        return entries.size();
+    }
+
+    /* the number of pairs in the index, counting each copy */
+    public long getNumPairs() {
+        return numPairs;
+    }
+}
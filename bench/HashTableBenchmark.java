@@ -0,0 +1,1072 @@
+/*
+ * HashTableBenchmark.java
+ *
+ * Computer Science 112, Boston University
+ */
+
+import java.io.*;
+import java.lang.management.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
+
+/*
+ * Micro-benchmarks for ChainedHashTable, OpenAddressingHashTable and
+ * the Queue implementations.
+ *
+ * Every benchmark has an untimed setup that runs before each iteration
+ * and a timed run that performs some number of operations.  After a
+ * few warmup iterations, the timed iterations are measured for time
+ * per operation, bytes allocated per operation by the benchmark thread,
+ * and the number and total length of garbage collections.
+ *
+ * usage: java HashTableBenchmark [filter ...] [-n keys] [-w warmups] [-i iterations]
+ *
+ * Only benchmarks whose names contain one of the filters are run, for
+ * example "search/int" or "queue".  With no filter, all of them are.
+ */
+public class HashTableBenchmark {
+    /* the key types, in the order used by keys() */
+    private static final String[] KEY_TYPES = {"int", "short", "long", "colliding"};
+    private static final double[] LOADS = {0.5, 1.0, 4.0};
+    private static final double[] HIT_RATIOS = {1.0, 0.5, 0.2};
+    private static final int[] THREADS = {1, 2, 4, 8, 16};
+
+    /* the most keys used with the colliding key type, since they all share one bucket */
+    private static final int MAX_COLLIDING = 1 << 14;
+
+    /* results are stored here so that the JIT compiler cannot drop the work */
+    static volatile Object sink;
+
+    /*
+     * A benchmark.  setup is not timed; run is, and returns the number
+     * of operations that it performed.
+     */
+    private static abstract class Benchmark {
+        final String name;
+
+        Benchmark(String name) {
+            this.name = name;
+        }
+
+        void setup() {
+        }
+
+        abstract int run();
+    }
+
+    private static int numKeys = 100000;
+    private static int warmups = 3;
+    private static int iterations = 5;
+
+    public static void main(String[] args) {
+        ArrayList<String> filters = new ArrayList<String>();
+        for (int a = 0; a < args.length; a++) {
+            if (args[a].equals("-n")) {
+                numKeys = Integer.parseInt(args[++a]);
+            } else if (args[a].equals("-w")) {
+                warmups = Integer.parseInt(args[++a]);
+            } else if (args[a].equals("-i")) {
+                iterations = Integer.parseInt(args[++a]);
+            } else {
+                filters.add(args[a]);
+            }
+        }
+
+        System.out.printf("%-46s %22s %12s %6s %8s%n", "benchmark", "time", "alloc", "gcs", "gc time");
+        ArrayList<Benchmark> list = benchmarks();
+        for (int k = 0; k < list.size(); k++) {
+            Benchmark b = list.get(k);
+            if (filters.isEmpty() || matchesAny(b.name, filters)) {
+                measure(b);
+            }
+            list.set(k, null);      // so that the tables it keeps can be collected
+        }
+    }
+
+    private static boolean matchesAny(String name, ArrayList<String> filters) {
+        for (String f : filters) {
+            if (name.contains(f)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* benchmarks - returns the list of all benchmarks */
+    private static ArrayList<Benchmark> benchmarks() {
+        ArrayList<Benchmark> list = new ArrayList<Benchmark>();
+        for (int t = 0; t < KEY_TYPES.length; t++) {
+            final int keyType = t;
+            final String type = KEY_TYPES[t];
+
+            for (final double load : LOADS) {
+                list.add(new Benchmark("insert/" + type + "/load=" + load) {
+                    Object[] keys;
+                    ChainedHashTable table;
+                    void setup() {
+                        keys = keys(keyType, false);
+                        table = new ChainedHashTable(size(keys.length, load));
+                    }
+                    int run() {
+                        for (Object k : keys) {
+                            table.insert(k, k);
+                        }
+                        sink = table;
+                        return keys.length;
+                    }
+                });
+
+                for (final double hits : HIT_RATIOS) {
+                    list.add(new Benchmark("search/" + type + "/load=" + load + "/hits=" + hits) {
+                        Object[] lookups;
+                        ChainedHashTable table;
+                        void setup() {
+                            if (table == null) {
+                                Object[] keys = keys(keyType, false);
+                                table = filled(keys, size(keys.length, load));
+                                lookups = lookups(keys, keys(keyType, true), hits);
+                            }
+                        }
+                        int run() {
+                            int found = 0;
+                            for (Object k : lookups) {
+                                if (table.search(k) != null) {
+                                    found++;
+                                }
+                            }
+                            sink = found;
+                            return lookups.length;
+                        }
+                    });
+                }
+
+                list.add(new Benchmark("remove/" + type + "/load=" + load) {
+                    Object[] keys;
+                    ChainedHashTable table;
+                    void setup() {
+                        keys = keys(keyType, false);
+                        table = filled(keys, size(keys.length, load));
+                    }
+                    int run() {
+                        for (Object k : keys) {
+                            sink = table.remove(k);
+                        }
+                        return keys.length;
+                    }
+                });
+
+                // the batch versions of the three benchmarks above
+                list.add(new Benchmark("insertAll/" + type + "/load=" + load) {
+                    Object[] keys;
+                    ChainedHashTable table;
+                    void setup() {
+                        keys = keys(keyType, false);
+                        table = new ChainedHashTable(size(keys.length, load));
+                    }
+                    int run() {
+                        table.insertAll(keys, keys);
+                        sink = table;
+                        return keys.length;
+                    }
+                });
+
+                for (final double hits : HIT_RATIOS) {
+                    list.add(new Benchmark("searchAll/" + type + "/load=" + load + "/hits=" + hits) {
+                        Object[] lookups;
+                        ChainedHashTable table;
+                        void setup() {
+                            if (table == null) {
+                                Object[] keys = keys(keyType, false);
+                                table = filled(keys, size(keys.length, load));
+                                lookups = lookups(keys, keys(keyType, true), hits);
+                            }
+                        }
+                        int run() {
+                            sink = table.searchAll(lookups);
+                            return lookups.length;
+                        }
+                    });
+                }
+
+                list.add(new Benchmark("removeAll/" + type + "/load=" + load) {
+                    Object[] keys;
+                    ChainedHashTable table;
+                    void setup() {
+                        keys = keys(keyType, false);
+                        table = filled(keys, size(keys.length, load));
+                    }
+                    int run() {
+                        sink = table.removeAll(keys);
+                        return keys.length;
+                    }
+                });
+            }
+
+            // the same operations on an OpenAddressingHashTable, at its default load of 0.75
+            list.add(new Benchmark("open/insert/" + type) {
+                Object[] keys;
+                OpenAddressingHashTable table;
+                void setup() {
+                    keys = keys(keyType, false);
+                    table = new OpenAddressingHashTable(size(keys.length, 0.75));
+                }
+                int run() {
+                    for (Object k : keys) {
+                        table.insert(k, k);
+                    }
+                    sink = table;
+                    return keys.length;
+                }
+            });
+
+            for (final double hits : HIT_RATIOS) {
+                list.add(new Benchmark("open/search/" + type + "/hits=" + hits) {
+                    Object[] lookups;
+                    OpenAddressingHashTable table;
+                    void setup() {
+                        if (table == null) {
+                            Object[] keys = keys(keyType, false);
+                            table = openFilled(keys);
+                            lookups = lookups(keys, keys(keyType, true), hits);
+                        }
+                    }
+                    int run() {
+                        int found = 0;
+                        for (Object k : lookups) {
+                            if (table.search(k) != null) {
+                                found++;
+                            }
+                        }
+                        sink = found;
+                        return lookups.length;
+                    }
+                });
+            }
+
+            list.add(new Benchmark("open/remove/" + type) {
+                Object[] keys;
+                OpenAddressingHashTable table;
+                void setup() {
+                    keys = keys(keyType, false);
+                    table = openFilled(keys);
+                }
+                int run() {
+                    for (Object k : keys) {
+                        sink = table.remove(k);
+                    }
+                    return keys.length;
+                }
+            });
+
+            list.add(new Benchmark("open/insert-growing/" + type) {
+                Object[] keys;
+                OpenAddressingHashTable table;
+                void setup() {
+                    keys = keys(keyType, false);
+                    table = new OpenAddressingHashTable(16, 0.75);
+                }
+                int run() {
+                    for (Object k : keys) {
+                        table.insert(k, k);
+                    }
+                    sink = table;
+                    return keys.length;
+                }
+            });
+
+            list.add(new Benchmark("insert-growing/" + type) {
+                Object[] keys;
+                ChainedHashTable table;
+                void setup() {
+                    keys = keys(keyType, false);
+                    table = new ChainedHashTable(16, 0.75);
+                }
+                int run() {
+                    for (Object k : keys) {
+                        table.insert(k, k);
+                    }
+                    sink = table;
+                    return keys.length;
+                }
+            });
+
+            list.add(new Benchmark("append-values/" + type) {
+                Object[] keys;
+                ChainedHashTable table;
+                void setup() {
+                    keys = keys(keyType, false);
+                    table = new ChainedHashTable(size(keys.length / 100, 1.0));
+                }
+                int run() {
+                    int distinct = Math.max(1, keys.length / 100);   // 100 values per key
+                    for (int i = 0; i < keys.length; i++) {
+                        table.insert(keys[i % distinct], keys[i]);
+                    }
+                    sink = table;
+                    return keys.length;
+                }
+            });
+
+            list.add(new Benchmark("resize/" + type + "/load=4.0->1.0") {
+                Object[] keys;
+                ChainedHashTable table;
+                void setup() {
+                    keys = keys(keyType, false);
+                    table = filled(keys, size(keys.length, 4.0));
+                }
+                int run() {
+                    table.resize(size(keys.length, 1.0));
+                    sink = table;
+                    return keys.length;
+                }
+            });
+
+            list.add(new Benchmark("getAllKeys/" + type) {
+                ChainedHashTable table;
+                void setup() {
+                    if (table == null) {
+                        Object[] keys = keys(keyType, false);
+                        table = filled(keys, size(keys.length, 1.0));
+                    }
+                }
+                int run() {
+                    Object[] all = table.getAllKeys();
+                    sink = all;
+                    return all.length;
+                }
+            });
+
+            for (final int threads : THREADS) {
+                list.add(new Benchmark("build/" + type + "/threads=" + threads) {
+                    Object[] keys;
+                    ForkJoinPool pool;
+                    void setup() {
+                        if (pool == null) {
+                            keys = keys(keyType, false);
+                            pool = new ForkJoinPool(threads);
+                        }
+                    }
+                    int run() {
+                        sink = ChainedHashTable.build(keys, keys, 1.0, false, pool);
+                        return keys.length;
+                    }
+                });
+
+                list.add(new Benchmark("parallelResize/" + type + "/threads=" + threads) {
+                    Object[] keys;
+                    ChainedHashTable table;
+                    ForkJoinPool pool;
+                    void setup() {
+                        keys = keys(keyType, false);
+                        table = filled(keys, size(keys.length, 4.0));
+                        if (pool == null) {
+                            pool = new ForkJoinPool(threads);
+                        }
+                    }
+                    int run() {
+                        table.parallelResize(size(keys.length, 1.0), pool);
+                        sink = table;
+                        return keys.length;
+                    }
+                });
+            }
+
+            list.add(new Benchmark("snapshot-write/" + type) {
+                ChainedHashTable table;
+                int run() {
+                    if (table == null) {
+                        table = filled(keys(keyType, false), size(numKeys, 1.0));
+                    }
+                    try {
+                        table.writeSnapshot(snapshotFile(), SERIALIZER, SERIALIZER);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return table.getNumKeys();
+                }
+            });
+
+            list.add(new Benchmark("snapshot-read/" + type) {
+                int run() {
+                    try {
+                        ChainedHashTable table = ChainedHashTable.readSnapshot(snapshotFile(),
+                            SERIALIZER, SERIALIZER);
+                        sink = table;
+                        return table.getNumKeys();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+
+            list.add(new Benchmark("snapshot-search/" + type + "/hits=0.5") {
+                Object[] lookups;
+                SnapshotHashTable table;
+                void setup() {
+                    if (table == null) {
+                        try {
+                            table = new SnapshotHashTable(snapshotFile(), SERIALIZER, SERIALIZER);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        lookups = lookups(keys(keyType, false), keys(keyType, true), 0.5);
+                    }
+                }
+                int run() {
+                    int found = 0;
+                    for (Object k : lookups) {
+                        if (table.search(k) != null) {
+                            found++;
+                        }
+                    }
+                    sink = found;
+                    return lookups.length;
+                }
+            });
+
+            list.add(new Benchmark("durable-insert/" + type) {
+                Object[] keys;
+                DurableHashTable table;
+                void setup() {
+                    keys = keys(keyType, false);
+                    try {
+                        table = new DurableHashTable(emptyDirectory());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                int run() {
+                    for (Object k : keys) {
+                        table.insert(k, k);
+                    }
+                    try {
+                        table.close();          // includes syncing the last batch
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return keys.length;
+                }
+            });
+
+            list.add(new Benchmark("keys-forEach/" + type) {
+                ChainedHashTable table;
+                int count;
+                void setup() {
+                    if (table == null) {
+                        Object[] keys = keys(keyType, false);
+                        table = filled(keys, size(keys.length, 1.0));
+                    }
+                }
+                int run() {
+                    count = 0;
+                    table.keys().forEach(k -> count++);
+                    sink = count;
+                    return count;
+                }
+            });
+
+            list.add(new Benchmark("keys-parallel/" + type) {
+                ChainedHashTable table;
+                void setup() {
+                    if (table == null) {
+                        Object[] keys = keys(keyType, false);
+                        table = filled(keys, size(keys.length, 1.0));
+                    }
+                }
+                int run() {
+                    int count = (int) StreamSupport.stream(table.keys().spliterator(), true).count();
+                    sink = count;
+                    return count;
+                }
+            });
+
+            list.add(new Benchmark("forEachPair/" + type) {
+                ChainedHashTable table;
+                int count;
+                void setup() {
+                    if (table == null) {
+                        Object[] keys = keys(keyType, false);
+                        table = filled(keys, size(keys.length, 1.0));
+                    }
+                }
+                int run() {
+                    count = 0;
+                    table.forEachPair((k, v) -> count++);
+                    sink = count;
+                    return count;
+                }
+            });
+
+            list.add(new Benchmark("cache-read-through/" + type + "/limit=n/8") {
+                Object[] lookups;
+                ChainedHashTable table;
+                void setup() {
+                    if (lookups == null) {
+                        lookups = skewed(keys(keyType, false));
+                    }
+                    table = new ChainedHashTable(16, 0.75);
+                    table.setCacheLimits(Math.max(1, lookups.length / 8), 4);
+                }
+                int run() {
+                    for (Object k : lookups) {
+                        if (table.search(k) == null) {
+                            table.insert(k, k);         // as if loaded from the slow store
+                        }
+                    }
+                    sink = table;
+                    return lookups.length;
+                }
+            });
+
+            list.add(new Benchmark("ttl-insert+expire/" + type) {
+                Object[] keys;
+                ChainedHashTable table;
+                long[] now = new long[1];
+                void setup() {
+                    keys = keys(keyType, false);
+                    now[0] = 0;
+                    table = new ChainedHashTable(16, 0.75);
+                    table.setClock(() -> now[0]);
+                }
+                int run() {
+                    // 100 keys a millisecond, each living for 1 to 10 seconds,
+                    // so that the table holds at most 1000 * 100 keys at once
+                    for (int i = 0; i < keys.length; i++) {
+                        table.insertExpiring(keys[i], keys[i], 1000 + 9 * (i % 1000));
+                        if (i % 100 == 99) {
+                            now[0]++;
+                        }
+                    }
+                    now[0] += 10000;
+                    table.expire();
+                    sink = table;
+                    return keys.length;
+                }
+            });
+
+            list.add(new Benchmark("toString/" + type) {
+                ChainedHashTable table;
+                void setup() {
+                    if (table == null) {
+                        Object[] keys = keys(keyType, false);
+                        table = filled(keys, size(keys.length, 1.0));
+                    }
+                }
+                int run() {
+                    String s = table.toString();
+                    sink = s;
+                    return table.getNumKeys();
+                }
+            });
+
+            list.add(new Benchmark("search-with-metrics/" + type + "/load=1.0/hits=0.5") {
+                Object[] lookups;
+                ChainedHashTable table;
+                void setup() {
+                    if (table == null) {
+                        Object[] keys = keys(keyType, false);
+                        table = filled(keys, size(keys.length, 1.0));
+                        table.enableMetrics();
+                        lookups = lookups(keys, keys(keyType, true), 0.5);
+                    }
+                }
+                int run() {
+                    int found = 0;
+                    for (Object k : lookups) {
+                        if (table.search(k) != null) {
+                            found++;
+                        }
+                    }
+                    sink = found;
+                    return lookups.length;
+                }
+            });
+
+            // values=unique gives each key its own value; values=100 shares 100 values among all keys
+            for (final int distinct : new int[] {0, 100}) {
+                final String values = (distinct == 0) ? "unique" : "" + distinct;
+                list.add(new Benchmark("value-index/build/" + type + "/values=" + values) {
+                    Object[] keys;
+                    ChainedHashTable table;
+                    void setup() {
+                        if (table == null) {
+                            keys = keys(keyType, false);
+                            table = new ChainedHashTable(size(keys.length, 1.0));
+                            for (int i = 0; i < keys.length; i++) {
+                                table.insert(keys[i], (distinct == 0) ? keys[i] : i % distinct);
+                            }
+                        }
+                        table.dropValueIndex();
+                    }
+                    int run() {
+                        // the bytes per op are about what the index keeps per pair
+                        sink = table.keysWithValue(keys[0]);
+                        return keys.length;
+                    }
+                });
+            }
+
+            list.add(new Benchmark("value-index/lookup/" + type + "/hits=0.5") {
+                Object[] lookups;
+                ChainedHashTable table;
+                void setup() {
+                    if (table == null) {
+                        Object[] keys = keys(keyType, false);
+                        table = filled(keys, size(keys.length, 1.0));
+                        table.keysWithValue(keys[0]);
+                        lookups = lookups(keys, keys(keyType, true), 0.5);
+                    }
+                }
+                int run() {
+                    int found = 0;
+                    for (Object v : lookups) {
+                        found += table.keysWithValue(v).length;
+                    }
+                    sink = found;
+                    return lookups.length;
+                }
+            });
+
+            list.add(new Benchmark("value-scan/" + type + "/hits=0.5") {
+                Object[] lookups;
+                ChainedHashTable table;
+                void setup() {
+                    if (table == null) {
+                        Object[] keys = keys(keyType, false);
+                        table = filled(keys, size(keys.length, 1.0));
+                        lookups = lookups(keys, keys(keyType, true), 0.5);
+                    }
+                }
+                int run() {
+                    // what finding a value's keys takes without the index; a whole
+                    // pass over the table per value, so only 10 values
+                    int found = 0;
+                    for (int i = 0; i < 10; i++) {
+                        for (Object k : table.getAllKeys()) {
+                            for (Object v : (ChunkedArrayQueue<Object>) table.search(k)) {
+                                if (v.equals(lookups[i])) {
+                                    found++;
+                                }
+                            }
+                        }
+                    }
+                    sink = found;
+                    return 10;
+                }
+            });
+
+            list.add(new Benchmark("snapshot/create+close/" + type) {
+                ChainedHashTable table;
+                void setup() {
+                    if (table == null) {
+                        table = filled(keys(keyType, false), size(numKeys, 1.0));
+                    }
+                }
+                int run() {
+                    for (int i = 0; i < 1000; i++) {
+                        ChainedHashTable.TableSnapshot snapshot = table.snapshot();
+                        sink = snapshot;
+                        snapshot.close();
+                    }
+                    return 1000;
+                }
+            });
+
+            list.add(new Benchmark("snapshot/copy-by-getAllKeys/" + type) {
+                ChainedHashTable table;
+                void setup() {
+                    if (table == null) {
+                        table = filled(keys(keyType, false), size(numKeys, 1.0));
+                    }
+                }
+                int run() {
+                    // what taking a stable copy costs without snapshots, per key
+                    ChainedHashTable copy = new ChainedHashTable(size(numKeys, 1.0));
+                    Object[] keys = table.getAllKeys();
+                    for (Object k : keys) {
+                        for (Object v : (ChunkedArrayQueue<Object>) table.search(k)) {
+                            copy.insert(k, v);
+                        }
+                    }
+                    sink = copy;
+                    return keys.length;
+                }
+            });
+
+            for (final boolean snapshotted : new boolean[] {false, true}) {
+                list.add(new Benchmark("insert-existing/" + type + "/snapshot=" + snapshotted) {
+                    Object[] keys;
+                    ChainedHashTable table;
+                    ChainedHashTable.TableSnapshot snapshot;
+                    void setup() {
+                        keys = keys(keyType, false);
+                        table = filled(keys, size(keys.length, 1.0));
+                        if (snapshotted) {
+                            snapshot = table.snapshot();    // each bucket is copied once
+                        }
+                    }
+                    int run() {
+                        for (Object k : keys) {
+                            table.insert(k, k);
+                        }
+                        sink = snapshot;
+                        return keys.length;
+                    }
+                });
+            }
+
+            for (final boolean indexed : new boolean[] {false, true}) {
+                list.add(new Benchmark("insert+remove/" + type + "/value-index=" + indexed) {
+                    Object[] keys;
+                    ChainedHashTable table;
+                    void setup() {
+                        keys = keys(keyType, false);
+                        table = new ChainedHashTable(size(keys.length, 1.0));
+                        if (indexed) {
+                            table.keysWithValue(keys[0]);
+                        }
+                    }
+                    int run() {
+                        for (Object k : keys) {
+                            table.insert(k, k);
+                        }
+                        for (Object k : keys) {
+                            table.remove(k);
+                        }
+                        return 2 * keys.length;
+                    }
+                });
+            }
+
+            // compare with search/<type>/load=<load>/hits=<hits>, which has no filter
+            for (final double load : new double[] {1.0, 4.0}) {
+                for (final double hits : HIT_RATIOS) {
+                    list.add(new Benchmark("search-with-filter/" + type + "/load=" + load
+                                           + "/hits=" + hits) {
+                        Object[] lookups;
+                        ChainedHashTable table;
+                        void setup() {
+                            if (table == null) {
+                                Object[] keys = keys(keyType, false);
+                                table = filled(keys, size(keys.length, load));
+                                table.enableMissFilter();
+                                lookups = lookups(keys, keys(keyType, true), hits);
+                            }
+                        }
+                        int run() {
+                            int found = 0;
+                            for (Object k : lookups) {
+                                if (table.search(k) != null) {
+                                    found++;
+                                }
+                            }
+                            sink = found;
+                            return lookups.length;
+                        }
+                    });
+                }
+            }
+        }
+
+        for (final boolean sockets : new boolean[] {false, true}) {
+            final String transport = sockets ? "socket" : "local";
+            list.add(new Benchmark("sharded/" + transport + "/shards=4/search") {
+                Object[] lookups;
+                ShardedHashTable table;
+                void setup() {
+                    if (table == null) {
+                        Object[] keys = keys(1, false);
+                        table = sharded(sockets, keys);
+                        lookups = lookups(keys, keys(1, true), 0.5);
+                    }
+                }
+                int run() {
+                    // one round trip per key, so only a tenth of the lookups
+                    int n = lookups.length / 10;
+                    int found = 0;
+                    for (int i = 0; i < n; i++) {
+                        if (table.search(lookups[i]) != null) {
+                            found++;
+                        }
+                    }
+                    sink = found;
+                    return n;
+                }
+            });
+
+            list.add(new Benchmark("sharded/" + transport + "/shards=4/searchAll") {
+                Object[] lookups;
+                ShardedHashTable table;
+                void setup() {
+                    if (table == null) {
+                        Object[] keys = keys(1, false);
+                        table = sharded(sockets, keys);
+                        lookups = lookups(keys, keys(1, true), 0.5);
+                    }
+                }
+                int run() {
+                    sink = table.searchAll(lookups);
+                    return lookups.length;
+                }
+            });
+
+            list.add(new Benchmark("sharded/" + transport + "/add-shard") {
+                Object[] keys;
+                ShardedHashTable table;
+                void setup() {
+                    keys = keys(1, false);
+                    table = sharded(sockets, keys);
+                }
+                int run() {
+                    try {
+                        table.addShard(transport(sockets));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return keys.length;
+                }
+            });
+        }
+
+        list.add(queueBenchmark("queue/LLQueue", false));
+        list.add(queueBenchmark("queue/ChunkedArrayQueue", true));
+        return list;
+    }
+
+    /* queueBenchmark - inserts numKeys items into a new queue and then removes them */
+    private static Benchmark queueBenchmark(String name, final boolean chunked) {
+        return new Benchmark(name + "/insert+remove") {
+            Integer item = 42;
+            int run() {
+                Queue<Integer> q;
+                if (chunked) {
+                    q = new ChunkedArrayQueue<Integer>();
+                } else {
+                    q = new LLQueue<Integer>();
+                }
+                for (int i = 0; i < numKeys; i++) {
+                    q.insert(item);
+                }
+                int count = 0;
+                while (q.remove() != null) {
+                    count++;
+                }
+                sink = q;
+                return numKeys + count;
+            }
+        };
+    }
+
+    private static final Serializer SERIALIZER = new ObjectSerializer();
+    private static Path snapshot;
+
+    /*
+     * snapshotFile - returns the temporary file that the snapshot
+     * benchmarks share.  snapshot-write leaves in it the table of the
+     * current key type, which snapshot-read and snapshot-search use.
+     */
+    private static Path snapshotFile() {
+        try {
+            if (snapshot == null) {
+                snapshot = Files.createTempFile("bench", ".chts");
+                snapshot.toFile().deleteOnExit();
+            }
+            return snapshot;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Path durable;
+
+    /* emptyDirectory - returns a temporary directory for DurableHashTable, emptied first */
+    private static Path emptyDirectory() throws IOException {
+        if (durable == null) {
+            durable = Files.createTempDirectory("bench");
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteFiles(durable, true)));
+        }
+        deleteFiles(durable, false);
+        return durable;
+    }
+
+    private static void deleteFiles(Path directory, boolean andDirectory) {
+        try {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+            if (andDirectory) {
+                Files.delete(directory);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /* size - returns the number of buckets that gives the specified load */
+    private static int size(int keys, double load) {
+        return Math.max(1, (int) (keys / load));
+    }
+
+    private static ChainedHashTable filled(Object[] keys, int size) {
+        ChainedHashTable table = new ChainedHashTable(size);
+        for (Object k : keys) {
+            table.insert(k, k);
+        }
+        return table;
+    }
+
+    private static OpenAddressingHashTable openFilled(Object[] keys) {
+        OpenAddressingHashTable table = new OpenAddressingHashTable(size(keys.length, 0.75));
+        for (Object k : keys) {
+            table.insert(k, k);
+        }
+        return table;
+    }
+
+    /*
+     * keys - returns the keys of the specified type that are in the
+     * table, or, if misses is true, as many keys that are not
+     */
+    private static Object[] keys(int keyType, boolean misses) {
+        int n = (keyType == 3) ? Math.min(numKeys, MAX_COLLIDING) : numKeys;
+        int first = misses ? n : 0;
+        Object[] keys = new Object[n];
+        String padding = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789-";
+        for (int i = 0; i < n; i++) {
+            int id = first + i;
+            switch (keyType) {
+            case 0:
+                keys[i] = id * 0x9E3779B1;          // distinct, but not sequential
+                break;
+            case 1:
+                keys[i] = "k" + id;
+                break;
+            case 2:
+                keys[i] = padding + id;
+                break;
+            default:
+                keys[i] = colliding(id);
+            }
+        }
+        return keys;
+    }
+
+    /* colliding - returns a String with the same hash code for every id ("Aa" and "BB" collide) */
+    private static String colliding(int id) {
+        StringBuilder s = new StringBuilder();
+        for (int bit = 0; bit < 16; bit++) {
+            s.append(((id >> bit) & 1) == 0 ? "Aa" : "BB");
+        }
+        return s.toString();
+    }
+
+    /* lookups - returns keys to search for, of which the specified fraction are hits */
+    private static Object[] lookups(Object[] hits, Object[] misses, double hitRatio) {
+        Object[] lookups = new Object[hits.length];
+        Random random = new Random(112);
+        for (int i = 0; i < lookups.length; i++) {
+            Object[] from = (random.nextDouble() < hitRatio) ? hits : misses;
+            lookups[i] = from[random.nextInt(from.length)];
+        }
+        return lookups;
+    }
+
+    /* sharded - returns a ShardedHashTable with 4 shards that holds the specified keys */
+    private static ShardedHashTable sharded(boolean sockets, Object[] keys) {
+        ShardedHashTable table = new ShardedHashTable();
+        try {
+            for (int s = 0; s < 4; s++) {
+                table.addShard(transport(sockets));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        table.insertAll(keys, keys);
+        return table;
+    }
+
+    /* transport - returns a transport to a new, empty shard */
+    private static ShardTransport transport(boolean sockets) throws IOException {
+        ShardServer server = new ShardServer();
+        if (sockets) {
+            return new SocketShardTransport(server.listen());
+        }
+        return new LocalShardTransport(server);
+    }
+
+    /* skewed - returns lookups of which 90% go to the first tenth of the keys */
+    private static Object[] skewed(Object[] keys) {
+        Object[] lookups = new Object[keys.length];
+        int hot = Math.max(1, keys.length / 10);
+        Random random = new Random(112);
+        for (int i = 0; i < lookups.length; i++) {
+            int k = (random.nextDouble() < 0.9) ? random.nextInt(hot) : random.nextInt(keys.length);
+            lookups[i] = keys[k];
+        }
+        return lookups;
+    }
+
+    /* measure - runs the benchmark and prints its results */
+    private static void measure(Benchmark b) {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        for (int w = 0; w < warmups; w++) {
+            b.setup();
+            b.run();
+        }
+
+        double[] nsPerOp = new double[iterations];
+        long ops = 0;
+        long bytes = 0;
+        long gcs = 0;
+        long gcMillis = 0;
+        for (int it = 0; it < iterations; it++) {
+            b.setup();
+            System.gc();
+            long gcs0 = gcCount();
+            long gcMillis0 = gcMillis();
+            long bytes0 = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            int n = b.run();
+            long time = System.nanoTime() - start;
+            bytes += threads.getThreadAllocatedBytes(thread) - bytes0;
+            gcs += gcCount() - gcs0;
+            gcMillis += gcMillis() - gcMillis0;
+            ops += n;
+            nsPerOp[it] = (double) time / n;
+        }
+
+        double mean = 0;
+        for (double x : nsPerOp) {
+            mean += x / iterations;
+        }
+        double variance = 0;
+        for (double x : nsPerOp) {
+            variance += (x - mean) * (x - mean) / iterations;
+        }
+        System.out.printf("%-46s %10.1f +- %6.1f ns/op %7.1f B/op %6d %5d ms%n",
+            b.name, mean, Math.sqrt(variance), (double) bytes / ops, gcs, gcMillis);
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += gc.getCollectionCount();
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += gc.getCollectionTime();
+        }
+        return millis;
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * HashTableLoadGenerator.java
+ *
+ * Computer Science 112, Boston University
+ */
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * A load generator for HashTableServer.  Each connection has a thread
+ * that sends requests at a fixed rate and a thread that reads their
+ * results, so requests are pipelined and the rate does not slow down
+ * when the server does (an open loop).  The latency of a request is
+ * measured from the time that it was due to be sent, not from when it
+ * was actually sent, so a stall in the sender or the server counts
+ * against every request that it held up.
+ *
+ * Each request is a batch of one SEARCH or INSERT for a key chosen
+ * uniformly from -keys integer keys, which are all inserted before the
+ * run starts.  Results from the first -warmup seconds are not counted.
+ *
+ * usage: java HashTableLoadGenerator [-rate opsPerSecond] [-seconds s]
+ *            [-warmup s] [-connections c] [-keys k] [-reads fraction]
+ *            [-port p]
+ *
+ * Without -port, a HashTableServer is started in this JVM.
+ */
+public class HashTableLoadGenerator {
+    private static final int MAX_UNFLUSHED = 64;
+
+    private static int rate = 100000;
+    private static int seconds = 10;
+    private static int warmup = 2;
+    private static int connections = 4;
+    private static int numKeys = 100000;
+    private static double reads = 0.9;
+    private static int port = -1;
+
+    /* one connection, with its schedule of requests */
+    private static class Connection {
+        final Socket socket;
+        final boolean[] isSearch;       // the operation of each request
+        final int[] key;                // the key of each request
+        final long first;               // when request 0 is due
+        final double interval;          // the nanoseconds between requests
+        final long counted;             // requests due before this are not counted
+        final long[] latencies;
+        int numLatencies;
+        volatile IOException failure;
+
+        Connection(int c, long start) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            socket.setTcpNoDelay(true);
+            int n = (int) ((long) rate * (seconds + warmup) / connections);
+            isSearch = new boolean[n];
+            key = new int[n];
+            Random random = new Random(c);
+            for (int i = 0; i < n; i++) {
+                isSearch[i] = random.nextDouble() < reads;
+                key[i] = random.nextInt(numKeys);
+            }
+            interval = 1e9 * connections / rate;
+            first = start + (long) (c * interval / connections);
+            counted = start + warmup * 1000000000L;
+            latencies = new long[n];
+        }
+
+        long due(int i) {
+            return first + (long) (i * interval);
+        }
+
+        /*
+         * send - sends each request when it is due.  Requests are flushed
+         * whenever the sender is ahead, or every MAX_UNFLUSHED requests
+         * when it is behind.
+         */
+        void send(byte[][] searches, byte[][] inserts) {
+            try {
+                OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+                int unflushed = 0;
+                for (int i = 0; i < isSearch.length; i++) {
+                    long wait = due(i) - System.nanoTime();
+                    if (wait > 0 || unflushed == MAX_UNFLUSHED) {
+                        out.flush();
+                        unflushed = 0;
+                    }
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    out.write(isSearch[i] ? searches[key[i]] : inserts[key[i]]);
+                    unflushed++;
+                }
+                out.flush();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        /* receive - reads the result of each request and records its latency */
+        void receive() {
+            try {
+                DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream(), 1 << 16));
+                for (int i = 0; i < isSearch.length; i++) {
+                    if (isSearch[i]) {
+                        int count = in.readInt();
+                        for (int v = 0; v < count; v++) {
+                            in.skipNBytes(in.readInt());
+                        }
+                    } else {
+                        in.readBoolean();
+                    }
+                    long now = System.nanoTime();
+                    if (due(i) >= counted) {
+                        latencies[numLatencies++] = now - due(i);
+                    }
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int a = 0; a < args.length; a++) {
+            if (args[a].equals("-rate")) {
+                rate = Integer.parseInt(args[++a]);
+            } else if (args[a].equals("-seconds")) {
+                seconds = Integer.parseInt(args[++a]);
+            } else if (args[a].equals("-warmup")) {
+                warmup = Integer.parseInt(args[++a]);
+            } else if (args[a].equals("-connections")) {
+                connections = Integer.parseInt(args[++a]);
+            } else if (args[a].equals("-keys")) {
+                numKeys = Integer.parseInt(args[++a]);
+            } else if (args[a].equals("-reads")) {
+                reads = Double.parseDouble(args[++a]);
+            } else if (args[a].equals("-port")) {
+                port = Integer.parseInt(args[++a]);
+            } else {
+                throw new IllegalArgumentException("unknown option " + args[a]);
+            }
+        }
+
+        HashTableServer server = null;
+        if (port < 0) {
+            server = new HashTableServer();
+            port = server.getPort();
+        }
+
+        // the requests are encoded once, up front, so that the senders only copy bytes
+        Serializer serializer = new ObjectSerializer();
+        byte[][] searches = new byte[numKeys][];
+        byte[][] inserts = new byte[numKeys][];
+        byte[] value = serializer.toBytes(Integer.valueOf(0));
+        for (int k = 0; k < numKeys; k++) {
+            byte[] key = serializer.toBytes(Integer.valueOf(k));
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(1);
+            out.writeByte(ShardServer.SEARCH);
+            out.writeInt(key.length);
+            out.write(key);
+            searches[k] = bytes.toByteArray();
+            bytes.reset();
+            out.writeInt(1);
+            out.writeByte(ShardServer.INSERT);
+            out.writeInt(key.length);
+            out.write(key);
+            out.writeInt(value.length);
+            out.write(value);
+            inserts[k] = bytes.toByteArray();
+        }
+
+        // every key starts with one value
+        try (SocketShardTransport loader = new SocketShardTransport(port)) {
+            ShardServer.Request[] batch = new ShardServer.Request[numKeys];
+            for (int k = 0; k < numKeys; k++) {
+                batch[k] = ShardServer.Request.insert(k, 0);
+            }
+            loader.send(batch);
+            loader.receive();
+        }
+
+        long start = System.nanoTime() + 100000000L;
+        Connection[] conns = new Connection[connections];
+        ArrayList<Thread> threads = new ArrayList<Thread>();
+        for (int c = 0; c < connections; c++) {
+            Connection conn = new Connection(c, start);
+            conns[c] = conn;
+            threads.add(new Thread(() -> conn.send(searches, inserts)));
+            threads.add(new Thread(conn::receive));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        long end = System.nanoTime();
+
+        int total = 0;
+        for (Connection conn : conns) {
+            conn.socket.close();
+            if (conn.failure != null) {
+                throw conn.failure;
+            }
+            total += conn.numLatencies;
+        }
+        long[] all = new long[total];
+        int n = 0;
+        for (Connection conn : conns) {
+            System.arraycopy(conn.latencies, 0, all, n, conn.numLatencies);
+            n += conn.numLatencies;
+        }
+        Arrays.sort(all);
+        double elapsed = (end - start) / 1e9 - warmup;
+
+        System.out.printf("rate %d ops/s over %d connections, %.0f%% searches, %d keys%n",
+                          rate, connections, 100 * reads, numKeys);
+        System.out.printf("completed %d ops in %.2f s (%.0f ops/s)%n", total, elapsed,
+                          total / elapsed);
+        System.out.printf("latency us: p50 %.1f  p90 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n",
+                          percentile(all, 0.5), percentile(all, 0.9), percentile(all, 0.99),
+                          percentile(all, 0.999), all[all.length - 1] / 1e3);
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    /* percentile - returns the pth fraction of the sorted latencies, in microseconds */
+    private static double percentile(long[] sorted, double p) {
+        int i = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(i, 0)] / 1e3;
+    }
+}